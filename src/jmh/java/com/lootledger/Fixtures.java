@@ -0,0 +1,48 @@
+package com.lootledger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Loads the fixture files bundled with the benchmarks.
+ */
+public final class Fixtures
+{
+    private static final String ROOT = "/com/lootledger/fixtures/";
+
+    private Fixtures() {}
+
+    public static String read(String name) throws IOException
+    {
+        try (BufferedReader reader = open(name))
+        {
+            return reader.lines().collect(Collectors.joining("\n"));
+        }
+    }
+
+    /** Non-empty lines of a fixture file. */
+    public static List<String> lines(String name) throws IOException
+    {
+        try (BufferedReader reader = open(name))
+        {
+            return reader.lines()
+                    .filter(l -> !l.isEmpty())
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static BufferedReader open(String name) throws IOException
+    {
+        InputStream is = Fixtures.class.getResourceAsStream(ROOT + name);
+        if (is == null)
+        {
+            throw new IOException("Missing fixture " + name);
+        }
+        return new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+    }
+}
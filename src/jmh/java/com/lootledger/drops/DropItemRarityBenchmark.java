@@ -0,0 +1,54 @@
+package com.lootledger.drops;
+
+import com.lootledger.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Rarity normalization over every format in the rarity corpus; one
+ * invocation covers the whole corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DropItemRarityBenchmark
+{
+    private List<DropItem> items;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        items = Fixtures.lines("rarities.txt").stream()
+                .map(r -> new DropItem(0, "Item", r))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public void oneOverRarity(Blackhole bh)
+    {
+        for (DropItem item : items)
+        {
+            bh.consume(item.getOneOverRarity());
+        }
+    }
+
+    @Benchmark
+    public void rarityValue(Blackhole bh)
+    {
+        for (DropItem item : items)
+        {
+            bh.consume(item.getRarityValue());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.lootledger.drops;
+
+import com.lootledger.Fixtures;
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drop table extraction from an NPC page, comparing the full Jsoup DOM path
+ * ({@link DomDropPageParser}) with the streaming scanner. {@code greater-demon.html}
+ * follows the wiki's page markup but its content is made up; real pages are
+ * saved next to it as {@code wiki-*.html} with {@code ./gradlew updateWikiFixtures}.
+ * The jmh task runs every page in the fixture directory, and
+ * {@code DropPageParserTest} checks both parsers agree on each of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DropPageParserBenchmark
+{
+    // overridden by the jmh task with the fixtures on disk
+    @Param({"greater-demon.html"})
+    public String page;
+
+    private String html;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        html = Fixtures.read(page);
+    }
+
+    @Benchmark
+    public void parseSectionsDom(Blackhole bh)
+    {
+        bh.consume(DomDropPageParser.parseSections(Jsoup.parse(html)));
+    }
+
+    @Benchmark
+    public void parsePageDom(Blackhole bh)
+    {
+        bh.consume(DomDropPageParser.parse(Jsoup.parse(html)));
+    }
+
+    @Benchmark
+    public void parsePageStreaming(Blackhole bh) throws IOException
+    {
+        bh.consume(DropPageParser.parse(new StringReader(html)));
+    }
+}
@@ -0,0 +1,88 @@
+package com.lootledger.drops;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local NPC name search over a large synthetic name list: the trigram/prefix
+ * index against the linear lower-case/contains scan it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NpcNameIndexBenchmark
+{
+    private static final String[] PARTS = {
+            "goblin", "demon", "greater", "lesser", "black", "abyssal", "cave", "guard", "giant",
+            "skeleton", "hellhound", "dragon", "blue", "green", "baby", "ancient", "zombie", "rat",
+            "spider", "knight", "warrior", "mage", "archer", "troll", "ogre", "champion", "sergeant"
+    };
+    private static final int LIMIT = 10;
+
+    @Param({ "50000" })
+    public int names;
+
+    @Param({ "go", "demon", "greater dem", "zzz" })
+    public String query;
+
+    private List<String> all;
+    private NpcNameIndex index;
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(42);
+        all = new ArrayList<>(names);
+        index = new NpcNameIndex();
+        for (int i = 0; i < names; i++)
+        {
+            StringBuilder sb = new StringBuilder();
+            int words = 1 + random.nextInt(3);
+            for (int w = 0; w < words; w++)
+            {
+                String part = PARTS[random.nextInt(PARTS.length)];
+                sb.append(w == 0 ? Character.toUpperCase(part.charAt(0)) + part.substring(1) : part).append(' ');
+            }
+            String name = sb.append(i).toString();
+            all.add(name);
+            index.add(name);
+        }
+    }
+
+    @Benchmark
+    public List<String> indexed()
+    {
+        return index.search(query, LIMIT);
+    }
+
+    @Benchmark
+    public List<String> linearScan()
+    {
+        String lc = query.toLowerCase(Locale.ROOT).trim();
+        List<String> out = new ArrayList<>();
+        for (String name : all)
+        {
+            if (name.toLowerCase(Locale.ROOT).contains(lc))
+            {
+                out.add(name);
+                if (out.size() >= LIMIT)
+                {
+                    break;
+                }
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,50 @@
+package com.lootledger.items;
+
+import com.lootledger.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading the bundled item index, and name lookups against it using a mix of
+ * exact names, "Foo (Bar)" variants and misses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ItemIdIndexBenchmark
+{
+    private List<String> names;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        ItemIdIndex.load();
+        names = Fixtures.lines("item-names.txt");
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void load()
+    {
+        ItemIdIndex.load();
+    }
+
+    @Benchmark
+    public void findIdsFlex(Blackhole bh)
+    {
+        for (String name : names)
+        {
+            bh.consume(ItemIdIndex.findIdsFlex(name));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.lootledger.ui;
+
+import com.lootledger.drops.NpcDropData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Name-match ranking of search candidates, as done after every search.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NpcSearchRankingBenchmark
+{
+    private static final String[] NAMES = {
+            "Goblin", "Hobgoblin", "Goblin guard", "Cave goblin guard", "Goblin (Lumbridge)",
+            "General Graardor", "Greater demon", "Lesser demon", "Black demon", "Demonic gorilla",
+            "Abyssal demon", "Greater Skeleton Hellhound", "Guard", "Giant rat", "Grizzly bear cub",
+            "Gnome guard", "Goblin champion", "Sergeant Grimspike", "Sergeant Steelwill", "Sergeant Strongstack"
+    };
+
+    @Param({ "gob", "greater demon", "sergeant strongstack", "graater demn" })
+    public String query;
+
+    // 20 is a page of wiki results; thousands is what a catalog search can rank
+    @Param({ "20", "3000" })
+    public int count;
+
+    private List<NpcDropData> candidates;
+
+    @Setup
+    public void setUp()
+    {
+        candidates = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            String name = i < NAMES.length
+                    ? NAMES[i]
+                    : NAMES[i % NAMES.length] + " " + NAMES[(i / NAMES.length) % NAMES.length].toLowerCase(Locale.ROOT);
+            candidates.add(new NpcDropData(i + 1, name, 0, Collections.emptyList()));
+        }
+    }
+
+    @Benchmark
+    public List<NpcDropData> rankByName()
+    {
+        return NpcSearchService.rankByName(candidates, query);
+    }
+}
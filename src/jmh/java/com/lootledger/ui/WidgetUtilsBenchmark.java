@@ -0,0 +1,51 @@
+package com.lootledger.ui;
+
+import com.lootledger.Fixtures;
+import com.lootledger.drops.DropItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The dedupe and rarity sort run on every drop view redraw, on a table sized
+ * like a large NPC with some items listed in several sections.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WidgetUtilsBenchmark
+{
+    @Param({ "true", "false" })
+    public boolean sortByRarity;
+
+    private List<DropItem> drops;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        List<String> rarities = Fixtures.lines("rarities.txt");
+        drops = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+        {
+            // every fourth item repeats an earlier id
+            int itemId = i % 4 == 3 ? i / 2 + 1 : i + 1;
+            drops.add(new DropItem(itemId, "Item " + itemId, rarities.get(i % rarities.size())));
+        }
+    }
+
+    @Benchmark
+    public List<DropItem> dedupeAndSort()
+    {
+        return WidgetUtils.dedupeAndSort(drops, sortByRarity);
+    }
+}
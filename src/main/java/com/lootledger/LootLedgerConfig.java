@@ -7,6 +7,8 @@ public interface LootLedgerConfig extends Config
 {
     enum Scope { PER_ACCOUNT, PER_NPC }
     enum ObtainedView { ALL, HIDE_OBTAINED, ONLY_OBTAINED }
+    enum StoreMode { JSON_FILES, SINGLE_FILE }
+    enum CachePolicy { UNBOUNDED, LRU, TINY_LFU }
 
     @ConfigItem(
             keyName = "trackObtained",
@@ -64,4 +66,71 @@ public interface LootLedgerConfig extends Config
             position = 13
     )
     default boolean showDropsAlwaysOpen() { return true; }
+
+    @ConfigItem(
+            keyName = "cacheStoreMode",
+            name = "Drop cache format",
+            description = "Single file keeps every cached drop table in one indexed file; JSON files keeps one file per NPC.",
+            position = 20
+    )
+    default StoreMode cacheStoreMode() { return StoreMode.SINGLE_FILE; }
+
+    @ConfigItem(
+            keyName = "lazyDropCache",
+            name = "Lazy drop cache",
+            description = "Memory-map the single-file drop cache and decode tables only when viewed. Tables beyond the memory cache limits are kept weakly and may be dropped.",
+            position = 21
+    )
+    default boolean lazyDropCache() { return false; }
+
+    @ConfigItem(
+            keyName = "memoryCachePolicy",
+            name = "Memory cache policy",
+            description = "How decoded drop tables are evicted from memory. Evicted tables are re-read from disk.",
+            position = 22
+    )
+    default CachePolicy memoryCachePolicy() { return CachePolicy.LRU; }
+
+    @Range(min = 1, max = 10000)
+    @ConfigItem(
+            keyName = "memoryCacheMaxEntries",
+            name = "Memory cache entries",
+            description = "Maximum number of decoded drop tables kept in memory.",
+            position = 23
+    )
+    default int memoryCacheMaxEntries() { return 200; }
+
+    @Range(min = 1, max = 512)
+    @ConfigItem(
+            keyName = "memoryCacheMaxMb",
+            name = "Memory cache size (MB)",
+            description = "Approximate heap budget for decoded drop tables.",
+            position = 24
+    )
+    default int memoryCacheMaxMb() { return 16; }
+
+    @ConfigItem(
+            keyName = "staleWhileRevalidate",
+            name = "Serve stale drops",
+            description = "Show week-old drop tables immediately and refresh them from the wiki in the background instead of waiting for the refresh.",
+            position = 25
+    )
+    default boolean staleWhileRevalidate() { return true; }
+
+    @ConfigItem(
+            keyName = "prefetchNearbyDrops",
+            name = "Prefetch nearby drops",
+            description = "Load the drop tables of monsters around you in the background, so Show Drops opens instantly.",
+            position = 26
+    )
+    default boolean prefetchNearbyDrops() { return false; }
+
+    @Range(min = 1, max = 60)
+    @ConfigItem(
+            keyName = "prefetchPerMinute",
+            name = "Prefetches per minute",
+            description = "Maximum number of drop tables fetched from the wiki per minute by prefetching.",
+            position = 27
+    )
+    default int prefetchPerMinute() { return 6; }
 }
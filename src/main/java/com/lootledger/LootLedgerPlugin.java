@@ -1,10 +1,12 @@
 package com.lootledger;
 
 import com.google.inject.Provides;
-import com.google.gson.Gson;
 import com.lootledger.account.AccountManager;
 import com.lootledger.drops.DropCache;
 import com.lootledger.drops.DropFetcher;
+import com.lootledger.drops.DropPrefetcher;
+import com.lootledger.drops.NpcCatalog;
+import com.lootledger.items.ItemIdCache;
 import com.lootledger.items.ItemIdIndex;
 import com.lootledger.managers.ObtainedItemsManager;
 import com.lootledger.ui.DropsMenuListener;
@@ -40,12 +42,14 @@ import java.util.Set;
 )
 public class LootLedgerPlugin extends Plugin
 {
-    @Inject private Gson gson;
     @Inject private ItemManager itemManager;
     @Inject private LootLedgerConfig config;
     @Inject private AccountManager accountManager;
     @Inject private DropFetcher dropFetcher;
+    @Inject private ItemIdCache itemIdCache;
     @Inject private DropCache dropCache;
+    @Inject private DropPrefetcher dropPrefetcher;
+    @Inject private NpcCatalog npcCatalog;
     @Inject private MusicWidgetController musicWidgetController;
     @Inject private DropsMenuListener dropsMenuListener;
     @Inject private TabListener tabListener;
@@ -63,8 +67,11 @@ public class LootLedgerPlugin extends Plugin
     @Override
     protected void startUp()
     {
-        ItemIdIndex.setGson(gson);
-        ItemIdIndex.load();
+        long start = System.nanoTime();
+        // only needed once a drop table is resolved or searched, so keep them off the startup path
+        ItemIdIndex.loadAsync();
+        npcCatalog.loadAsync();
+        itemIdCache.startUp();
 
         accountManager.init();
         dropFetcher.startUp();
@@ -72,9 +79,12 @@ public class LootLedgerPlugin extends Plugin
         eventBus.register(accountManager);
         eventBus.register(tabListener);
         eventBus.register(dropsMenuListener);
+        eventBus.register(dropPrefetcher);
         eventBus.register(musicWidgetController); // <-- needed for WidgetLoaded handler
 
         overlayManager.add(dropsTooltipOverlay);
+
+        log.info("Loot Ledger started in {} ms", (System.nanoTime() - start) / 1_000_000);
     }
 
     @Override
@@ -88,12 +98,15 @@ public class LootLedgerPlugin extends Plugin
         eventBus.unregister(accountManager);
         eventBus.unregister(tabListener);
         eventBus.unregister(dropsMenuListener);
+        eventBus.unregister(dropPrefetcher);
+        dropPrefetcher.reset();
         eventBus.unregister(musicWidgetController); // <-- unregister to match startUp
 
         overlayManager.remove(dropsTooltipOverlay);
 
         dropCache.shutdown();
         dropFetcher.shutdown();
+        itemIdCache.shutdown();
     }
 
     @Subscribe
@@ -125,6 +138,16 @@ public class LootLedgerPlugin extends Plugin
             return;
         }
 
+        if ("cacheStoreMode".equals(k)
+                || "lazyDropCache".equals(k)
+                || "memoryCachePolicy".equals(k)
+                || "memoryCacheMaxEntries".equals(k)
+                || "memoryCacheMaxMb".equals(k))
+        {
+            dropCache.reload();
+            return;
+        }
+
         if ("trackObtained".equals(k)
                 || "obtainedScope".equals(k)
                 || "obtainedView".equals(k)
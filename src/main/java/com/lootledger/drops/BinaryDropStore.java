@@ -0,0 +1,1062 @@
+package com.lootledger.drops;
+
+import com.google.gson.Gson;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Single-file, append-only droptable store.
+ *
+ * <p>Layout: an 8 byte header, then a sequence of records, index blocks and
+ * index deltas, always ending in a fixed-size trailer that points at the
+ * latest index or delta block. The full index is only written when the file
+ * is created or rewritten; every write after that appends its record followed
+ * by a delta holding just the changed keys, and a pointer to the previous
+ * block. Opening the store reads the trailer, follows the delta chain back to
+ * the full index and replays it; tables are decoded on demand. Index entries
+ * carry the table's item sources, so the item source index is built without
+ * decoding anything either. A torn write is
+ * recovered by replaying the file from the start. The file is rewritten (tmp
+ * file + atomic move) once more than half of it is superseded records and
+ * deltas, or once the delta chain holds more changes than the index has
+ * entries, which keeps opening the store proportional to the index size.
+ *
+ * <p>In mapped mode the file is read through read-only memory mappings of
+ * fixed-size regions, so decoding a table touches the page cache instead of
+ * issuing a read per lookup, and offsets past 2 GB need no special casing.
+ * Only a few regions stay mapped at a time; records that straddle a region
+ * boundary are read through the channel. Mappings are released by the
+ * garbage collector once dropped; they are dropped before the file is
+ * compacted or closed, but some platforms refuse to replace a file that is
+ * still mapped, so a compaction that fails is retried once the file has
+ * doubled in size again, and on close.
+ */
+@Slf4j
+final class BinaryDropStore implements DropStore
+{
+    static final String FILE_NAME = "droptables.bin";
+
+    private static final int FILE_MAGIC = 0x4C4C4454;    // "LLDT"
+    // version 1 files have no deltas and version 2 indexes lack item sources; both are rewritten on open
+    private static final int FILE_VERSION = 3;
+    private static final int RECORD_MAGIC = 0x52454344;  // "RECD"
+    private static final int INDEX_MAGIC = 0x494E4458;   // "INDX"
+    private static final int DELTA_MAGIC = 0x444C5441;   // "DLTA"
+    private static final int TRAILER_MAGIC = 0x54524C52; // "TRLR"
+    private static final int HEADER_SIZE = 8;
+    private static final int BLOCK_HEADER_SIZE = 8;
+    private static final int TRAILER_SIZE = 16;
+    // Small files are not worth rewriting, whatever their garbage ratio
+    private static final long COMPACT_MIN_BYTES = 256 * 1024;
+    // Delta chains shorter than this are never a reason to rewrite the file
+    private static final int COMPACT_MIN_DELTA_ENTRIES = 256;
+    private static final long DEFAULT_REGION_SIZE = 32L * 1024 * 1024;
+    private static final int MAX_REGIONS = 4;
+
+    private final Path dir;
+    private final Path file;
+    private final Gson gson;
+    private final Duration maxAge;
+    private final boolean mapped;
+    private final long regionSize;
+
+    private final Map<String, Entry> index = new LinkedHashMap<>();
+    private FileChannel channel;
+    // region start -> mapping, least recently used first
+    private final Map<Long, MappedByteBuffer> regions = new LinkedHashMap<>(MAX_REGIONS, 0.75f, true);
+    private int version;
+    // size of the last full index block and its trailer
+    private long indexBytes;
+    // offset of the latest index or delta block, which the next delta links back to
+    private long lastBlock;
+    // puts and removes recorded in deltas since the last full index
+    private int deltaEntries;
+    // size the file has to reach before a failed compaction is tried again
+    private long compactRetrySize;
+
+    BinaryDropStore(Path dir, Gson gson, Duration maxAge, boolean mapped)
+    {
+        this(dir, gson, maxAge, mapped, DEFAULT_REGION_SIZE);
+    }
+
+    BinaryDropStore(Path dir, Gson gson, Duration maxAge, boolean mapped, long regionSize)
+    {
+        this.dir = dir;
+        this.file = dir.resolve(FILE_NAME);
+        this.gson = gson;
+        this.maxAge = maxAge;
+        this.mapped = mapped;
+        this.regionSize = regionSize;
+    }
+
+    @Override
+    public synchronized List<Entry> open(Map<String, NpcDropData> decoded) throws IOException
+    {
+        close();
+        Files.createDirectories(dir);
+        if (!Files.exists(file))
+        {
+            create();
+        }
+
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (!hasValidHeader())
+        {
+            log.warn("Droptable store {} has an unknown header, starting over", file);
+            close();
+            Files.deleteIfExists(file);
+            create();
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        if (!readLatestIndex())
+        {
+            recover();
+        }
+        if (version < FILE_VERSION)
+        {
+            log.info("Upgrading droptable store {} from version {}", file, version);
+            compact();
+            if (version < FILE_VERSION)
+            {
+                // appending to it would mix index formats
+                throw new IOException("Could not upgrade droptable store " + file);
+            }
+        }
+        importJson();
+
+        long cutoff = Instant.now().minus(maxAge).toEpochMilli();
+        List<String> expired = index.values().stream()
+                .filter(e -> e.writtenAt < cutoff)
+                .map(e -> e.key)
+                .collect(Collectors.toList());
+        remove(expired);
+        compactIfNeeded();
+
+        return new ArrayList<>(index.values());
+    }
+
+    @Override
+    public synchronized NpcDropData read(Entry entry) throws IOException
+    {
+        ensureOpen();
+        // Offsets move on compaction, so always resolve through our own index
+        Entry current = index.get(entry.key);
+        if (current == null)
+        {
+            return null;
+        }
+
+        return decodeTable(recordBuffer(current));
+    }
+
+    @Override
+    public synchronized Entry write(String key, NpcDropData data) throws IOException
+    {
+        ensureOpen();
+        long now = System.currentTimeMillis();
+        byte[] rec = encodeRecord(key, now, data);
+        long pos = channel.size();
+        writeAt(channel, ByteBuffer.wrap(rec), pos);
+        Entry entry = new Entry(key, data.getNpcId(), data.getName(), data.getLevel(), now, pos, rec.length,
+                ItemSourceIndex.sourcesOf(data));
+        index.remove(key);
+        index.put(key, entry);
+        appendDelta(Collections.singletonList(entry), Collections.emptyList());
+        compactIfNeeded();
+        return index.get(key);
+    }
+
+    @Override
+    public synchronized void remove(Collection<String> keys) throws IOException
+    {
+        ensureOpen();
+        List<String> removed = new ArrayList<>();
+        for (String key : keys)
+        {
+            if (index.remove(key) != null)
+            {
+                removed.add(key);
+            }
+        }
+        if (!removed.isEmpty())
+        {
+            appendDelta(Collections.emptyList(), removed);
+            compactIfNeeded();
+        }
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        dropMappings();
+        if (channel != null)
+        {
+            try
+            {
+                compactRetrySize = 0;
+                compactIfNeeded();
+            }
+            catch (IOException ex)
+            {
+                log.warn("Failed to compact droptable store {}", file, ex);
+            }
+            try
+            {
+                channel.close();
+            }
+            catch (IOException ex)
+            {
+                log.warn("Failed to close droptable store {}", file, ex);
+            }
+            channel = null;
+        }
+        index.clear();
+        indexBytes = 0;
+        lastBlock = 0;
+        deltaEntries = 0;
+    }
+
+    /** Return the bytes of a record, positioned at its start. */
+    private ByteBuffer recordBuffer(Entry e) throws IOException
+    {
+        if (!mapped)
+        {
+            return readAt(channel, e.offset, e.length);
+        }
+
+        long start = e.offset - e.offset % regionSize;
+        long end = e.offset + e.length;
+        if (end > start + regionSize)
+        {
+            return readAt(channel, e.offset, e.length);
+        }
+
+        MappedByteBuffer region = regions.get(start);
+        if (region == null || start + region.capacity() < end)
+        {
+            // The file only grows between compactions, so the last region may need remapping
+            region = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(regionSize, channel.size() - start));
+            regions.put(start, region);
+            if (regions.size() > MAX_REGIONS)
+            {
+                Iterator<MappedByteBuffer> eldest = regions.values().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        ByteBuffer b = region.duplicate();
+        b.position((int) (e.offset - start)).limit((int) (end - start));
+        return b.slice();
+    }
+
+    /** Drop the mappings; the garbage collector unmaps them once no read holds a slice. */
+    private void dropMappings()
+    {
+        regions.clear();
+    }
+
+    private void ensureOpen() throws IOException
+    {
+        if (channel == null)
+        {
+            throw new IOException("Droptable store is not open");
+        }
+    }
+
+    /**
+     * Create a new, empty store. It is assembled in a tmp file and moved into
+     * place so a crash never leaves a half-written header behind.
+     */
+    private void create() throws IOException
+    {
+        Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            writeAt(out, header(), 0);
+            writeBlock(out, indexBlock(new ArrayList<>()), HEADER_SIZE);
+            out.force(true);
+        }
+        catch (IOException ex)
+        {
+            Files.deleteIfExists(tmp);
+            throw ex;
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Import per-NPC JSON files, both from before this store existed and
+     * from sessions that ran in JSON mode. A file replaces the stored table
+     * if it was written later. The files are only deleted once the new index
+     * is on disk, so a crash mid-import just repeats it on the next open.
+     */
+    private void importJson() throws IOException
+    {
+        List<Path> legacy;
+        try (Stream<Path> files = Files.list(dir))
+        {
+            legacy = files.filter(JsonDropStore::isJsonFile).collect(Collectors.toList());
+        }
+        if (legacy.isEmpty())
+        {
+            return;
+        }
+
+        List<Entry> imported = new ArrayList<>();
+        long cutoff = Instant.now().minus(maxAge).toEpochMilli();
+        for (Path p : legacy)
+        {
+            try
+            {
+                String fn = p.getFileName().toString();
+                String key = fn.substring(0, fn.length() - ".json".length());
+                long modified = Files.getLastModifiedTime(p).toMillis();
+                Entry current = index.get(key);
+                if (modified < cutoff || current != null && current.writtenAt >= modified)
+                {
+                    continue;
+                }
+                NpcDropData data = JsonDropStore.parse(p, gson);
+                if (data == null || data.getDropTableSections() == null || data.getDropTableSections().isEmpty())
+                {
+                    continue;
+                }
+                byte[] rec = encodeRecord(key, modified, data);
+                long pos = channel.size();
+                writeAt(channel, ByteBuffer.wrap(rec), pos);
+                Entry entry = new Entry(key, data.getNpcId(), data.getName(), data.getLevel(), modified, pos, rec.length,
+                        ItemSourceIndex.sourcesOf(data));
+                index.remove(key);
+                index.put(key, entry);
+                imported.add(entry);
+            }
+            catch (Exception ex)
+            {
+                log.warn("Skipping bad cache file {} during import", p, ex);
+            }
+        }
+
+        if (!imported.isEmpty())
+        {
+            appendDelta(imported, Collections.emptyList());
+            log.info("Imported {} droptables into {}", imported.size(), file);
+        }
+        for (Path p : legacy)
+        {
+            try { Files.deleteIfExists(p); } catch (IOException ignored) {}
+        }
+    }
+
+    private boolean hasValidHeader() throws IOException
+    {
+        if (channel.size() < HEADER_SIZE)
+        {
+            return false;
+        }
+        ByteBuffer h = readAt(channel, 0, HEADER_SIZE);
+        if (h.getInt() != FILE_MAGIC)
+        {
+            return false;
+        }
+        version = h.getInt();
+        return version >= 1 && version <= FILE_VERSION;
+    }
+
+    /**
+     * Fast path: follow the trailer to the latest block, then the delta chain
+     * back to the full index, and replay the deltas on top of it.
+     */
+    private boolean readLatestIndex() throws IOException
+    {
+        long size = channel.size();
+        if (size < HEADER_SIZE + BLOCK_HEADER_SIZE + TRAILER_SIZE)
+        {
+            return false;
+        }
+
+        ByteBuffer t = readAt(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+        int head = t.getInt();
+        long latest = t.getLong();
+        int tail = t.getInt();
+        if (head != TRAILER_MAGIC || tail != TRAILER_MAGIC)
+        {
+            return false;
+        }
+
+        // newest first; each block has to end before the one that links to it
+        List<Delta> deltas = new ArrayList<>();
+        long pos = latest;
+        long end = size - TRAILER_SIZE;
+        while (true)
+        {
+            if (pos < HEADER_SIZE || pos > end - BLOCK_HEADER_SIZE)
+            {
+                return false;
+            }
+            ByteBuffer bh = readAt(channel, pos, BLOCK_HEADER_SIZE);
+            int magic = bh.getInt();
+            int len = bh.getInt();
+            long blockEnd = pos + BLOCK_HEADER_SIZE + len;
+            if (len < 0 || blockEnd > end || pos == latest && blockEnd != end)
+            {
+                return false;
+            }
+            byte[] body = readAt(channel, pos + BLOCK_HEADER_SIZE, len).array();
+
+            if (magic == INDEX_MAGIC)
+            {
+                List<Entry> entries = decodeIndex(body, pos, version);
+                if (entries == null)
+                {
+                    return false;
+                }
+                index.clear();
+                for (Entry e : entries)
+                {
+                    index.put(e.key, e);
+                }
+                deltaEntries = 0;
+                for (int i = deltas.size() - 1; i >= 0; i--)
+                {
+                    apply(deltas.get(i));
+                }
+                indexBytes = BLOCK_HEADER_SIZE + len + TRAILER_SIZE;
+                lastBlock = latest;
+                return true;
+            }
+
+            Delta delta = magic == DELTA_MAGIC ? decodeDelta(body, pos, version) : null;
+            if (delta == null || delta.previous >= pos)
+            {
+                return false;
+            }
+            deltas.add(delta);
+            end = pos;
+            pos = delta.previous;
+        }
+    }
+
+    /**
+     * Slow path after a torn write: replay records, index blocks and deltas
+     * from the start, drop whatever follows the last intact block and write a
+     * fresh full index.
+     */
+    private void recover() throws IOException
+    {
+        index.clear();
+        long size = channel.size();
+        long pos = HEADER_SIZE;
+        while (pos + BLOCK_HEADER_SIZE <= size)
+        {
+            ByteBuffer bh = readAt(channel, pos, BLOCK_HEADER_SIZE);
+            int magic = bh.getInt();
+            if (magic == TRAILER_MAGIC)
+            {
+                if (pos + TRAILER_SIZE > size)
+                {
+                    break;
+                }
+                pos += TRAILER_SIZE;
+                continue;
+            }
+
+            int len = bh.getInt();
+            if (len < 0 || pos + BLOCK_HEADER_SIZE + len > size)
+            {
+                break;
+            }
+
+            if (magic == RECORD_MAGIC)
+            {
+                Entry e = decodeRecordEntry(readAt(channel, pos, BLOCK_HEADER_SIZE + len), pos);
+                if (e == null)
+                {
+                    break;
+                }
+                index.remove(e.key);
+                index.put(e.key, e);
+            }
+            else if (magic == INDEX_MAGIC)
+            {
+                List<Entry> entries = decodeIndex(readAt(channel, pos + BLOCK_HEADER_SIZE, len).array(), pos, version);
+                if (entries == null)
+                {
+                    break;
+                }
+                index.clear();
+                for (Entry e : entries)
+                {
+                    index.put(e.key, e);
+                }
+            }
+            else if (magic == DELTA_MAGIC)
+            {
+                Delta delta = decodeDelta(readAt(channel, pos + BLOCK_HEADER_SIZE, len).array(), pos, version);
+                if (delta == null)
+                {
+                    break;
+                }
+                apply(delta);
+            }
+            else
+            {
+                break;
+            }
+            pos += BLOCK_HEADER_SIZE + len;
+        }
+
+        log.warn("Recovered {} droptables from {} ({} of {} bytes intact)", index.size(), file, pos, size);
+        channel.truncate(pos);
+        if (version == FILE_VERSION)
+        {
+            appendIndex();
+        }
+        // otherwise open() rewrites the file in the current format
+    }
+
+    private void apply(Delta delta)
+    {
+        for (String key : delta.removed)
+        {
+            index.remove(key);
+        }
+        for (Entry e : delta.puts)
+        {
+            index.remove(e.key);
+            index.put(e.key, e);
+        }
+        deltaEntries += delta.removed.size() + delta.puts.size();
+    }
+
+    /** Append a full index of every live entry; only needed when there is no chain to extend. */
+    private void appendIndex() throws IOException
+    {
+        long pos = channel.size();
+        indexBytes = writeBlock(channel, indexBlock(index.values()), pos);
+        lastBlock = pos;
+        deltaEntries = 0;
+        channel.force(false);
+    }
+
+    /** Append the changed entries and removed keys, linked to the previous block. */
+    private void appendDelta(Collection<Entry> puts, Collection<String> removed) throws IOException
+    {
+        long pos = channel.size();
+        writeBlock(channel, deltaBlock(lastBlock, puts, removed), pos);
+        lastBlock = pos;
+        deltaEntries += puts.size() + removed.size();
+        channel.force(false);
+    }
+
+    private void compactIfNeeded() throws IOException
+    {
+        long size = channel.size();
+        if (size < compactRetrySize)
+        {
+            return;
+        }
+        long live = HEADER_SIZE + indexBytes;
+        for (Entry e : index.values())
+        {
+            live += e.length;
+        }
+        boolean mostlyGarbage = size >= COMPACT_MIN_BYTES && size - live >= live;
+        boolean longChain = deltaEntries > Math.max(COMPACT_MIN_DELTA_ENTRIES, index.size());
+        if (mostlyGarbage || longChain)
+        {
+            compact();
+        }
+    }
+
+    /** Rewrite the file with only the live records and a full index. */
+    private void compact() throws IOException
+    {
+        long size = channel.size();
+        // reads remap the new file afterwards
+        dropMappings();
+
+        Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+        Map<String, Entry> moved = new LinkedHashMap<>();
+        long indexPos;
+        long written;
+        try (FileChannel out = FileChannel.open(tmp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            writeAt(out, header(), 0);
+            long pos = HEADER_SIZE;
+            for (Entry e : index.values())
+            {
+                ByteBuffer rec = readAt(channel, e.offset, e.length);
+                // only entries from before the index kept sources lack them
+                List<ItemSource> sources = e.sources != null ? e.sources : sourcesOf(e, rec.duplicate());
+                writeAt(out, rec, pos);
+                moved.put(e.key, new Entry(e.key, e.npcId, e.name, e.level, e.writtenAt, pos, e.length, sources));
+                pos += e.length;
+            }
+            indexPos = pos;
+            written = writeBlock(out, indexBlock(moved.values()), pos);
+            out.force(true);
+        }
+        catch (IOException ex)
+        {
+            Files.deleteIfExists(tmp);
+            throw ex;
+        }
+
+        channel.close();
+        try
+        {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException ex)
+        {
+            // e.g. an old mapping has not been released yet; retry once the file has grown
+            log.warn("Could not replace {} with compacted copy", file, ex);
+            Files.deleteIfExists(tmp);
+            compactRetrySize = size * 2;
+            return;
+        }
+        finally
+        {
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        log.debug("Compacted {} from {} to {} bytes", file, size, channel.size());
+        compactRetrySize = 0;
+        index.clear();
+        index.putAll(moved);
+        indexBytes = written;
+        lastBlock = indexPos;
+        deltaEntries = 0;
+        version = FILE_VERSION;
+    }
+
+    private static ByteBuffer header()
+    {
+        ByteBuffer h = ByteBuffer.allocate(HEADER_SIZE);
+        h.putInt(FILE_MAGIC).putInt(FILE_VERSION).flip();
+        return h;
+    }
+
+    /** Record: magic, length, key, writtenAt, npcId, level, name, payload, crc. */
+    private static byte[] encodeRecord(String key, long writtenAt, NpcDropData data) throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeInt(RECORD_MAGIC);
+        out.writeInt(0); // patched below
+        out.writeUTF(key);
+        out.writeLong(writtenAt);
+        out.writeInt(data.getNpcId());
+        out.writeInt(data.getLevel());
+        DropDataCodec.writeString(out, data.getName());
+        DropDataCodec.write(out, data);
+        out.writeInt(0); // crc, patched below
+        out.flush();
+        return seal(bos.toByteArray());
+    }
+
+    /** Validate a record's framing and checksum and position a stream after its length field. */
+    private static DataInputStream openRecord(ByteBuffer rec) throws IOException
+    {
+        int len = rec.remaining();
+        if (len < BLOCK_HEADER_SIZE + 4)
+        {
+            throw new EOFException("Truncated droptable record");
+        }
+        if (rec.getInt(0) != RECORD_MAGIC || rec.getInt(4) != len - BLOCK_HEADER_SIZE)
+        {
+            throw new IOException("Corrupt droptable record header");
+        }
+
+        ByteBuffer body = rec.duplicate();
+        body.position(BLOCK_HEADER_SIZE).limit(len - 4);
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        if (rec.getInt(len - 4) != (int) crc.getValue())
+        {
+            throw new IOException("Droptable record checksum mismatch");
+        }
+        return new DataInputStream(new ByteBufferInputStream(body));
+    }
+
+    private static NpcDropData decodeTable(ByteBuffer rec) throws IOException
+    {
+        DataInputStream in = openRecord(rec);
+        in.readUTF();  // key
+        in.readLong(); // writtenAt
+        in.readInt();  // npcId
+        in.readInt();  // level
+        DropDataCodec.readString(in);
+        return DropDataCodec.read(in);
+    }
+
+    /** Item sources of an entry written before the index kept them. */
+    private List<ItemSource> sourcesOf(Entry e, ByteBuffer rec)
+    {
+        try
+        {
+            return ItemSourceIndex.sourcesOf(decodeTable(rec));
+        }
+        catch (IOException ex)
+        {
+            log.warn("Could not read item sources of droptable {} in {}", e.key, file, ex);
+            return new ArrayList<>();
+        }
+    }
+
+    private static Entry decodeRecordEntry(ByteBuffer rec, long offset)
+    {
+        try
+        {
+            int length = rec.remaining();
+            DataInputStream in = openRecord(rec);
+            String key = in.readUTF();
+            long writtenAt = in.readLong();
+            int npcId = in.readInt();
+            int level = in.readInt();
+            String name = DropDataCodec.readString(in);
+            List<ItemSource> sources = ItemSourceIndex.sourcesOf(DropDataCodec.read(in));
+            return new Entry(key, npcId, name, level, writtenAt, offset, length, sources);
+        }
+        catch (IOException ex)
+        {
+            return null;
+        }
+    }
+
+    /** Full index block: magic, length, count, entries..., crc. */
+    private static byte[] indexBlock(Collection<Entry> entries) throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(64 + entries.size() * 48);
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeInt(INDEX_MAGIC);
+        out.writeInt(0); // patched below
+        writeEntries(out, entries);
+        out.writeInt(0); // crc, patched below
+        out.flush();
+        return seal(bos.toByteArray());
+    }
+
+    /** Delta block: magic, length, previous block offset, removed count, keys..., put count, entries..., crc. */
+    private static byte[] deltaBlock(long previous, Collection<Entry> puts, Collection<String> removed) throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(64 + puts.size() * 48 + removed.size() * 24);
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeInt(DELTA_MAGIC);
+        out.writeInt(0); // patched below
+        out.writeLong(previous);
+        out.writeInt(removed.size());
+        for (String key : removed)
+        {
+            out.writeUTF(key);
+        }
+        writeEntries(out, puts);
+        out.writeInt(0); // crc, patched below
+        out.flush();
+        return seal(bos.toByteArray());
+    }
+
+    /**
+     * Entry: key, offset, length, writtenAt, npcId, level, name, then its item
+     * sources: section count, section names..., source count, and per source
+     * item id, section number, rarity and rarity value.
+     */
+    private static void writeEntries(DataOutputStream out, Collection<Entry> entries) throws IOException
+    {
+        out.writeInt(entries.size());
+        for (Entry e : entries)
+        {
+            out.writeUTF(e.key);
+            out.writeLong(e.offset);
+            out.writeInt(e.length);
+            out.writeLong(e.writtenAt);
+            out.writeInt(e.npcId);
+            out.writeInt(e.level);
+            DropDataCodec.writeString(out, e.name);
+
+            List<ItemSource> sources = e.sources == null ? Collections.emptyList() : e.sources;
+            List<String> sections = new ArrayList<>();
+            for (ItemSource source : sources)
+            {
+                if (!sections.contains(source.getSection()))
+                {
+                    sections.add(source.getSection());
+                }
+            }
+            out.writeInt(sections.size());
+            for (String section : sections)
+            {
+                DropDataCodec.writeString(out, section);
+            }
+            out.writeInt(sources.size());
+            for (ItemSource source : sources)
+            {
+                out.writeInt(source.getItemId());
+                out.writeInt(sections.indexOf(source.getSection()));
+                DropDataCodec.writeString(out, source.getRarity());
+                out.writeDouble(source.getRarityValue());
+            }
+        }
+    }
+
+    /** Patch the length field and trailing crc of an encoded block. */
+    private static byte[] seal(byte[] block)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(block, BLOCK_HEADER_SIZE, block.length - BLOCK_HEADER_SIZE - 4);
+        ByteBuffer.wrap(block)
+                .putInt(4, block.length - BLOCK_HEADER_SIZE)
+                .putInt(block.length - 4, (int) crc.getValue());
+        return block;
+    }
+
+    /** Write an index or delta block followed by a trailer pointing at it. Returns the bytes written. */
+    private static long writeBlock(FileChannel ch, byte[] block, long pos) throws IOException
+    {
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+        trailer.putInt(TRAILER_MAGIC).putLong(pos).putInt(TRAILER_MAGIC).flip();
+
+        writeAt(ch, ByteBuffer.wrap(block), pos);
+        writeAt(ch, trailer, pos + block.length);
+        return block.length + TRAILER_SIZE;
+    }
+
+    /**
+     * Decode an index block body (everything after the length field), or null
+     * if it is damaged. Every entry has to point at a record before
+     * {@code limit}, the block's own offset. Entries in files older than
+     * version 3 have no item sources.
+     */
+    private static List<Entry> decodeIndex(byte[] body, long limit, int version)
+    {
+        DataInputStream in = openBlock(body);
+        if (in == null)
+        {
+            return null;
+        }
+        try
+        {
+            return readEntries(in, limit, version);
+        }
+        catch (IOException ex)
+        {
+            return null;
+        }
+    }
+
+    /** Decode a delta block body, or null if it is damaged; see {@link #decodeIndex}. */
+    private static Delta decodeDelta(byte[] body, long limit, int version)
+    {
+        DataInputStream in = openBlock(body);
+        if (in == null)
+        {
+            return null;
+        }
+        try
+        {
+            long previous = in.readLong();
+            int count = in.readInt();
+            if (count < 0)
+            {
+                return null;
+            }
+            List<String> removed = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+            {
+                removed.add(in.readUTF());
+            }
+            List<Entry> puts = readEntries(in, limit, version);
+            return puts == null ? null : new Delta(previous, puts, removed);
+        }
+        catch (IOException ex)
+        {
+            return null;
+        }
+    }
+
+    /** Check a block body's crc and return a stream over it, or null if it does not match. */
+    private static DataInputStream openBlock(byte[] body)
+    {
+        if (body.length < 8)
+        {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length - 4);
+        if (ByteBuffer.wrap(body).getInt(body.length - 4) != (int) crc.getValue())
+        {
+            return null;
+        }
+        return new DataInputStream(new ByteArrayInputStream(body, 0, body.length - 4));
+    }
+
+    private static List<Entry> readEntries(DataInputStream in, long limit, int version) throws IOException
+    {
+        int count = in.readInt();
+        if (count < 0)
+        {
+            return null;
+        }
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            String key = in.readUTF();
+            long offset = in.readLong();
+            int length = in.readInt();
+            long writtenAt = in.readLong();
+            int npcId = in.readInt();
+            int level = in.readInt();
+            String name = DropDataCodec.readString(in);
+            if (offset < HEADER_SIZE || length < BLOCK_HEADER_SIZE + 4 || offset + length > limit)
+            {
+                return null;
+            }
+            List<ItemSource> sources = version >= 3 ? readSources(in, npcId, name, level) : null;
+            if (version >= 3 && sources == null)
+            {
+                return null;
+            }
+            entries.add(new Entry(key, npcId, name, level, writtenAt, offset, length, sources));
+        }
+        return entries;
+    }
+
+    private static List<ItemSource> readSources(DataInputStream in, int npcId, String name, int level) throws IOException
+    {
+        int sectionCount = in.readInt();
+        if (sectionCount < 0)
+        {
+            return null;
+        }
+        String[] sections = new String[sectionCount];
+        for (int i = 0; i < sectionCount; i++)
+        {
+            sections[i] = DropDataCodec.readString(in);
+        }
+        int count = in.readInt();
+        if (count < 0)
+        {
+            return null;
+        }
+        List<ItemSource> sources = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            int itemId = in.readInt();
+            int section = in.readInt();
+            String rarity = DropDataCodec.readString(in);
+            double rarityValue = in.readDouble();
+            if (section < 0 || section >= sectionCount)
+            {
+                return null;
+            }
+            sources.add(new ItemSource(itemId, npcId, name, level, sections[section], rarity, rarityValue));
+        }
+        return sources;
+    }
+
+    private static ByteBuffer readAt(FileChannel ch, long pos, int len) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(len);
+        while (buf.hasRemaining())
+        {
+            if (ch.read(buf, pos + buf.position()) < 0)
+            {
+                throw new EOFException("Unexpected end of droptable store");
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static void writeAt(FileChannel ch, ByteBuffer buf, long pos) throws IOException
+    {
+        long at = pos;
+        while (buf.hasRemaining())
+        {
+            at += ch.write(buf, at);
+        }
+    }
+
+    /** Index changes recorded by one delta block. */
+    private static final class Delta
+    {
+        final long previous;
+        final List<Entry> puts;
+        final List<String> removed;
+
+        Delta(long previous, List<Entry> puts, List<String> removed)
+        {
+            this.previous = previous;
+            this.puts = puts;
+            this.removed = removed;
+        }
+    }
+
+    /** Stream over a buffer's remaining bytes without copying them. */
+    private static final class ByteBufferInputStream extends InputStream
+    {
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf)
+        {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read()
+        {
+            return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+            if (!buf.hasRemaining())
+            {
+                return -1;
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available()
+        {
+            return buf.remaining();
+        }
+    }
+}
@@ -2,33 +2,45 @@ package com.lootledger.drops;
 
 import static net.runelite.client.RuneLite.RUNELITE_DIR;
 
+import com.lootledger.LootLedgerConfig;
 import com.lootledger.account.AccountManager;
+import com.lootledger.drops.WikiRequestScheduler.Priority;
 import com.google.gson.Gson;
 import lombok.extern.slf4j.Slf4j;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.runelite.client.eventbus.EventBus;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
-import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
- * Persistent droptable cache backed by JSON files in the user's RuneLite
- * directory. The cache is mirrored in memory to make name based lookups and
- * searches effectively instantaneous.
+ * Persistent droptable cache backed by a {@link DropStore} in the user's
+ * RuneLite directory, either one indexed binary file or one JSON file per NPC.
+ * The store's index is mirrored in memory to make name based lookups and
+ * searches effectively instantaneous; tables are decoded on first use and
+ * kept in a bounded {@link DropMemoryCache}. In lazy mode the single file is
+ * memory-mapped and tables evicted from memory stay weakly reachable. An
+ * {@link ItemSourceIndex} maps item IDs back to the tables that drop them.
+ *
+ * <p>Tables older than {@link #MAX_AGE} are revalidated against the wiki page
+ * revision they were parsed from and only refetched if the page changed. With
+ * stale-while-revalidate enabled they are served immediately and refreshed in
+ * the background; a {@link DropTableRefreshed} event is posted if the refresh
+ * changed anything. While {@link DropFetcher} has paused wiki requests after
+ * repeated failures, expired tables are served rather than discarded. Only
+ * tables that have not been renewed for {@link #MAX_STALE_AGE} are pruned.
  */
 @Slf4j
 @Singleton
@@ -37,10 +49,30 @@ public class DropCache
     private final Gson gson;
     private final AccountManager accountManager;
     private final DropFetcher dropFetcher;
+    private final LootLedgerConfig config;
+    private final EventBus eventBus;
+    private final NpcCatalog npcCatalog;
+    // per-player cache directories live below this
+    private final Path cacheRoot;
     private static final Duration MAX_AGE = Duration.ofDays(7);
-    private final Map<Path, Object> writeLocks = new ConcurrentHashMap<>();
-    private final Map<Path, NpcDropData> cache = new ConcurrentHashMap<>();
-    private final Map<String, Path> nameIndex = new ConcurrentHashMap<>();
+    // How long tables past MAX_AGE are kept. Most drop tables change far less
+    // often than weekly, so an expired table is usually renewed by one small
+    // revision check (see refresh) rather than refetched, and it can still be
+    // shown while the wiki is unreachable. Tables untouched for this long
+    // belong to NPCs the player no longer visits and are pruned.
+    private static final Duration MAX_STALE_AGE = Duration.ofDays(60);
+    // local name matches that make a wiki search unnecessary (one page of search results)
+    private static final int LOCAL_SEARCH_TARGET = 10;
+    private final Map<String, DropStore.Entry> entries = new ConcurrentHashMap<>();
+    private volatile DropMemoryCache cache = DropMemoryCache.unbounded();
+    private final Map<String, String> nameIndex = new ConcurrentHashMap<>();
+    // flight key of a lookup by game NPC ID -> key its table was stored under (the wiki page ID)
+    private final Map<String, String> storedKeys = new ConcurrentHashMap<>();
+    private final ItemSourceIndex sources = new ItemSourceIndex();
+    private final NpcNameIndex npcNames = new NpcNameIndex();
+    private final SingleFlight<String, NpcDropData> loads = new SingleFlight<>();
+    private final SingleFlight<String, NpcDropData> refreshes = new SingleFlight<>();
+    private volatile DropStore store;
     private volatile boolean indexLoaded = false;
     private final ExecutorService ioExecutor = java.util.concurrent.Executors.newFixedThreadPool(
             Math.max(2, Runtime.getRuntime().availableProcessors() / 2),
@@ -48,11 +80,23 @@ public class DropCache
     );
 
     @Inject
-    public DropCache(Gson gson, AccountManager accountManager, DropFetcher dropFetcher)
+    public DropCache(Gson gson, AccountManager accountManager, DropFetcher dropFetcher, LootLedgerConfig config, EventBus eventBus,
+            NpcCatalog npcCatalog)
+    {
+        this(gson, accountManager, dropFetcher, config, eventBus, npcCatalog, RUNELITE_DIR.toPath().resolve("lootledger"));
+    }
+
+    /** Keep the caches below {@code cacheRoot} instead of the RuneLite directory, e.g. in tests. */
+    DropCache(Gson gson, AccountManager accountManager, DropFetcher dropFetcher, LootLedgerConfig config, EventBus eventBus,
+            NpcCatalog npcCatalog, Path cacheRoot)
     {
         this.gson = gson;
         this.accountManager = accountManager;
         this.dropFetcher = dropFetcher;
+        this.config = config;
+        this.eventBus = eventBus;
+        this.npcCatalog = npcCatalog;
+        this.cacheRoot = cacheRoot;
     }
 
     /**
@@ -66,184 +110,462 @@ public class DropCache
         pruneOldCaches();
     }
     /**
-     * Load from disk if possible; otherwise fetch from the wiki, write the
-     * JSON, and return the data. Results without droptable sections are
-     * discarded and never cached.
+     * Load from disk if possible; otherwise fetch from the wiki, write it to
+     * the store, and return the data. Results without droptable sections are
+     * discarded and never cached. Concurrent calls for the same NPC share a
+     * single load. Expired tables are served as-is and refreshed in the
+     * background when stale-while-revalidate is enabled. Wiki requests are
+     * sent as {@link Priority#INTERACTIVE}.
      */
     public CompletableFuture<NpcDropData> get(int npcId, String name, int level)
+    {
+        return get(npcId, name, level, Priority.INTERACTIVE);
+    }
+
+    /** Like {@link #get(int, String, int)}, with the priority of any wiki requests it needs. */
+    public CompletableFuture<NpcDropData> get(int npcId, String name, int level, Priority priority)
     {
         loadIndex();
-        final String safeName = name.replaceAll("[^A-Za-z0-9]", "_");
-        final Path file;
-        try
-        {
-            file = npcId == 0
-                    ? findExistingCacheFile(safeName, level)
-                    : getCacheFile(npcId, name, level);
-        }
-        catch (IOException ex)
+        if (store == null)
         {
-            log.error("Could not resolve cache file for {} ({}, lvl {})", npcId, name, level, ex);
+            IOException ex = new IOException("Player name is not available");
+            log.error("Could not resolve cache entry for {} ({}, lvl {})", npcId, name, level, ex);
             return CompletableFuture.failedFuture(ex);
         }
 
+        return loads.run(flightKey(npcId, name, level), () -> load(npcId, name, level, priority));
+    }
+
+    /**
+     * Start loading a table as {@link Priority#BACKGROUND} unless it is
+     * already cached or being loaded. Opening the store and checking the
+     * index happen on the IO executor, so this is safe to call from the
+     * client thread.
+     *
+     * @return completes with the started load, or with {@code null} if there
+     * was nothing to do
+     */
+    public CompletableFuture<CompletableFuture<NpcDropData>> prefetch(int npcId, String name, int level)
+    {
         return CompletableFuture.supplyAsync(() ->
         {
-            if (file != null)
+            loadIndex();
+            if (store == null || loads.isInFlight(flightKey(npcId, name, level)))
             {
-                NpcDropData cached = cache.get(file);
-                if (cached != null && Files.exists(file) && isFresh(file))
-                {
-                    return cached;
-                }
+                return null;
+            }
+            String key = resolveKey(npcId, name, level);
+            if (key != null && entries.containsKey(key))
+            {
+                return null;
+            }
+            return get(npcId, name, level, Priority.BACKGROUND);
+        }, ioExecutor);
+    }
 
-                // stale or missing entry, clean up
-                try
-                {
-                    Files.deleteIfExists(file);
-                }
-                catch (IOException ignore) { }
-                removeIndex(file);
+    private CompletableFuture<NpcDropData> load(int npcId, String name, int level, Priority priority)
+    {
+        final String key = resolveKey(npcId, name, level);
+
+        return CompletableFuture.supplyAsync(() ->
+        {
+            DropStore.Entry entry = key == null ? null : entries.get(key);
+            if (entry == null)
+            {
+                return null;
             }
-            return null;
+
+            // while the wiki is unreachable even expired tables beat having none
+            NpcDropData cached = isExpired(entry) && dropFetcher.isWikiAvailable() ? null : read(key);
+            if (cached == null)
+            {
+                // expired or unreadable entry, clean up
+                removeEntries(Collections.singletonList(key));
+            }
+            return cached;
         }, ioExecutor).thenComposeAsync(cached ->
         {
-            if (cached != null)
+            if (cached == null)
+            {
+                return fetchAndStore(npcId, name, level, priority)
+                        .exceptionally(ex ->
+                        {
+                            if (WikiCircuitBreaker.isOpen(ex))
+                            {
+                                log.warn("Wiki unavailable, could not fetch drop data for {}", name);
+                            }
+                            else
+                            {
+                                log.error("Error fetching drop data for NPC {}", npcId, ex);
+                            }
+                            return null;
+                        });
+            }
+
+            DropStore.Entry entry = entries.get(key);
+            if (entry == null || isFresh(entry))
             {
                 return CompletableFuture.completedFuture(cached);
             }
+            if (config.staleWhileRevalidate())
+            {
+                revalidate(npcId, name, level, key, cached);
+                return CompletableFuture.completedFuture(cached);
+            }
+            return refresh(npcId, name, level, key, cached, priority);
+        },ioExecutor);
+    }
 
-            return dropFetcher.fetch(npcId, name, level)
-                    .thenApplyAsync(data ->
-                    {
-                        try
+    /**
+     * Fetch a table from the wiki and write it to the store. Completes with
+     * {@code null} if the page has no droptable sections.
+     */
+    private CompletableFuture<NpcDropData> fetchAndStore(int npcId, String name, int level, Priority priority)
+    {
+        return dropFetcher.fetch(npcId, name, level, priority)
+                .thenApplyAsync(data -> storeFetched(npcId, name, level, data), ioExecutor);
+    }
+
+    /**
+     * Write freshly fetched data to the store, replacing any entry that was
+     * found by name under a different ID.
+     */
+    private NpcDropData storeFetched(int npcId, String name, int level, NpcDropData data)
+    {
+        try
+        {
+            if (data == null || data.getDropTableSections().isEmpty())
+            {
+                return null;
+            }
+
+            DropStore s = store;
+            if (s == null)
+            {
+                return data;
+            }
+
+            String out = DropStore.keyFor(data.getNpcId(), data.getName(), data.getLevel());
+            DropStore.Entry entry = s.write(out, data);
+            addIndex(entry, data);
+            if (npcId != 0 && npcId != data.getNpcId())
+            {
+                storedKeys.put(flightKey(npcId, name, level), out);
+            }
+
+            if (npcId == 0 && data.getNpcId() != 0)
+            {
+                String old = findExistingKey(DropStore.safeName(name), data.getLevel());
+                if (old != null && !old.equals(out))
+                {
+                    removeEntries(Collections.singletonList(old));
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            log.error("Failed to write cache entry for {}", name, e);
+        }
+        return data;
+    }
+
+    /**
+     * Load several NPCs by name and wait for all of them.
+     *
+     * @return tables in the order of {@code names}, skipping NPCs without drops
+     * @see #getEach
+     */
+    public CompletableFuture<List<NpcDropData>> getAll(List<String> names, int level)
+    {
+        List<CompletableFuture<NpcDropData>> futures = getEach(names, level);
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .handle((v, ex) -> futures.stream()
+                        .map(f -> f.exceptionally(e ->
                         {
-                            if (data == null || data.getDropTableSections().isEmpty())
-                            {
-                                return null;
-                            }
+                            log.error("Error fetching drop data", e);
+                            return null;
+                        }).join())
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList()));
+    }
 
-                            Path out = getCacheFile(data.getNpcId(), data.getName(), data.getLevel());
-                            Files.createDirectories(out.getParent());
-                            String json = gson.toJson(data);
+    /**
+     * Load several NPCs by name, completing each as soon as it is available.
+     * Names already cached, or already being loaded, go through {@link #get};
+     * the rest are fetched together with {@link DropFetcher#fetchByNames} so a
+     * search costs one page-id query instead of one per candidate.
+     *
+     * @return one future per name, in the order of {@code names}; each
+     * completes with {@code null} if the NPC has no drops
+     */
+    public List<CompletableFuture<NpcDropData>> getEach(List<String> names, int level)
+    {
+        return getEach(names, level, () -> false);
+    }
 
-                            Object lock = writeLocks.computeIfAbsent(out, p -> new Object());
-                            synchronized (lock)
-                            {
-                                Path tmp = out.resolveSibling(out.getFileName() + ".tmp");
-                                try
-                                {
-                                    Files.writeString(
-                                            tmp,
-                                            json,
-                                            StandardCharsets.UTF_8,
-                                            StandardOpenOption.CREATE,
-                                            StandardOpenOption.TRUNCATE_EXISTING
-                                    );
-                                    Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
-                                }
-                                finally
-                                {
-                                    writeLocks.remove(out);
-                                    try { Files.deleteIfExists(tmp); } catch (IOException ignored) {}
-                                }
-                            }
+    /**
+     * Like {@link #getEach(List, int)}, but wiki requests for the misses are
+     * skipped once {@code cancelled} returns true, see
+     * {@link DropFetcher#fetchByNames(List, int, BooleanSupplier)}.
+     */
+    public List<CompletableFuture<NpcDropData>> getEach(List<String> names, int level, BooleanSupplier cancelled)
+    {
+        loadIndex();
+        List<CompletableFuture<NpcDropData>> futures = new ArrayList<>(names.size());
+        List<String> misses = new ArrayList<>();
+        for (String name : names)
+        {
+            if (store == null
+                    || loads.isInFlight(flightKey(0, name, level))
+                    || findExistingKey(DropStore.safeName(name), level) != null)
+            {
+                futures.add(get(0, name, level, Priority.SEARCH));
+            }
+            else
+            {
+                misses.add(name);
+                futures.add(null);
+            }
+        }
 
-                            cache.put(out, data);
-                            nameIndex.put(buildNameKey(data.getName(), data.getLevel()), out);
+        if (!misses.isEmpty())
+        {
+            CompletableFuture<Map<String, NpcDropData>> batch = dropFetcher.fetchByNames(misses, level, Priority.SEARCH, cancelled);
+            for (int i = 0, m = 0; i < futures.size(); i++)
+            {
+                if (futures.get(i) != null)
+                {
+                    continue;
+                }
+                String name = misses.get(m++);
+                futures.set(i, loads.run(flightKey(0, name, level), () -> batch
+                        .thenApplyAsync(fetched -> storeFetched(0, name, level, fetched.get(name)), ioExecutor)));
+            }
+        }
+        return futures;
+    }
 
-                            if (npcId == 0 && data.getNpcId() != 0)
-                            {
-                                Path old = findExistingCacheFile(safeName, data.getLevel());
-                                if (old != null && !old.equals(out))
-                                {
-                                    Files.deleteIfExists(old);
-                                    removeIndex(old);
-                                }
-                            }
-                        }
-                        catch (Exception e)
+    /**
+     * Refresh an expired table. If the wiki page is still at the revision the
+     * table was parsed from, only its timestamp is renewed; otherwise the page
+     * is fetched again. Completes with the stale table if the refresh fails.
+     */
+    private CompletableFuture<NpcDropData> refresh(int npcId, String name, int level, String key, NpcDropData stale,
+                                                Priority priority)
+    {
+        return refreshes.run(key, () ->
+        {
+            if (stale.getNpcId() <= 0 || stale.getRevisionId() <= 0)
+            {
+                return fetchAndStore(npcId, name, level, priority);
+            }
+            return dropFetcher.fetchRevisionId(stale.getNpcId(), priority)
+                    .thenComposeAsync(revision ->
+                    {
+                        if (revision != stale.getRevisionId())
                         {
-                            log.error("Failed to write cache file for {}", name, e);
+                            return fetchAndStore(npcId, name, level, priority);
                         }
-                        return data;
-                    }, ioExecutor)
-                    .exceptionally(ex ->
-                    {
-                        log.error("Error fetching drop data for NPC {}", npcId, ex);
-                        return null;
-                    });
-        },ioExecutor);
+                        renew(key, stale);
+                        return CompletableFuture.completedFuture(stale);
+                    }, ioExecutor);
+        }).handle((fresh, ex) ->
+        {
+            if (WikiCircuitBreaker.isOpen(ex))
+            {
+                log.debug("Wiki unavailable, keeping stale droptable for {}", name);
+                return stale;
+            }
+            if (ex != null)
+            {
+                log.warn("Refresh failed for {}, keeping stale droptable", name, ex);
+                return stale;
+            }
+            return fresh != null ? fresh : stale;
+        });
+    }
+
+    /** Rewrite an unchanged table so it counts as fresh again. */
+    private void renew(String key, NpcDropData data)
+    {
+        DropStore s = store;
+        if (s == null)
+        {
+            return;
+        }
+        try
+        {
+            addIndex(s.write(key, data), data);
+        }
+        catch (IOException ex)
+        {
+            log.error("Failed to renew cache entry {}", key, ex);
+        }
     }
 
     /**
-     * @return a collection of all cached NPC drop data in memory
+     * Refresh an expired table in the background. Callers already have the
+     * stale table, so listeners are only told about the refresh if the drops
+     * actually changed.
+     */
+    private void revalidate(int npcId, String name, int level, String key, NpcDropData stale)
+    {
+        refresh(npcId, name, level, key, stale, Priority.BACKGROUND).thenAccept(fresh ->
+        {
+            // compare drops only; a new page revision does not mean the drops changed
+            if (fresh != stale && fresh != null
+                    && !gson.toJson(fresh.getDropTableSections()).equals(gson.toJson(stale.getDropTableSections())))
+            {
+                eventBus.post(new DropTableRefreshed(stale, fresh));
+            }
+        });
+    }
+
+    /**
+     * @return a collection of all cached NPC drop data, decoding any entries
+     * that have not been read yet
      */
     public Collection<NpcDropData> getAllNpcData()
     {
         loadIndex();
-        return new ArrayList<>(cache.values());
+        List<NpcDropData> all = new ArrayList<>(entries.size());
+        for (String key : entries.keySet())
+        {
+            DropStore.Entry entry = entries.get(key);
+            NpcDropData data = entry == null || isExpired(entry) ? null : read(key);
+            if (data != null)
+            {
+                all.add(data);
+            }
+        }
+        return all;
     }
 
     /**
-     * Return a list of NPC names containing the supplied query. Matches from
-     * the local cache are combined with wiki search results to ensure partial
-     * lookups surface all relevant NPCs.
+     * Return a list of NPC names containing the supplied query. Cached names
+     * are answered from an in-memory index, followed by NPCs with drop tables
+     * from the bundled {@link NpcCatalog}; the wiki is only searched when the
+     * catalog is missing or incomplete and that yields fewer than a page of
+     * results.
      */
     public CompletableFuture<List<String>> searchNpcNames(String query)
     {
         return CompletableFuture.supplyAsync(() ->
         {
-            String lc = query.toLowerCase(Locale.ROOT).trim();
             loadIndex();
 
-            // Preserve insertion order while de-duplicating names
-            Set<String> names = cache.values().stream()
-                    .map(NpcDropData::getName)
-                    .filter(Objects::nonNull)
-                    .filter(n -> n.toLowerCase(Locale.ROOT).contains(lc))
-                    .collect(Collectors.toCollection(LinkedHashSet::new));
-
-            try
+            // Preserve local order while de-duplicating names
+            Set<String> names = new LinkedHashSet<>(npcNames.search(query, LOCAL_SEARCH_TARGET));
+            if (names.size() < LOCAL_SEARCH_TARGET && npcCatalog.isLoaded())
             {
-                names.addAll(dropFetcher.searchNpcNames(query));
+                names.addAll(npcCatalog.searchNames(query, LOCAL_SEARCH_TARGET));
             }
-            catch (Exception ex)
+            return names;
+        }, ioExecutor).thenCompose(names ->
+        {
+            if (names.size() >= LOCAL_SEARCH_TARGET || npcCatalog.isComplete())
             {
-                log.error("Wiki search failed for {}", query, ex);
+                return CompletableFuture.completedFuture(new ArrayList<>(names));
             }
+            return dropFetcher.searchNpcNames(query).handle((found, ex) ->
+            {
+                if (ex != null)
+                {
+                    log.error("Wiki search failed for {}", query, ex);
+                }
+                else
+                {
+                    names.addAll(found);
+                }
+                return new ArrayList<>(names);
+            });
+        });
+    }
 
-            return new ArrayList<>(names);
-        }, ioExecutor);
+    private boolean isFresh(DropStore.Entry entry)
+    {
+        Instant cutoff = Instant.now().minus(MAX_AGE);
+        return Instant.ofEpochMilli(entry.writtenAt).isAfter(cutoff);
     }
 
-    private boolean isFresh(Path file)
+    /** @return true if the entry is too old to be served, even stale */
+    private boolean isExpired(DropStore.Entry entry)
+    {
+        Instant cutoff = Instant.now().minus(MAX_STALE_AGE);
+        return !Instant.ofEpochMilli(entry.writtenAt).isAfter(cutoff);
+    }
+
+    /**
+     * Return the decoded table for a key regardless of its age, reading it
+     * from the store on first access.
+     */
+    private NpcDropData read(String key)
     {
+        DropStore.Entry entry = entries.get(key);
+        DropStore s = store;
+        if (entry == null || s == null)
+        {
+            return null;
+        }
+
+        NpcDropData data = cache.get(key);
+        if (data != null)
+        {
+            return data;
+        }
+
         try
         {
-            Instant cutoff = Instant.now().minus(MAX_AGE);
-            return Files.getLastModifiedTime(file).toInstant().isAfter(cutoff);
+            data = s.read(entry);
         }
-        catch (IOException e)
+        catch (IOException ex)
         {
-            return false;
+            log.error("Failed to read cached droptable {}", key, ex);
+            return null;
         }
+        if (data != null)
+        {
+            cache.put(key, data);
+        }
+        return data;
     }
 
-    /** Locate an existing cache file by name and level regardless of stored ID. */
-    private Path findExistingCacheFile(String safeName, int level) throws IOException
+    /**
+     * Find the store key for a lookup. Tables are stored under their wiki page
+     * ID while the game asks with its own NPC ID, so an ID lookup falls back to
+     * where the last fetch for that ID was stored, then to name and level.
+     */
+    private String resolveKey(int npcId, String name, int level)
     {
-        String key = safeName + "_" + level;
-        Path p = nameIndex.get(key);
-        if (p != null && Files.exists(p))
+        if (npcId != 0)
         {
-            if (isFresh(p))
+            String key = DropStore.keyFor(npcId, name, level);
+            if (entries.containsKey(key))
             {
-                return p;
+                return key;
             }
-            Files.deleteIfExists(p);
-            removeIndex(p);
+            String stored = storedKeys.get(flightKey(npcId, name, level));
+            if (stored != null && entries.containsKey(stored))
+            {
+                return stored;
+            }
+        }
+        return findExistingKey(DropStore.safeName(name), level);
+    }
+
+    private String findExistingKey(String safeName, int level)
+    {
+        String key = nameIndex.get(safeName + "_" + level);
+        if (key == null)
+        {
+            return null;
+        }
+        DropStore.Entry entry = entries.get(key);
+        if (entry != null && (!isExpired(entry) || !dropFetcher.isWikiAvailable()))
+        {
+            return key;
         }
+        removeEntries(Collections.singletonList(key));
         return null;
     }
 
@@ -254,69 +576,25 @@ public class DropCache
         {
             throw new IOException("Player name is not available");
         }
-        return RUNELITE_DIR.toPath()
-                .resolve("lootledger")
-                .resolve(player)
-                .resolve("drops");
-    }
-
-    /** Resolve the on-disk cache path for a specific NPC. */
-    private Path getCacheFile(int npcId, String name, int level) throws IOException
-    {
-        String safeName = name.replaceAll("[^A-Za-z0-9]", "_");
-        Path dir = getCacheDir();
-        Files.createDirectories(dir);
-        String fn = npcId + "_" + safeName + "_" + level + ".json";
-        return dir.resolve(fn);
+        return cacheRoot.resolve(player).resolve("drops");
     }
 
     /**
-     * Deletes cached drop table files older than {@link #MAX_AGE} and purges
-     * them from the in-memory index.
+     * Deletes cached drop tables that are too old to be served, even stale,
+     * and purges them from the in-memory index.
      */
     public void pruneOldCaches()
     {
-        String player = accountManager.getPlayerName();
-        if (player == null)
+        if (store == null)
         {
             return;
         }
 
-        Path dir = RUNELITE_DIR.toPath()
-                .resolve("lootledger")
-                .resolve(player)
-                .resolve("drops");
-
-        if (!Files.exists(dir))
-        {
-            return;
-        }
-
-        Instant cutoff = Instant.now().minus(MAX_AGE);
-        try (Stream<Path> files = Files.list(dir))
-        {
-            files.filter(Files::isRegularFile)
-                    .forEach(p ->
-                    {
-                        try
-                        {
-                            Instant mod = Files.getLastModifiedTime(p).toInstant();
-                            if (mod.isBefore(cutoff))
-                            {
-                                Files.deleteIfExists(p);
-                                removeIndex(p);
-                            }
-                        }
-                        catch (IOException ex)
-                        {
-                            log.error("Failed to delete old drop cache {}", p, ex);
-                        }
-                    });
-        }
-        catch (IOException ex)
-        {
-            log.error("Error pruning drop cache directory {}", dir, ex);
-        }
+        List<String> stale = entries.values().stream()
+                .filter(this::isExpired)
+                .map(e -> e.key)
+                .collect(Collectors.toList());
+        removeEntries(stale);
     }
 
     /**
@@ -328,50 +606,107 @@ public class DropCache
         String player = accountManager.getPlayerName();
         if (player == null) return;
 
-        Path dir = RUNELITE_DIR.toPath()
-                .resolve("lootledger")
-                .resolve(player)
-                .resolve("drops");
+        Path dir = cacheRoot.resolve(player).resolve("drops");
 
-        if (Files.exists(dir))
+        synchronized (this)
         {
-            try (Stream<Path> files = Files.list(dir))
+            closeStore();
+
+            if (Files.exists(dir))
             {
-                files.filter(Files::isRegularFile)
-                        .forEach(p ->
-                        {
-                            try
-                            {
-                                Files.deleteIfExists(p);
-                            }
-                            catch (IOException ex)
+                try (Stream<Path> files = Files.list(dir))
+                {
+                    files.filter(Files::isRegularFile)
+                            .forEach(p ->
                             {
-                                log.error("Failed to delete drop cache {}", p, ex);
-                            }
-                        });
+                                try
+                                {
+                                    Files.deleteIfExists(p);
+                                }
+                                catch (IOException ex)
+                                {
+                                    log.error("Failed to delete drop cache {}", p, ex);
+                                }
+                            });
+                }
+                catch (IOException ex)
+                {
+                    log.error("Error clearing drop cache directory {}", dir, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Close the current store so the next access reopens it, e.g. after the
+     * configured store format changed.
+     */
+    public synchronized void reload()
+    {
+        closeStore();
+    }
+
+    /** Remove the given keys from the store and the in-memory indices. */
+    private void removeEntries(Collection<String> keys)
+    {
+        if (keys.isEmpty())
+        {
+            return;
+        }
+
+        DropStore s = store;
+        if (s != null)
+        {
+            try
+            {
+                s.remove(keys);
             }
             catch (IOException ex)
             {
-                log.error("Error clearing drop cache directory {}", dir, ex);
+                log.error("Failed to remove drop cache entries {}", keys, ex);
             }
         }
-
-        cache.clear();
-        nameIndex.clear();
-        indexLoaded = true;
+        keys.forEach(this::removeIndex);
     }
 
-    /** Remove the given file from the in-memory indices. */
-    private void removeIndex(Path p)
+    private void addIndex(DropStore.Entry entry, NpcDropData data)
     {
-        NpcDropData data = cache.remove(p);
+        DropStore.Entry previous = entries.put(entry.key, entry);
+        // a refreshed table keeps its name; re-adding it would only leave a tombstone behind
+        if (previous == null || !Objects.equals(previous.name, entry.name))
+        {
+            npcNames.add(entry.name);
+            if (previous != null)
+            {
+                npcNames.remove(previous.name);
+            }
+        }
         if (data != null)
         {
-            nameIndex.remove(buildNameKey(data.getName(), data.getLevel()));
+            cache.put(entry.key, data);
+            sources.put(entry.key, data);
+        }
+        else if (entry.sources != null)
+        {
+            sources.put(entry.key, entry.sources);
+        }
+        nameIndex.put(buildNameKey(entry.name, entry.level), entry.key);
+    }
+
+    /** Remove the given key from the in-memory indices. */
+    private void removeIndex(String key)
+    {
+        cache.remove(key);
+        sources.remove(key);
+        DropStore.Entry entry = entries.remove(key);
+        if (entry != null)
+        {
+            npcNames.remove(entry.name);
+            nameIndex.remove(buildNameKey(entry.name, entry.level), key);
         }
     }
 
-    /** Lazily populate the in-memory indices from existing cache files. */
+    /** Lazily open the store and populate the in-memory indices from it. */
     private void loadIndex()
     {
         if (indexLoaded)
@@ -387,55 +722,88 @@ public class DropCache
             try
             {
                 Path dir = getCacheDir();
-                if (Files.exists(dir))
+                boolean json = config.cacheStoreMode() == LootLedgerConfig.StoreMode.JSON_FILES;
+                boolean lazy = !json && config.lazyDropCache();
+                DropStore s = json
+                        ? new JsonDropStore(dir, gson, MAX_STALE_AGE)
+                        : new BinaryDropStore(dir, gson, MAX_STALE_AGE, lazy);
+                cache = new DropMemoryCache(config.memoryCachePolicy(), config.memoryCacheMaxEntries(),
+                        config.memoryCacheMaxMb() * 1024L * 1024L, lazy);
+
+                Map<String, NpcDropData> decoded = new HashMap<>();
+                for (DropStore.Entry e : s.open(decoded))
                 {
-                    try (Stream<Path> files = Files.list(dir))
-                    {
-                        for (Path p : files.filter(Files::isRegularFile).collect(Collectors.toList()))
-                        {
-                            if (!isFresh(p))
-                            {
-                                Files.deleteIfExists(p);
-                                continue;
-                            }
-                            try
-                            {
-                                String json = Files.readString(p, StandardCharsets.UTF_8);
-                                NpcDropData data = gson.fromJson(json, NpcDropData.class);
-                                if (data != null && data.getDropTableSections() != null && !data.getDropTableSections().isEmpty())
-                                {
-                                    cache.put(p, data);
-                                    nameIndex.put(buildNameKey(data.getName(), data.getLevel()), p);
-                                }
-                                else
-                                {
-                                    Files.deleteIfExists(p);
-                                }
-                            }
-                            catch (Exception e)
-                            {
-                                log.error("Skipping bad cache file {}", p, e);
-                                Files.deleteIfExists(p);
-                            }
-                        }
-                    }
+                    addIndex(e, decoded.get(e.key));
                 }
+                store = s;
+                indexLoaded = true;
             }
             catch (IOException e)
             {
                 log.error("Error loading cache index", e);
             }
-            indexLoaded = true;
         }
     }
 
+    /**
+     * Cached drops of an item, most common first, e.g. for a "who drops this?"
+     * lookup. Answered from memory in time proportional to the result. The
+     * sources of tables that have not been decoded come from the store's
+     * index: the binary store keeps them there and the JSON store decodes
+     * every table on open anyway.
+     *
+     * @param itemId canonical item ID
+     */
+    public List<ItemSource> findSources(int itemId)
+    {
+        loadIndex();
+        return sources.get(itemId);
+    }
+
+    /**
+     * @return hit, miss and eviction counters of the in-memory tier
+     */
+    public String getMemoryCacheStats()
+    {
+        return cache.stats().toString();
+    }
+
+    private synchronized void closeStore()
+    {
+        DropStore s = store;
+        if (s != null)
+        {
+            log.debug("Drop cache memory tier: {}", cache.stats());
+        }
+        store = null;
+        indexLoaded = false;
+        if (s != null)
+        {
+            s.close();
+        }
+        entries.clear();
+        cache.clear();
+        nameIndex.clear();
+        storedKeys.clear();
+        sources.clear();
+        npcNames.clear();
+    }
+
     public void shutdown() {
+        closeStore();
         ioExecutor.shutdown();
     }
 
 
+    /** Key identifying one load: NPC id, case/spacing-insensitive name and level. */
+    static String flightKey(int npcId, String name, int level)
+    {
+        String normalized = name == null ? "" : name.replace('_', ' ').trim().toLowerCase(Locale.ROOT);
+        return npcId + "|" + normalized + "|" + level;
+    }
+
     private String buildNameKey(String name, int level)
     {
-        return name.replaceAll("[^A-Za-z0-9]", "_") + "_" + level;
+        return DropStore.safeName(name == null ? "" : name) + "_" + level;
     }
 }
@@ -0,0 +1,122 @@
+package com.lootledger.drops;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary encoding of {@link NpcDropData} used by {@link BinaryDropStore}.
+ * Every payload starts with a version byte so older records stay readable when
+ * fields are added.
+ */
+final class DropDataCodec
+{
+    static final int VERSION = 3;
+
+    private static final DropItem.RarityKind[] RARITY_KINDS = DropItem.RarityKind.values();
+
+    private DropDataCodec() {}
+
+    static void write(DataOutput out, NpcDropData data) throws IOException
+    {
+        out.writeByte(VERSION);
+        out.writeInt(data.getNpcId());
+        writeString(out, data.getName());
+        out.writeInt(data.getLevel());
+        out.writeLong(data.getRevisionId());
+
+        List<DropTableSection> sections = data.getDropTableSections();
+        out.writeInt(sections == null ? 0 : sections.size());
+        if (sections == null)
+        {
+            return;
+        }
+        for (DropTableSection sec : sections)
+        {
+            writeString(out, sec.getHeader());
+            List<DropItem> items = sec.getItems();
+            out.writeInt(items == null ? 0 : items.size());
+            if (items == null)
+            {
+                continue;
+            }
+            for (DropItem item : items)
+            {
+                out.writeInt(item.getItemId());
+                writeString(out, item.getName());
+                writeString(out, item.getRarity());
+                out.writeByte(item.getRarityKind().ordinal());
+                out.writeDouble(item.getRarityFrom());
+                out.writeDouble(item.getRarityTo());
+                writeString(out, item.getOneOverRarity());
+            }
+        }
+    }
+
+    static NpcDropData read(DataInput in) throws IOException
+    {
+        int version = in.readUnsignedByte();
+        if (version < 1 || version > VERSION)
+        {
+            throw new IOException("Unsupported droptable record version " + version);
+        }
+
+        int npcId = in.readInt();
+        String name = readString(in);
+        int level = in.readInt();
+        // version 1 records predate revision tracking
+        long revisionId = version >= 2 ? in.readLong() : 0;
+
+        int sectionCount = in.readInt();
+        List<DropTableSection> sections = new ArrayList<>(sectionCount);
+        for (int s = 0; s < sectionCount; s++)
+        {
+            String header = readString(in);
+            int itemCount = in.readInt();
+            List<DropItem> items = new ArrayList<>(itemCount);
+            for (int i = 0; i < itemCount; i++)
+            {
+                int itemId = in.readInt();
+                String itemName = readString(in);
+                String rarity = readString(in);
+                if (version >= 3)
+                {
+                    int ordinal = in.readUnsignedByte();
+                    if (ordinal >= RARITY_KINDS.length)
+                    {
+                        throw new IOException("bad rarity kind " + ordinal);
+                    }
+                    DropItem.RarityKind kind = RARITY_KINDS[ordinal];
+                    double from = in.readDouble();
+                    double to = in.readDouble();
+                    items.add(new DropItem(itemId, itemName, rarity, kind, from, to, readString(in)));
+                }
+                else
+                {
+                    // older records are parsed again on load
+                    items.add(new DropItem(itemId, itemName, rarity));
+                }
+            }
+            sections.add(new DropTableSection(header, items));
+        }
+        NpcDropData data = new NpcDropData(npcId, name, level, sections);
+        data.setRevisionId(revisionId);
+        return data;
+    }
+
+    static void writeString(DataOutput out, String s) throws IOException
+    {
+        out.writeBoolean(s != null);
+        if (s != null)
+        {
+            out.writeUTF(s);
+        }
+    }
+
+    static String readString(DataInput in) throws IOException
+    {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
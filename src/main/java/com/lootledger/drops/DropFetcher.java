@@ -3,111 +3,246 @@ package com.lootledger.drops;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.lootledger.drops.WikiRequestScheduler.Priority;
+import com.lootledger.items.ItemIdCache;
 import com.lootledger.items.ItemIdIndex;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.ItemComposition;
 import net.runelite.client.callback.ClientThread;
 import net.runelite.client.game.ItemManager;
 import net.runelite.http.api.item.ItemPrice;
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
-import okhttp3.Response;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.IOException;
+import java.io.StringReader;
 import java.io.UncheckedIOException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.BooleanSupplier;
 
 /**
  * Retrieves NPC drop information from the wiki and resolves item + NPC IDs.
+ * All requests go through the {@link WikiRequestScheduler}; transient
+ * failures are retried with backoff, and a {@link WikiCircuitBreaker} stops
+ * requests altogether while the wiki is down.
  */
 @Slf4j
 @Singleton
 public class DropFetcher
 {
     private static final String USER_AGENT = "RuneLite-LootLedger/1.1.2";
-
-    private final OkHttpClient httpClient;
+    private static final String API_URL = "https://oldschool.runescape.wiki/api.php";
+    // api.php limit on titles per query for regular clients
+    private static final int MAX_TITLES_PER_QUERY = 50;
+    // client-thread time per tick spent resolving names missing from the item id cache
+    private static final long RESOLVE_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    // attempts per request, the first one included
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_BASE_MILLIS = 500;
+    // a longer Retry-After is not waited out; the circuit breaker holds requests instead
+    private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    // resolveItemId result when the lookup failed, as opposed to finding no item
+    private static final int UNRESOLVED = -1;
+
+    private final WikiRequestScheduler scheduler;
     private final ItemManager itemManager;
     private final ClientThread clientThread;
+    private final ItemIdCache itemIdCache;
     private ExecutorService fetchExecutor;
+    private final SingleFlight<String, NpcDropData> fetches = new SingleFlight<>();
+    private final WikiCircuitBreaker breaker = new WikiCircuitBreaker();
+    private static final BooleanSupplier NOT_CANCELLED = () -> false;
 
     @Inject
-    public DropFetcher(OkHttpClient httpClient, ItemManager itemManager, ClientThread clientThread)
+    public DropFetcher(WikiRequestScheduler scheduler, ItemManager itemManager, ClientThread clientThread, ItemIdCache itemIdCache)
     {
-        this.httpClient = httpClient;
+        this.scheduler = scheduler;
         this.itemManager  = itemManager;
         this.clientThread = clientThread;
+        this.itemIdCache = itemIdCache;
     }
 
     /**
-     * Asynchronously fetch an NPC's drop table from the wiki.
+     * Asynchronously fetch an NPC's drop table from the wiki. Concurrent
+     * requests for the same NPC share one download, sent with the priority
+     * of whoever asked first.
      */
-    public CompletableFuture<NpcDropData> fetch(int npcId, String name, int level)
+    public CompletableFuture<NpcDropData> fetch(int npcId, String name, int level, Priority priority)
     {
-        ensureExecutor();
-        return CompletableFuture.supplyAsync(() -> {
-            String url = buildWikiUrl(npcId, name);
-            String html = fetchHtml(url);
-            Document doc = Jsoup.parse(html);
-
-            String actualName = name;
-            Element heading = doc.selectFirst("h1#firstHeading");
-            if (heading != null) {
-                actualName = heading.text();
-            }
+        return fetches.run(DropCache.flightKey(npcId, name, level), () -> doFetch(npcId, name, level, priority));
+    }
+
+    private CompletableFuture<NpcDropData> doFetch(int npcId, String name, int level, Priority priority)
+    {
+        // the page is parsed while it streams in, on the request's own thread
+        return send(buildWikiUrl(npcId, name), priority, NOT_CANCELLED,
+                res -> DropPageParser.parse(res.body().charStream()))
+                .thenCompose(parsed -> {
+                    if (parsed.sections.isEmpty()) {
+                        return CompletableFuture.<NpcDropData>completedFuture(null); // skip NPCs without drop tables
+                    }
+
+                    String actualName = parsed.title != null ? parsed.title : name;
+                    int resolvedLevel = level > 0 ? level : parsed.combatLevel;
+                    return resolvePage(parsed.canonicalHref, priority).thenApply(page -> {
+                        NpcDropData data = new NpcDropData(page.pageId, actualName, resolvedLevel, parsed.sections);
+                        data.setRevisionId(page.revisionId);
+                        return data;
+                    });
+                })
+                .thenCompose(this::resolveItems);
+    }
+
+    /**
+     * Asynchronously fetch drop tables for several NPC names at once. Page IDs,
+     * revisions and wikitext for up to {@value #MAX_TITLES_PER_QUERY} names
+     * come back from a single api.php query, and drop tables are read straight
+     * from the wikitext. Only pages whose wikitext needs rendering to be read
+     * (see {@link WikitextDropParser}), or whose content the wiki left out of
+     * an oversized response, cost one more {@code action=parse} request each.
+     *
+     * @return drop data keyed by the requested name; names without a page or
+     * without drop tables are absent
+     */
+    public CompletableFuture<Map<String, NpcDropData>> fetchByNames(List<String> names, int level)
+    {
+        return fetchByNames(names, level, Priority.SEARCH, NOT_CANCELLED);
+    }
+
+    /**
+     * Like {@link #fetchByNames(List, int)}, but sent with the given priority
+     * and skipping requests that have not been sent yet once
+     * {@code cancelled} returns true. A cancelled title query fails the whole
+     * batch with a {@link CancellationException}; skipped pages are left out
+     * of the result. Requests already on the wire are allowed to finish.
+     */
+    public CompletableFuture<Map<String, NpcDropData>> fetchByNames(List<String> names, int level, Priority priority,
+                                                                   BooleanSupplier cancelled)
+    {
+        return queryPagesByTitle(names, priority, cancelled)
+                .thenCompose(pages ->
+                {
+                    Map<Integer, CompletableFuture<NpcDropData>> byPage = new HashMap<>();
+                    for (PageInfo page : pages.values())
+                    {
+                        byPage.computeIfAbsent(page.pageId, id -> readPage(page, level, priority, cancelled)
+                                .thenCompose(this::resolveItems)
+                                .exceptionally(ex ->
+                                {
+                                    if (WikiRequestScheduler.isCancellation(ex) || WikiCircuitBreaker.isOpen(ex))
+                                    {
+                                        log.debug("Skipped fetching {}: {}", page.title, ex.toString());
+                                    }
+                                    else
+                                    {
+                                        log.error("Error fetching drop data for {}", page.title, ex);
+                                    }
+                                    return null;
+                                }));
+                    }
+
+                    return CompletableFuture.allOf(byPage.values().toArray(new CompletableFuture<?>[0]))
+                            .thenApply(v ->
+                            {
+                                Map<String, NpcDropData> out = new LinkedHashMap<>();
+                                pages.forEach((name, page) ->
+                                {
+                                    NpcDropData data = byPage.get(page.pageId).join();
+                                    if (data != null)
+                                    {
+                                        out.put(name, data);
+                                    }
+                                });
+                                return out;
+                            });
+                });
+    }
+
+    /**
+     * Resolve item IDs from the persistent name cache. Names not seen before are
+     * resolved on the client thread via ItemManager + Items.json index, in one
+     * task that yields to the next tick whenever it exceeds its time budget.
+     * A name is only cached as a non-item if the index was loaded and nothing
+     * matched it; after a failed lookup it is tried again with the next table.
+     */
+    private CompletableFuture<NpcDropData> resolveItems(NpcDropData data)
+    {
+        if (data == null) {
+            return CompletableFuture.completedFuture(null);
+        }
 
-            int resolvedLevel = level > 0 ? level : parseCombatLevel(doc);
-            int actualId = resolveNpcId(doc);
-            List<DropTableSection> sections = parseSections(doc);
-            if (sections.isEmpty()) {
-                return null; // skip NPCs without drop tables
+        // the item index loads in the background; wait for it off the client thread
+        return ItemIdIndex.loadAsync().thenCompose(v -> {
+            Map<String, List<DropItem>> misses = new LinkedHashMap<>();
+            for (DropTableSection sec : data.getDropTableSections()) {
+                for (DropItem d : sec.getItems()) {
+                    Integer cached = itemIdCache.get(d.getName());
+                    if (cached != null) {
+                        d.setItemId(cached);
+                    } else if (isNonItem(d.getName())) {
+                        d.setItemId(0);
+                    } else {
+                        misses.computeIfAbsent(d.getName(), k -> new ArrayList<>()).add(d);
+                    }
+                }
             }
-            return new NpcDropData(actualId, actualName, resolvedLevel, sections);
-        }, fetchExecutor).thenCompose(data -> {
-            if (data == null) {
-                return CompletableFuture.completedFuture(null);
+            if (misses.isEmpty()) {
+                return CompletableFuture.completedFuture(data);
             }
 
+            List<String> names = new ArrayList<>(misses.keySet());
+            boolean indexLoaded = ItemIdIndex.isLoaded();
+            int[][] candidates = ItemIdIndex.findIdsFlex(names);
+
             CompletableFuture<NpcDropData> resolved = new CompletableFuture<>();
+            int[] next = {0};
             clientThread.invoke(() -> {
-                // Resolve item IDs on client thread via ItemManager + Items.json index
-                for (DropTableSection sec : data.getDropTableSections()) {
-                    for (DropItem d : sec.getItems()) {
-                        String itemName = d.getName();
-                        d.setItemId(resolveItemId(itemName));
+                long deadline = System.nanoTime() + RESOLVE_BUDGET_NANOS;
+                while (next[0] < names.size()) {
+                    int i = next[0]++;
+                    String name = names.get(i);
+                    int id = resolveItemId(name, candidates[i]);
+                    for (DropItem d : misses.get(name)) {
+                        d.setItemId(Math.max(id, 0));
+                    }
+                    if (id > 0 || id == 0 && indexLoaded) {
+                        itemIdCache.put(name, id);
+                    }
+                    if (next[0] < names.size() && System.nanoTime() > deadline) {
+                        return false; // run again next tick
                     }
                 }
                 resolved.complete(data);
+                return true;
             });
             return resolved;
         });
     }
 
-    /** Resolve an item name to an ID using Items.json first, then fallback to GE-backed search. */
-    private int resolveItemId(String itemName)
+    private static boolean isNonItem(String itemName)
     {
         if (itemName == null || itemName.isEmpty()) {
-            return 0;
-        }
-        // Skip known non-items
-        String lower = itemName.trim().toLowerCase(Locale.ROOT);
-        if ("nothing".equals(lower) || "unknown".equals(lower)) {
-            return 0;
+            return true;
         }
+        String trimmed = itemName.trim();
+        return "nothing".equalsIgnoreCase(trimmed) || "unknown".equalsIgnoreCase(trimmed);
+    }
 
+    /**
+     * Resolve an item name to an ID using its Items.json candidates first, then fallback to GE-backed search.
+     *
+     * @return the canonical item ID, 0 if no item has this name, or {@link #UNRESOLVED} if the search failed
+     */
+    private int resolveItemId(String itemName, int[] candidates)
+    {
         // try Items.json index (handles non-tradeables)
-        int[] candidates = ItemIdIndex.findIdsFlex(itemName);
         if (candidates.length > 0) {
             int best = ItemIdIndex.pickBestId(itemManager, candidates);
             if (best > 0) {
@@ -126,313 +261,224 @@ public class DropFetcher
                 }
             }
         } catch (Exception ex) {
-            // Ignore
+            log.debug("Item search for {} failed", itemName, ex);
+            return UNRESOLVED;
         }
 
         return 0;
     }
 
-    /** Extract drop table sections */
-    private List<DropTableSection> parseSections(Document doc)
+    /** Resolve the canonical wiki page ID and current revision from the page's canonical link. */
+    private CompletableFuture<PageInfo> resolvePage(String href, Priority priority)
     {
-        Elements tables = doc.select("table.item-drops");
-        List<DropTableSection> sections = new ArrayList<>();
-
-        for (Element table : tables)
-        {
-            Map<String, Integer> col = buildColumnIndexMap(table);
-
-            Integer itemCol = col.get("item");
-            Integer rarityCol = col.get("rarity");
-            if (itemCol == null || rarityCol == null)
-            {
-                continue; // table not understood
-            }
-
-            String header = findSectionHeader(table);
-
-            List<DropItem> items = new ArrayList<>();
-            Elements rows = table.select("tbody > tr");
-
-            for (Element row : rows)
-            {
-                // Skip header-like rows inside tbody
-                if (!row.select("th").isEmpty())
-                {
-                    continue;
-                }
-
-                Elements tds = row.select("td");
-                if (itemCol >= tds.size())
-                {
-                    continue;
-                }
-
-                Element itemTd = tds.get(itemCol);
+        if (href == null) {
+            return CompletableFuture.completedFuture(PageInfo.UNKNOWN);
+        }
 
-                String name = extractItemName(itemTd);
-                if (name.isEmpty() || name.equalsIgnoreCase("nothing"))
-                {
-                    continue;
-                }
+        String title = href.substring(href.lastIndexOf('/') + 1);
+        title = URLDecoder.decode(title, StandardCharsets.UTF_8);
+        title = title.replace(' ', '_');
 
-                String rarity = "";
-                if (rarityCol < tds.size())
-                {
-                    rarity = extractRarity(tds.get(rarityCol));
-                }
-                else
-                {
-                    // Fallback: locate a cell containing the new rarity spans
-                    Element rarityTd = row.selectFirst("td:has(span[data-drop-fraction]), td:has(span[data-drop-oneover])");
-                    if (rarityTd != null)
-                    {
-                        rarity = extractRarity(rarityTd);
+        final String t = title;
+        return queryPageInfo("titles=" + URLEncoder.encode(title, StandardCharsets.UTF_8), priority)
+                .handle((page, ex) -> {
+                    if (WikiCircuitBreaker.isOpen(ex)) {
+                        log.debug("Not resolving NPC ID for {}: {}", t, ex.getMessage());
+                        return PageInfo.UNKNOWN;
                     }
-                }
-
-                items.add(new DropItem(0, name, rarity));
-            }
+                    if (ex != null) {
+                        log.error("Error resolving NPC ID for {}", t, ex);
+                        return PageInfo.UNKNOWN;
+                    }
+                    if (page == null) {
+                        log.error("No page ID found for title {}", t);
+                        return PageInfo.UNKNOWN;
+                    }
+                    return page;
+                });
+    }
 
-            if (!items.isEmpty()) {
-                sections.add(new DropTableSection(header, items));
-            }
-        }
-        return sections;
+    /**
+     * Asynchronously look up the latest revision of a wiki page. This is a
+     * single small api.php request, so cached tables can be revalidated
+     * without downloading and parsing the page again.
+     *
+     * @return the page's latest revision id, or 0 if the page does not exist
+     */
+    public CompletableFuture<Long> fetchRevisionId(int pageId, Priority priority)
+    {
+        return queryPageInfo("pageids=" + pageId, priority).thenApply(page -> page == null ? 0L : page.revisionId);
     }
 
-    /** Find the nearest section header preceding the table (supports mw-heading wrappers). */
-    private String findSectionHeader(Element table)
+    /** Run a {@code prop=info} query and return the first existing page, or null. */
+    private CompletableFuture<PageInfo> queryPageInfo(String selector, Priority priority)
     {
-        Element prev = table.previousElementSibling();
-        while (prev != null)
-        {
-            if (prev.is("h2,h3,h4"))
-            {
-                String txt = prev.text().trim();
-                return txt.isEmpty() ? "Drops" : txt;
-            }
+        String apiUrl = API_URL + "?action=query&format=json&prop=info&" + selector;
+        return send(apiUrl, priority, NOT_CANCELLED, res -> {
+            assert res.body() != null;
+            String body = res.body().string();
+            JsonElement root = new JsonParser().parse(body);
+            JsonElement pages = root.getAsJsonObject()
+                    .getAsJsonObject("query")
+                    .getAsJsonObject("pages");
 
-            if (prev.hasClass("mw-heading"))
-            {
-                Element h = prev.selectFirst("h2,h3,h4");
-                if (h != null)
-                {
-                    String txt = h.text().trim();
-                    return txt.isEmpty() ? "Drops" : txt;
+            for (Map.Entry<String, JsonElement> entry : pages.getAsJsonObject().entrySet()) {
+                JsonObject page = entry.getValue().getAsJsonObject();
+                if (page.has("pageid") && !page.has("missing")) {
+                    return toPageInfo(page);
                 }
             }
-
-            prev = prev.previousElementSibling();
-        }
-        return "Drops";
+            return null;
+        });
     }
 
-    /** Build a normalized map of column name -> index from the table header row. */
-    private Map<String, Integer> buildColumnIndexMap(Element table)
+    /**
+     * Resolve many titles to pages, {@value #MAX_TITLES_PER_QUERY} per api.php
+     * request, following title normalization and redirects.
+     *
+     * @return existing pages keyed by the requested name
+     */
+    private CompletableFuture<Map<String, PageInfo>> queryPagesByTitle(List<String> names, Priority priority,
+                                                                      BooleanSupplier cancelled)
     {
-        Map<String, Integer> map = new HashMap<>();
-
-        Element headerRow = table.selectFirst("tr:has(th)");
-        if (headerRow == null)
+        List<CompletableFuture<Map<String, PageInfo>>> chunks = new ArrayList<>();
+        for (int start = 0; start < names.size(); start += MAX_TITLES_PER_QUERY)
         {
-            return map;
+            List<String> chunk = names.subList(start, Math.min(names.size(), start + MAX_TITLES_PER_QUERY));
+            String url = API_URL + "?action=query&format=json&prop=info|revisions&rvprop=content&rvslots=main"
+                    + "&redirects=1&titles="
+                    + URLEncoder.encode(String.join("|", chunk), StandardCharsets.UTF_8);
+            chunks.add(send(url, priority, cancelled, res -> readPages(chunk, res.body().string())));
         }
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            Map<String, PageInfo> result = new LinkedHashMap<>();
+            chunks.forEach(c -> result.putAll(c.join()));
+            return result;
+        });
+    }
 
-        Elements ths = headerRow.select("th");
-        for (int i = 0; i < ths.size(); i++)
-        {
-            Element th = ths.get(i);
+    /** Map each requested title of one title query to its page. */
+    private static Map<String, PageInfo> readPages(List<String> chunk, String body)
+    {
+        Map<String, PageInfo> result = new LinkedHashMap<>();
+        JsonObject query = new JsonParser().parse(body).getAsJsonObject().getAsJsonObject("query");
+        if (query == null) {
+            return result;
+        }
 
-            // OSRS wiki uses class "item-col" on the Item column header
-            if (th.hasClass("item-col"))
-            {
-                map.put("item", i);
+        // requested title -> final title after normalization and redirects
+        Map<String, String> renames = new HashMap<>();
+        for (String kind : new String[] { "normalized", "redirects" }) {
+            if (query.has(kind)) {
+                for (JsonElement el : query.getAsJsonArray(kind)) {
+                    JsonObject o = el.getAsJsonObject();
+                    renames.put(o.get("from").getAsString(), o.get("to").getAsString());
+                }
             }
+        }
 
-            String key = normalizeHeader(th.text());
-            if (!key.isEmpty())
-            {
-                map.put(key, i);
+        Map<String, PageInfo> byTitle = new HashMap<>();
+        for (Map.Entry<String, JsonElement> entry : query.getAsJsonObject("pages").entrySet()) {
+            JsonObject page = entry.getValue().getAsJsonObject();
+            if (page.has("pageid") && !page.has("missing")) {
+                PageInfo info = toPageInfo(page);
+                byTitle.put(info.title, info);
             }
         }
 
-        return map;
-    }
-
-    private String normalizeHeader(String s)
-    {
-        if (s == null) return "";
-        String t = s.trim().toLowerCase(Locale.ROOT);
-        if (t.isEmpty()) return "";
-
-        if (t.contains("item")) return "item";
-        if (t.contains("rarity")) return "rarity";
-        return "";
+        for (String name : chunk) {
+            String title = name;
+            // normalized first, then at most one redirect hop
+            title = renames.getOrDefault(title, title);
+            title = renames.getOrDefault(title, title);
+            PageInfo page = byTitle.get(title);
+            if (page != null) {
+                result.put(name, page);
+            }
+        }
+        return result;
     }
 
-    /** Extract item name from the item cell. */
-    private String extractItemName(Element itemTd)
+    /** Read drop tables from the page's wikitext, or from its rendered content if the wikitext will not do. */
+    private CompletableFuture<NpcDropData> readPage(PageInfo page, int level, Priority priority, BooleanSupplier cancelled)
     {
-        if (itemTd == null) return "";
-
-        Element a = itemTd.selectFirst("a.itemlink[title], a[title]");
-        if (a != null)
+        if (page.content == null)
         {
-            String title = a.attr("title");
-            if (title != null && !title.trim().isEmpty())
-            {
-                return title.trim();
-            }
+            return parsePage(page, level, priority, cancelled);
         }
+        // off the request thread, like rendered pages
+        ensureExecutor();
+        return CompletableFuture.supplyAsync(() -> WikitextDropParser.parse(page.content), fetchExecutor)
+                .thenCompose(parsed -> parsed == null
+                        ? parsePage(page, level, priority, cancelled)
+                        : CompletableFuture.completedFuture(toDropData(page, level, parsed, page.revisionId)));
+    }
 
-        return itemTd.text().replace("(m)", "").trim();
+    /** Fetch a page's rendered content via {@code action=parse} and extract its drop tables. */
+    private CompletableFuture<NpcDropData> parsePage(PageInfo page, int level, Priority priority, BooleanSupplier cancelled)
+    {
+        String url = API_URL + "?action=parse&format=json&formatversion=2&prop=text|revid&disablelimitreport=1&pageid="
+                + page.pageId;
+        // parse on the fetch pool so the request thread is free for the next request
+        ensureExecutor();
+        return send(url, priority, cancelled, res -> res.body().string())
+                .thenApplyAsync(body -> parsePage(page, level, body), fetchExecutor);
     }
 
-    /** Extract rarity from data-drop-* spans. */
-    private String extractRarity(Element rarityTd)
+    private static NpcDropData parsePage(PageInfo page, int level, String body)
     {
-        if (rarityTd == null) return "";
+        JsonObject parse = new JsonParser().parse(body).getAsJsonObject().getAsJsonObject("parse");
+        if (parse == null || !parse.has("text")) {
+            return null;
+        }
 
-        Elements spans = rarityTd.select("span[data-drop-fraction], span[data-drop-oneover]");
-        if (!spans.isEmpty())
+        DropPageParser.Page parsed;
+        try
         {
-            List<String> parts = new ArrayList<>();
-            for (Element sp : spans)
-            {
-                String v = sp.hasAttr("data-drop-fraction") ? sp.attr("data-drop-fraction") : "";
-                if (v == null || v.isEmpty())
-                {
-                    v = sp.hasAttr("data-drop-oneover") ? sp.attr("data-drop-oneover") : "";
-                }
-
-                String txt = (v != null && !v.isEmpty()) ? v : sp.text();
-                txt = txt.replace(",", "").trim();
-                if (!txt.isEmpty())
-                {
-                    parts.add(txt);
-                }
-            }
-
-            if (parts.isEmpty())
-            {
-                return "";
-            }
-            if (parts.size() == 1)
-            {
-                return parts.get(0);
-            }
-            if (parts.size() == 2)
-            {
-                return parts.get(0) + "–" + parts.get(1);
-            }
-            return String.join("; ", parts);
+            parsed = DropPageParser.parse(new StringReader(parse.get("text").getAsString()));
         }
-
-        // Fallback
-        String own = rarityTd.ownText();
-        if (own != null && !own.trim().isEmpty())
+        catch (IOException ex)
         {
-            return own.trim();
+            throw new UncheckedIOException(ex);
         }
-        return rarityTd.text().trim();
+        return toDropData(page, level, parsed, parse.has("revid") ? parse.get("revid").getAsLong() : page.revisionId);
     }
 
-    /** Attempt to parse the combat level from the NPC infobox. */
-    private int parseCombatLevel(Document doc)
+    private static NpcDropData toDropData(PageInfo page, int level, DropPageParser.Page parsed, long revisionId)
     {
-        Element infobox = doc.selectFirst("table.infobox");
-        if (infobox == null) {
-            return 0;
+        if (parsed.sections.isEmpty()) {
+            return null; // skip NPCs without drop tables
         }
-        Elements rows = infobox.select("tr");
-        for (Element row : rows) {
-            Element th = row.selectFirst("th");
-            Element td = row.selectFirst("td");
-            if (th != null && td != null) {
-                String thText = th.text();
-                if (thText != null && thText.toLowerCase(Locale.ROOT).contains("combat level")) {
-                    String txt = td.text();
-                    String[] parts = txt.split("[^0-9]+");
-                    for (String part : parts) {
-                        if (part != null && !part.isEmpty()) {
-                            try {
-                                return Integer.parseInt(part);
-                            } catch (NumberFormatException nfe) {
-                                log.error("Failed to parse number in drop table", nfe);
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        return 0;
+
+        int resolvedLevel = level > 0 ? level : parsed.combatLevel;
+        NpcDropData data = new NpcDropData(page.pageId, page.title, resolvedLevel, parsed.sections);
+        data.setRevisionId(revisionId);
+        return data;
     }
 
-    /** Resolve the canonical wiki page ID for the provided document. */
-    private int resolveNpcId(Document doc)
+    private static PageInfo toPageInfo(JsonObject page)
     {
-        Element link = doc.selectFirst("link[rel=canonical]");
-        if (link == null) {
-            return 0;
-        }
-
-        String href = link.attr("href");
-        String title = href.substring(href.lastIndexOf('/') + 1);
-        title = URLDecoder.decode(title, StandardCharsets.UTF_8);
-        title = title.replace(' ', '_');
-        String apiUrl = "https://oldschool.runescape.wiki/api.php?action=query&format=json&prop=info&titles="
-                + URLEncoder.encode(title, StandardCharsets.UTF_8);
-
-        Request req = new Request.Builder()
-                .url(apiUrl)
-                .header("User-Agent", USER_AGENT)
-                .build();
-
-        try (Response res = httpClient.newCall(req).execute())
-        {
-            if (!res.isSuccessful()) {
-                log.warn("Failed to resolve NPC ID for {}: HTTP {}", title, res.code());
-                return 0;
+        long revision = page.has("lastrevid") ? page.get("lastrevid").getAsLong() : 0;
+        String title = page.has("title") ? page.get("title").getAsString() : null;
+        // present when prop=revisions asked for it and the response was not cut short
+        String content = null;
+        JsonArray revisions = page.getAsJsonArray("revisions");
+        if (revisions != null && revisions.size() > 0) {
+            JsonObject main = revisions.get(0).getAsJsonObject().getAsJsonObject("slots");
+            main = main == null ? null : main.getAsJsonObject("main");
+            if (main != null && main.has("*")) {
+                content = main.get("*").getAsString();
             }
-
-            assert res.body() != null;
-            String body = res.body().string();
-            JsonElement root = new JsonParser().parse(body);
-            JsonElement pages = root.getAsJsonObject()
-                    .getAsJsonObject("query")
-                    .getAsJsonObject("pages");
-
-            for (Map.Entry<String, JsonElement> entry : pages.getAsJsonObject().entrySet()) {
-                JsonElement page = entry.getValue();
-                if (page.getAsJsonObject().has("pageid")) {
-                    return page.getAsJsonObject().get("pageid").getAsInt();
-                }
-            }
-
-            log.error("No page ID found for title {}", title);
-        }
-        catch (IOException ex)
-        {
-            log.error("Error resolving NPC ID for {}", title, ex);
         }
-        return 0;
+        return new PageInfo(page.get("pageid").getAsInt(), revision, title, content);
     }
 
     /** Query the wiki's search API for NPC names matching the provided text. */
-    public List<String> searchNpcNames(String query)
+    public CompletableFuture<List<String>> searchNpcNames(String query)
     {
-        String url = "https://oldschool.runescape.wiki/api.php?action=opensearch&format=json&limit=20&namespace=0&search="
+        String url = API_URL + "?action=opensearch&format=json&limit=20&namespace=0&search="
                 + URLEncoder.encode(query, StandardCharsets.UTF_8);
-        Request req = new Request.Builder()
-                .url(url)
-                .header("User-Agent", USER_AGENT)
-                .build();
-        try (Response res = httpClient.newCall(req).execute())
-        {
-            if (!res.isSuccessful()) {
-                throw new IOException("HTTP " + res.code());
-            }
+        return send(url, Priority.SEARCH, NOT_CANCELLED, res -> {
             assert res.body() != null;
             String body = res.body().string();
             JsonArray arr = new JsonParser().parse(body).getAsJsonArray();
@@ -442,11 +488,7 @@ public class DropFetcher
                 names.add(titles.get(i).getAsString());
             }
             return names;
-        }
-        catch (IOException ex)
-        {
-            throw new UncheckedIOException(ex);
-        }
+        });
     }
 
     private String buildWikiUrl(int npcId, String name)
@@ -464,29 +506,105 @@ public class DropFetcher
         return url.toString();
     }
 
-    private String fetchHtml(String url)
+    /**
+     * @return false while the circuit breaker holds back wiki requests, in
+     * which case callers should make do with cached data
+     */
+    public boolean isWikiAvailable()
+    {
+        return breaker.allowsRequests();
+    }
+
+    /**
+     * Queue a wiki request with the plugin's user agent on the shared
+     * scheduler. Timeouts, connection errors, 408, 429 and 5xx responses are
+     * retried up to {@value #MAX_ATTEMPTS} attempts in all, with jittered
+     * exponential backoff and never sooner than a {@code Retry-After} header
+     * asks. Anything else, e.g. a 404, fails right away. While the circuit
+     * breaker is open nothing is sent and the future fails with a
+     * {@link WikiCircuitBreaker.OpenException}.
+     */
+    private <T> CompletableFuture<T> send(String url, Priority priority, BooleanSupplier cancelled,
+                                          WikiRequestScheduler.ResponseHandler<T> handler)
     {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(url, priority, cancelled, handler, 1, result);
+        return result;
+    }
+
+    private <T> void attempt(String url, Priority priority, BooleanSupplier cancelled,
+                             WikiRequestScheduler.ResponseHandler<T> handler, int attempt, CompletableFuture<T> result)
+    {
+        try {
+            breaker.acquire();
+        } catch (WikiCircuitBreaker.OpenException ex) {
+            result.completeExceptionally(ex);
+            return;
+        }
+
         Request req = new Request.Builder()
                 .url(url)
                 .header("User-Agent", USER_AGENT)
                 .build();
-        try (Response res = httpClient.newCall(req).execute())
-        {
-            if (!res.isSuccessful()) {
-                throw new IOException("HTTP " + res.code());
+        scheduler.submit(req, priority, cancelled, handler).whenComplete((value, ex) -> {
+            if (ex == null) {
+                breaker.onSuccess();
+                result.complete(value);
+                return;
             }
-            assert res.body() != null;
-            return res.body().string();
-        }
-        catch (IOException ex)
-        {
-            throw new UncheckedIOException(ex);
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            if (WikiRequestScheduler.isCancellation(cause)) {
+                breaker.onSkipped();
+                result.completeExceptionally(cause);
+                return;
+            }
+            if (!isTransient(cause)) {
+                // the wiki did answer, just not with anything usable
+                breaker.onSuccess();
+                result.completeExceptionally(cause);
+                return;
+            }
+
+            long retryAfter = cause instanceof WikiHttpException ? ((WikiHttpException) cause).getRetryAfterMillis() : -1;
+            if (retryAfter > MAX_RETRY_DELAY_MILLIS) {
+                breaker.openFor(retryAfter);
+                result.completeExceptionally(cause);
+                return;
+            }
+            breaker.onFailure();
+            if (attempt >= MAX_ATTEMPTS || cancelled.getAsBoolean()) {
+                result.completeExceptionally(cause);
+                return;
+            }
+
+            long delay = Math.max(backoffMillis(attempt), retryAfter);
+            log.debug("Retrying {} in {} ms after {}", url, delay, cause.toString());
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)
+                    .execute(() -> attempt(url, priority, cancelled, handler, attempt + 1, result));
+        });
+    }
+
+    /** Failures that may go away by themselves: timeouts, dropped connections, throttling and server errors. */
+    private static boolean isTransient(Throwable ex)
+    {
+        if (ex instanceof WikiHttpException) {
+            int code = ((WikiHttpException) ex).getCode();
+            return code == 408 || code == 429 || code >= 500;
         }
+        return ex instanceof IOException;
+    }
+
+    /** Exponential backoff with equal jitter: half the delay fixed, the other half random. */
+    private static long backoffMillis(int attempt)
+    {
+        long delay = RETRY_BASE_MILLIS << (attempt - 1);
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
     }
 
-    /** Creates the fetch executor if it is missing or has been shut down. */
+    /** Starts the request scheduler and creates the parse executor if it is missing or has been shut down. */
     public void startUp()
     {
+        scheduler.startUp();
         if (fetchExecutor == null || fetchExecutor.isShutdown() || fetchExecutor.isTerminated())
         {
             fetchExecutor = Executors.newFixedThreadPool(
@@ -495,9 +613,10 @@ public class DropFetcher
         }
     }
 
-    /** Shut down the executor service (non-blocking, graceful). */
+    /** Cancel queued wiki requests and shut down the executor service (non-blocking, graceful). */
     public void shutdown()
     {
+        scheduler.shutdown();
         if (fetchExecutor != null)
         {
             fetchExecutor.shutdown();
@@ -515,4 +634,24 @@ public class DropFetcher
             );
         }
     }
+
+    /** Page ID, latest revision id, title and possibly wikitext reported by api.php. */
+    private static final class PageInfo
+    {
+        static final PageInfo UNKNOWN = new PageInfo(0, 0, null, null);
+
+        final int pageId;
+        final long revisionId;
+        final String title;
+        // wikitext of the latest revision, if it was asked for
+        final String content;
+
+        PageInfo(int pageId, long revisionId, String title, String content)
+        {
+            this.pageId = pageId;
+            this.revisionId = revisionId;
+            this.title = title;
+            this.content = content;
+        }
+    }
 }
@@ -1,14 +1,9 @@
 package com.lootledger.drops;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.util.Arrays;
-import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-
 @Setter
 @Getter
 public class DropItem
@@ -17,151 +12,131 @@ public class DropItem
     private String name;
     private String rarity;
 
-    // e.g., "12.5%"
-    private static final Pattern PCT      = Pattern.compile("^(\\d+(?:\\.\\d+)?)%$");
-    // e.g., "2 x 1 / 128"  or  "2x1/128"
-    private static final Pattern MULT     = Pattern.compile("^(\\d+(?:\\.\\d+)?)\\s*[xX]\\s*(\\d+(?:\\.\\d+)?)\\s*/\\s*(\\d+(?:\\.\\d+)?)$");
-    // e.g., "1/128"
-    private static final Pattern FRAC     = Pattern.compile("^(\\d+(?:\\.\\d+)?)\\s*/\\s*(\\d+(?:\\.\\d+)?)$");
-    // strip trailing parenthetical, e.g., "1/128 (without ring)"
-    private static final Pattern PAREN    = Pattern.compile("\\s*\\([^)]*\\)$", Pattern.UNICODE_CASE);
-    // replace "in" with '/', e.g., "1 in 128"
-    private static final Pattern IN_SYNT  = Pattern.compile("\\bin\\b", Pattern.CASE_INSENSITIVE);
-    // remove bracketed annotations like "[confirmation needed]"
-    private static final Pattern BRACKETS = Pattern.compile("\\[[^\\]]*\\]");
+    // Parsed form of rarity, computed once on construction (or on first use for
+    // tables deserialized without it) so sorting and tooltips do no string work
+    @Setter(AccessLevel.NONE)
+    private RarityKind rarityKind;
+    @Setter(AccessLevel.NONE)
+    private double rarityFrom;
+    @Setter(AccessLevel.NONE)
+    private double rarityTo;
+    @Setter(AccessLevel.NONE)
+    private String oneOverRarity;
+
+    /** Shape of a parsed rarity. */
+    public enum RarityKind
+    {
+        ALWAYS,
+        FRACTION,
+        RANGE,
+        LIST,
+        UNKNOWN
+    }
 
     public DropItem(int itemId, String name, String rarity)
     {
         this.itemId = itemId;
         this.name = name;
         this.rarity = rarity;
+        parseRarity();
+    }
+
+    /** Restore an item whose rarity was already parsed, e.g. from the drop cache. */
+    DropItem(int itemId, String name, String rarity, RarityKind rarityKind, double rarityFrom, double rarityTo, String oneOverRarity)
+    {
+        this.itemId = itemId;
+        this.name = name;
+        this.rarity = rarity;
+        this.rarityKind = rarityKind;
+        this.rarityFrom = rarityFrom;
+        this.rarityTo = rarityTo;
+        this.oneOverRarity = oneOverRarity;
+    }
+
+    public void setRarity(String rarity)
+    {
+        this.rarity = rarity;
+        parseRarity();
     }
 
     /**
-     * Convert a raw rarity string like "2/128" (or "1 in 128", "12.5%", ranges) into
+     * The raw rarity string like "2/128" (or "1 in 128", "12.5%", ranges) in
      * normalized one-over form, preserving ranges, e.g., "1/64" or "1/64–1/32".
      */
     public String getOneOverRarity()
     {
-        if (rarity == null) return "";
-        String[] parts = rarity.split("\\s*;\\s*|,\\s+");
-        return Arrays.stream(parts)
-                .map(this::normalizeSegment)
-                .collect(Collectors.joining("; "));
+        ensureParsed();
+        return oneOverRarity;
     }
 
-    /**
-     * Parse the rarity and return its numeric denominator. Unknown/unsupported
-     * values become POSITIVE_INFINITY so they sort as the rarest.
-     */
-    public double getRarityValue()
+    public RarityKind getRarityKind()
     {
-        String oneOver = getOneOverRarity();
-        if (oneOver.isEmpty())
-        {
-            return Double.POSITIVE_INFINITY;
-        }
-
-        Matcher m = Pattern.compile("1/(\\d+(?:\\.\\d+)?)").matcher(oneOver);
-        if (m.find())
-        {
-            try { return Double.parseDouble(m.group(1)); }
-            catch (NumberFormatException ex) { return Double.POSITIVE_INFINITY; }
-        }
-
-        if (oneOver.equalsIgnoreCase("Always"))
-        {
-            return 0d;
-        }
-
-        return Double.POSITIVE_INFINITY;
+        ensureParsed();
+        return rarityKind;
     }
 
-    private String normalizeSegment(String raw)
+    /** Denominator of the first one-over part, or 0 if there is none. */
+    public double getRarityFrom()
     {
-        String cleaned = raw == null ? "" : raw;
-        cleaned = BRACKETS.matcher(cleaned).replaceAll("");
-        cleaned = cleaned
-                .replace("×", "x")
-                .replace(",", "")
-                .replace("≈", "")
-                .replace("~", "")
-                .replaceAll(PAREN.pattern(), "")
-                .replaceAll(IN_SYNT.pattern(), "/")
-                .trim();
-
-        // Handle ranges like "1/128 – 1/64"
-        String[] range = cleaned.split("\\s*[–—-]\\s*");
-        if (range.length > 1)
-        {
-            return Arrays.stream(range)
-                    .map(this::simplifySingle)
-                    .collect(Collectors.joining("–"));
-        }
-
-        return simplifySingle(cleaned);
+        ensureParsed();
+        return rarityFrom;
     }
 
-    private String simplifySingle(String s)
+    /** Denominator of the last one-over part, or 0 if there is none. */
+    public double getRarityTo()
     {
-        if (s == null || s.isEmpty())
-        {
-            return "";
-        }
-
-        Matcher m;
-
-        m = PCT.matcher(s);
-        if (m.matches())
-        {
-            double pct = safeDouble(m.group(1));
-            if (pct == 0) return "0";
-            return formatOneOver(100.0 / pct);
-        }
+        ensureParsed();
+        return rarityTo;
+    }
 
-        m = MULT.matcher(s);
-        if (m.matches())
+    /**
+     * The rarity's numeric denominator. Unknown/unsupported values are
+     * POSITIVE_INFINITY so they sort as the rarest.
+     */
+    public double getRarityValue()
+    {
+        ensureParsed();
+        switch (rarityKind)
         {
-            double factor = safeDouble(m.group(1));
-            double a = safeDouble(m.group(2));
-            double b = safeDouble(m.group(3));
-            if (factor != 0 && a != 0)
-            {
-                return formatOneOver(b / (a * factor));
-            }
+            case ALWAYS:
+                return 0d;
+            case UNKNOWN:
+                return Double.POSITIVE_INFINITY;
+            default:
+                return rarityFrom;
         }
+    }
 
-        m = FRAC.matcher(s);
-        if (m.matches())
+    private void ensureParsed()
+    {
+        // tables cached before the parsed fields existed are deserialized without them
+        if (rarityKind == null)
         {
-            double a = safeDouble(m.group(1));
-            double b = safeDouble(m.group(2));
-            if (a != 0)
-            {
-                return formatOneOver(b / a);
-            }
+            parseRarity();
         }
-
-        // fallback to cleaned input
-        return s;
     }
 
-    private double safeDouble(String s)
+    private void parseRarity()
     {
-        try { return Double.parseDouble(s); }
-        catch (Exception e) { return Double.NaN; }
-    }
+        String oneOver = RarityTokenizer.normalize(rarity);
+        double from = RarityTokenizer.denominator(oneOver, false);
+        boolean found = !Double.isNaN(from);
 
-    private String formatOneOver(double val)
-    {
-        if (Double.isNaN(val) || Double.isInfinite(val))
+        RarityKind kind;
+        if (found)
         {
-            return "";
+            kind = oneOver.contains("; ") ? RarityKind.LIST
+                    : oneOver.contains("–") ? RarityKind.RANGE
+                    : RarityKind.FRACTION;
         }
-        if (Math.abs(val - Math.round(val)) < 0.01)
+        else
         {
-            return "1/" + Math.round(val);
+            kind = oneOver.equalsIgnoreCase("Always") ? RarityKind.ALWAYS : RarityKind.UNKNOWN;
         }
-        return String.format(Locale.ROOT, "1/%.2f", val);
+
+        oneOverRarity = oneOver;
+        rarityFrom = found ? from : 0;
+        rarityTo = found ? RarityTokenizer.denominator(oneOver, true) : 0;
+        rarityKind = kind;
     }
 }
@@ -0,0 +1,390 @@
+package com.lootledger.drops;
+
+import com.lootledger.LootLedgerConfig;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory tier for decoded droptables, sitting in front of the
+ * {@link DropStore}. Misses are re-read from disk by {@link DropCache}.
+ *
+ * <p>Bounded by entry count and estimated heap bytes, using either plain LRU
+ * or W-TinyLFU: a small LRU admission window in front of a segmented LRU
+ * main area, where a window victim only displaces a main victim if a
+ * frequency sketch says it is used more often. That keeps tables for the
+ * NPCs a player keeps coming back to even while they browse many one-offs.
+ *
+ * <p>Optionally, evicted tables are demoted to a weak tier so tables still
+ * referenced elsewhere (e.g. the one on screen) are reused instead of being
+ * decoded again.
+ */
+final class DropMemoryCache
+{
+    private final LootLedgerConfig.CachePolicy policy;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final boolean weakTier;
+
+    // LRU and UNBOUNDED only use the window
+    private final LinkedHashMap<String, Node> window = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Node> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Node> protectedSegment = new LinkedHashMap<>();
+    private final int windowMax;
+    private final int protectedMax;
+    private final FrequencySketch sketch;
+    private long bytes;
+
+    private final Map<String, KeyedReference> weak = new HashMap<>();
+    private final ReferenceQueue<NpcDropData> queue = new ReferenceQueue<>();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    DropMemoryCache(LootLedgerConfig.CachePolicy policy, int maxEntries, long maxBytes, boolean weakTier)
+    {
+        this.policy = policy;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxBytes = Math.max(1, maxBytes);
+        this.weakTier = weakTier;
+        this.windowMax = Math.max(1, this.maxEntries / 100);
+        this.protectedMax = Math.max(1, (this.maxEntries - windowMax) * 4 / 5);
+        this.sketch = policy == LootLedgerConfig.CachePolicy.TINY_LFU ? new FrequencySketch(this.maxEntries) : null;
+    }
+
+    /** An unbounded tier that simply holds every table. */
+    static DropMemoryCache unbounded()
+    {
+        return new DropMemoryCache(LootLedgerConfig.CachePolicy.UNBOUNDED, Integer.MAX_VALUE, Long.MAX_VALUE, false);
+    }
+
+    synchronized NpcDropData get(String key)
+    {
+        if (sketch != null)
+        {
+            sketch.increment(key);
+        }
+
+        Node n = window.get(key);
+        if (n != null)
+        {
+            touch(window, key, n);
+        }
+        else if ((n = probation.remove(key)) != null)
+        {
+            // second hit: promote into the protected segment
+            protectedSegment.put(key, n);
+            while (protectedSegment.size() > protectedMax)
+            {
+                Map.Entry<String, Node> eldest = eldest(protectedSegment);
+                protectedSegment.remove(eldest.getKey());
+                probation.put(eldest.getKey(), eldest.getValue());
+            }
+        }
+        else if ((n = protectedSegment.get(key)) != null)
+        {
+            touch(protectedSegment, key, n);
+        }
+
+        if (n != null)
+        {
+            hits++;
+            return n.data;
+        }
+
+        if (weakTier)
+        {
+            expunge();
+            KeyedReference ref = weak.get(key);
+            NpcDropData data = ref == null ? null : ref.get();
+            if (data != null)
+            {
+                hits++;
+                put(key, data);
+                return data;
+            }
+        }
+
+        misses++;
+        return null;
+    }
+
+    synchronized void put(String key, NpcDropData data)
+    {
+        remove(key);
+        Node n = new Node(data, estimateBytes(data));
+        window.put(key, n);
+        bytes += n.weight;
+        if (weakTier)
+        {
+            expunge();
+            weak.put(key, new KeyedReference(key, data, queue));
+        }
+
+        switch (policy)
+        {
+            case UNBOUNDED:
+                return;
+            case LRU:
+                while (size() > maxEntries || (bytes > maxBytes && size() > 1))
+                {
+                    evictEldest(window);
+                }
+                return;
+            case TINY_LFU:
+                while (window.size() > windowMax)
+                {
+                    admitFromWindow();
+                }
+                while (bytes > maxBytes && size() > 1)
+                {
+                    evictEldest(!probation.isEmpty() ? probation : !protectedSegment.isEmpty() ? protectedSegment : window);
+                }
+        }
+    }
+
+    synchronized void remove(String key)
+    {
+        Node n = window.remove(key);
+        if (n == null) n = probation.remove(key);
+        if (n == null) n = protectedSegment.remove(key);
+        if (n != null)
+        {
+            bytes -= n.weight;
+        }
+        weak.remove(key);
+    }
+
+    synchronized void clear()
+    {
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+        weak.clear();
+        bytes = 0;
+        expunge();
+    }
+
+    synchronized Stats stats()
+    {
+        return new Stats(hits, misses, evictions, size(), bytes);
+    }
+
+    private int size()
+    {
+        return window.size() + probation.size() + protectedSegment.size();
+    }
+
+    /**
+     * Move the window's eldest table into the main area, evicting whichever of
+     * it and the main area's eldest table is used less often.
+     */
+    private void admitFromWindow()
+    {
+        Map.Entry<String, Node> candidate = eldest(window);
+        window.remove(candidate.getKey());
+
+        if (probation.size() + protectedSegment.size() < maxEntries - windowMax)
+        {
+            probation.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+
+        LinkedHashMap<String, Node> victimSegment = !probation.isEmpty() ? probation : protectedSegment;
+        if (victimSegment.isEmpty())
+        {
+            evicted(candidate.getValue());
+            return;
+        }
+        Map.Entry<String, Node> victim = eldest(victimSegment);
+        if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim.getKey()))
+        {
+            victimSegment.remove(victim.getKey());
+            evicted(victim.getValue());
+            probation.put(candidate.getKey(), candidate.getValue());
+        }
+        else
+        {
+            evicted(candidate.getValue());
+        }
+    }
+
+    private void evictEldest(LinkedHashMap<String, Node> segment)
+    {
+        Map.Entry<String, Node> eldest = eldest(segment);
+        segment.remove(eldest.getKey());
+        evicted(eldest.getValue());
+    }
+
+    private void evicted(Node n)
+    {
+        bytes -= n.weight;
+        evictions++;
+    }
+
+    private static void touch(LinkedHashMap<String, Node> segment, String key, Node n)
+    {
+        segment.remove(key);
+        segment.put(key, n);
+    }
+
+    private static Map.Entry<String, Node> eldest(LinkedHashMap<String, Node> segment)
+    {
+        Iterator<Map.Entry<String, Node>> it = segment.entrySet().iterator();
+        return it.next();
+    }
+
+    /** Drop weak entries whose tables have been collected. */
+    private void expunge()
+    {
+        KeyedReference ref;
+        while ((ref = (KeyedReference) queue.poll()) != null)
+        {
+            weak.remove(ref.key, ref);
+        }
+    }
+
+    /** Rough heap footprint of a decoded table, used for the byte bound. */
+    static long estimateBytes(NpcDropData data)
+    {
+        long b = 64 + stringBytes(data.getName());
+        List<DropTableSection> sections = data.getDropTableSections();
+        if (sections == null)
+        {
+            return b;
+        }
+        for (DropTableSection sec : sections)
+        {
+            b += 48 + stringBytes(sec.getHeader());
+            if (sec.getItems() == null)
+            {
+                continue;
+            }
+            for (DropItem item : sec.getItems())
+            {
+                b += 64 + stringBytes(item.getName()) + stringBytes(item.getRarity()) + stringBytes(item.getOneOverRarity());
+            }
+        }
+        return b;
+    }
+
+    private static long stringBytes(String s)
+    {
+        return s == null ? 0 : 40 + 2L * s.length();
+    }
+
+    /** Snapshot of the tier's counters. */
+    static final class Stats
+    {
+        final long hits;
+        final long misses;
+        final long evictions;
+        final int entries;
+        final long bytes;
+
+        Stats(long hits, long misses, long evictions, int entries, long bytes)
+        {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("hits=%d misses=%d evictions=%d entries=%d bytes~%d", hits, misses, evictions, entries, bytes);
+        }
+    }
+
+    private static final class Node
+    {
+        final NpcDropData data;
+        final long weight;
+
+        Node(NpcDropData data, long weight)
+        {
+            this.data = data;
+            this.weight = weight;
+        }
+    }
+
+    private static final class KeyedReference extends WeakReference<NpcDropData>
+    {
+        final String key;
+
+        KeyedReference(String key, NpcDropData data, ReferenceQueue<NpcDropData> queue)
+        {
+            super(data, queue);
+            this.key = key;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit-saturating access counters. Counters are
+     * halved every {@code sampleSize} increments so old popularity fades.
+     */
+    private static final class FrequencySketch
+    {
+        private static final int[] SEEDS = { 0x97cb3127, 0xb3f6fd3b, 0x32a2df4f, 0xf86e9a95 };
+
+        private final int[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity)
+        {
+            int width = Integer.highestOneBit(Math.max(16, Math.min(capacity, 1 << 20) * 2) - 1) << 1;
+            this.table = new int[width * SEEDS.length];
+            this.mask = width - 1;
+            this.sampleSize = 10 * width;
+        }
+
+        void increment(String key)
+        {
+            int h = key.hashCode();
+            for (int row = 0; row < SEEDS.length; row++)
+            {
+                int i = indexOf(h, row);
+                if (table[i] < 15)
+                {
+                    table[i]++;
+                }
+            }
+            if (++additions >= sampleSize)
+            {
+                for (int i = 0; i < table.length; i++)
+                {
+                    table[i] >>>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(String key)
+        {
+            int h = key.hashCode();
+            int min = Integer.MAX_VALUE;
+            for (int row = 0; row < SEEDS.length; row++)
+            {
+                min = Math.min(min, table[indexOf(h, row)]);
+            }
+            return min;
+        }
+
+        private int indexOf(int h, int row)
+        {
+            int x = h * SEEDS[row];
+            x ^= x >>> 16;
+            return row * (mask + 1) + (x & mask);
+        }
+    }
+}
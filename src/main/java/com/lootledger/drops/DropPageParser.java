@@ -0,0 +1,753 @@
+package com.lootledger.drops;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.jsoup.select.Elements;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+
+/**
+ * Extracts drop tables, the page title, the canonical link and the infobox
+ * combat level from wiki NPC pages.
+ *
+ * <p>{@link #parse(Reader)} scans the HTML as it is read and only hands the
+ * few elements it needs to Jsoup, instead of building a DOM for the whole
+ * page. A table's section header is the nearest heading among its preceding
+ * siblings, looking into {@code mw-heading} wrappers.
+ */
+@Slf4j
+final class DropPageParser
+{
+    private static final Set<String> VOID_ELEMENTS = new HashSet<>(Arrays.asList(
+            "area", "base", "br", "col", "embed", "hr", "img", "input", "link", "meta", "param", "source", "track", "wbr"));
+    // Tag names are matched against these so common tags do not allocate a new String
+    private static final String[] COMMON_TAGS = {
+            "a", "b", "i", "p", "td", "tr", "th", "li", "ul", "br", "img", "div", "span", "table", "tbody",
+            "thead", "link", "meta", "script", "style", "small", "sup", "h1", "h2", "h3", "h4", "abbr" };
+    private static final Set<String> RAW_TEXT_ELEMENTS = new HashSet<>(Arrays.asList("script", "style"));
+    // Start tags that implicitly close an open paragraph
+    private static final Set<String> CLOSES_P = new HashSet<>(Arrays.asList(
+            "div", "table", "h1", "h2", "h3", "h4", "h5", "h6", "ul", "ol", "dl", "pre", "blockquote", "p"));
+
+    private DropPageParser() {}
+
+    /** What the plugin needs from an NPC page. */
+    static final class Page
+    {
+        String title;
+        String canonicalHref;
+        int combatLevel;
+        final List<DropTableSection> sections = new ArrayList<>();
+    }
+
+    /** Parse a page incrementally from the given reader. */
+    static Page parse(Reader in) throws IOException
+    {
+        return new Scanner(in).run();
+    }
+
+    /**
+     * Extract one drop table section, or null if the table's columns are not
+     * understood or it lists no items.
+     */
+    static DropTableSection parseTable(Element table, String header)
+    {
+        Map<String, Integer> col = buildColumnIndexMap(table);
+
+        Integer itemCol = col.get("item");
+        Integer rarityCol = col.get("rarity");
+        if (itemCol == null || rarityCol == null)
+        {
+            return null; // table not understood
+        }
+
+        List<DropItem> items = new ArrayList<>();
+        Elements rows = table.select("tbody > tr");
+
+        for (Element row : rows)
+        {
+            // Skip header-like rows inside tbody
+            if (!row.select("th").isEmpty())
+            {
+                continue;
+            }
+
+            Elements tds = row.select("td");
+            if (itemCol >= tds.size())
+            {
+                continue;
+            }
+
+            Element itemTd = tds.get(itemCol);
+
+            String name = extractItemName(itemTd);
+            if (name.isEmpty() || name.equalsIgnoreCase("nothing"))
+            {
+                continue;
+            }
+
+            String rarity = "";
+            if (rarityCol < tds.size())
+            {
+                rarity = extractRarity(tds.get(rarityCol));
+            }
+            else
+            {
+                // Fallback: locate a cell containing the new rarity spans
+                Element rarityTd = row.selectFirst("td:has(span[data-drop-fraction]), td:has(span[data-drop-oneover])");
+                if (rarityTd != null)
+                {
+                    rarity = extractRarity(rarityTd);
+                }
+            }
+
+            items.add(new DropItem(0, name, rarity));
+        }
+
+        return items.isEmpty() ? null : new DropTableSection(header, items);
+    }
+
+    /** Build a normalized map of column name -> index from the table header row. */
+    private static Map<String, Integer> buildColumnIndexMap(Element table)
+    {
+        Map<String, Integer> map = new HashMap<>();
+
+        Element headerRow = table.selectFirst("tr:has(th)");
+        if (headerRow == null)
+        {
+            return map;
+        }
+
+        Elements ths = headerRow.select("th");
+        for (int i = 0; i < ths.size(); i++)
+        {
+            Element th = ths.get(i);
+
+            // OSRS wiki uses class "item-col" on the Item column header
+            if (th.hasClass("item-col"))
+            {
+                map.put("item", i);
+            }
+
+            String key = normalizeHeader(th.text());
+            if (!key.isEmpty())
+            {
+                map.put(key, i);
+            }
+        }
+
+        return map;
+    }
+
+    private static String normalizeHeader(String s)
+    {
+        if (s == null) return "";
+        String t = s.trim().toLowerCase(Locale.ROOT);
+        if (t.isEmpty()) return "";
+
+        if (t.contains("item")) return "item";
+        if (t.contains("rarity")) return "rarity";
+        return "";
+    }
+
+    /** Extract item name from the item cell. */
+    private static String extractItemName(Element itemTd)
+    {
+        if (itemTd == null) return "";
+
+        Element a = itemTd.selectFirst("a.itemlink[title], a[title]");
+        if (a != null)
+        {
+            String title = a.attr("title");
+            if (title != null && !title.trim().isEmpty())
+            {
+                return title.trim();
+            }
+        }
+
+        return itemTd.text().replace("(m)", "").trim();
+    }
+
+    /** Extract rarity from data-drop-* spans. */
+    private static String extractRarity(Element rarityTd)
+    {
+        if (rarityTd == null) return "";
+
+        Elements spans = rarityTd.select("span[data-drop-fraction], span[data-drop-oneover]");
+        if (!spans.isEmpty())
+        {
+            List<String> parts = new ArrayList<>();
+            for (Element sp : spans)
+            {
+                String v = sp.hasAttr("data-drop-fraction") ? sp.attr("data-drop-fraction") : "";
+                if (v == null || v.isEmpty())
+                {
+                    v = sp.hasAttr("data-drop-oneover") ? sp.attr("data-drop-oneover") : "";
+                }
+
+                String txt = (v != null && !v.isEmpty()) ? v : sp.text();
+                txt = txt.replace(",", "").trim();
+                if (!txt.isEmpty())
+                {
+                    parts.add(txt);
+                }
+            }
+
+            if (parts.isEmpty())
+            {
+                return "";
+            }
+            if (parts.size() == 1)
+            {
+                return parts.get(0);
+            }
+            if (parts.size() == 2)
+            {
+                return parts.get(0) + "–" + parts.get(1);
+            }
+            return String.join("; ", parts);
+        }
+
+        // Fallback
+        String own = rarityTd.ownText();
+        if (own != null && !own.trim().isEmpty())
+        {
+            return own.trim();
+        }
+        return rarityTd.text().trim();
+    }
+
+    /** Attempt to parse the combat level from the NPC infobox. */
+    static int parseCombatLevel(Element doc)
+    {
+        Element infobox = doc.selectFirst("table.infobox");
+        if (infobox == null) {
+            return 0;
+        }
+        Elements rows = infobox.select("tr");
+        for (Element row : rows) {
+            Element th = row.selectFirst("th");
+            Element td = row.selectFirst("td");
+            if (th != null && td != null) {
+                String thText = th.text();
+                if (thText != null && thText.toLowerCase(Locale.ROOT).contains("combat level")) {
+                    String txt = td.text();
+                    String[] parts = txt.split("[^0-9]+");
+                    for (String part : parts) {
+                        if (part != null && !part.isEmpty()) {
+                            try {
+                                return Integer.parseInt(part);
+                            } catch (NumberFormatException nfe) {
+                                log.error("Failed to parse number in drop table", nfe);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return 0;
+    }
+
+    private enum Capture
+    {
+        DROPS,
+        INFOBOX,
+        HEADING,
+        TITLE
+    }
+
+    /** A captured element; {@code heading} is the capture index of its section heading. */
+    private static final class Fragment
+    {
+        final Capture kind;
+        final int heading;
+
+        Fragment(Capture kind, int heading)
+        {
+            this.kind = kind;
+            this.heading = heading;
+        }
+    }
+
+    /** One open element; remembers the last heading seen among its children. */
+    private static final class Frame
+    {
+        final String tag;
+        final boolean mwHeading;
+        int heading = -1;
+
+        Frame(String tag, boolean mwHeading)
+        {
+            this.tag = tag;
+            this.mwHeading = mwHeading;
+        }
+    }
+
+    /**
+     * Single pass over the markup that tracks the open element stack and
+     * copies the raw HTML of interesting elements aside. The copies are
+     * wrapped in one {@code div} each and handed to Jsoup in a single parse
+     * at the end.
+     */
+    private static final class Scanner
+    {
+        private final Reader in;
+        private final char[] buf = new char[8192];
+        private int pos;
+        private int limit;
+
+        private final List<Frame> stack = new ArrayList<>();
+        private final StringBuilder tag = new StringBuilder();
+        private final StringBuilder name = new StringBuilder();
+        private final StringBuilder attrs = new StringBuilder();
+        private final List<Fragment> fragments = new ArrayList<>();
+        private final StringBuilder captured = new StringBuilder();
+        private String canonicalHref;
+        private boolean infoboxSeen;
+        private boolean titleSeen;
+
+        private boolean capturing;
+        private int captureDepth;
+
+        Scanner(Reader in)
+        {
+            this.in = in;
+            stack.add(new Frame("#root", false));
+        }
+
+        Page run() throws IOException
+        {
+            int c;
+            while ((c = read()) != -1)
+            {
+                if (c == '<')
+                {
+                    markup();
+                }
+            }
+            if (capturing)
+            {
+                finishCapture();
+            }
+            return assemble();
+        }
+
+        private int read() throws IOException
+        {
+            if (pos == limit && !fill())
+            {
+                return -1;
+            }
+            char c = buf[pos++];
+            if (capturing)
+            {
+                captured.append(c);
+            }
+            return c;
+        }
+
+        private int peek() throws IOException
+        {
+            if (pos == limit && !fill())
+            {
+                return -1;
+            }
+            return buf[pos];
+        }
+
+        private boolean fill() throws IOException
+        {
+            int n = in.read(buf, 0, buf.length);
+            pos = 0;
+            limit = Math.max(0, n);
+            return n > 0;
+        }
+
+        /** Called just after a '<' has been read. */
+        private void markup() throws IOException
+        {
+            int c = peek();
+            if (c == '!' || c == '?')
+            {
+                skipDeclaration();
+            }
+            else if (c == '/')
+            {
+                int mark = captured.length() - 1;
+                read();
+                endTag(mark);
+            }
+            else if (Character.isLetter(c))
+            {
+                startTag();
+            }
+        }
+
+        private void skipDeclaration() throws IOException
+        {
+            read();
+            int c;
+            if (peek() == '-')
+            {
+                // comment: skip to "-->"
+                int dashes = 0;
+                while ((c = read()) != -1)
+                {
+                    if (c == '>' && dashes >= 2)
+                    {
+                        return;
+                    }
+                    dashes = c == '-' ? dashes + 1 : 0;
+                }
+                return;
+            }
+            while ((c = read()) != -1 && c != '>')
+            {
+                // doctype or processing instruction
+            }
+        }
+
+        private void startTag() throws IOException
+        {
+            tag.setLength(0);
+            tag.append('<');
+            String tagName = readName();
+            readAttributes();
+            boolean selfClosing = attrs.length() > 0 && attrs.charAt(attrs.length() - 1) == '/';
+
+            if (RAW_TEXT_ELEMENTS.contains(tagName))
+            {
+                skipRawText(tagName);
+                return;
+            }
+            if (VOID_ELEMENTS.contains(tagName) || selfClosing)
+            {
+                if (canonicalHref == null && "link".equals(tagName) && attrs.indexOf("canonical") >= 0
+                        && "canonical".equalsIgnoreCase(attr(attrs.toString(), "rel")))
+                {
+                    canonicalHref = attr(attrs.toString(), "href");
+                }
+                return;
+            }
+
+            if (CLOSES_P.contains(tagName) && "p".equals(top().tag))
+            {
+                pop();
+            }
+
+            Frame parent = top();
+            stack.add(new Frame(tagName, hasClass("mw-heading")));
+            if (capturing)
+            {
+                return;
+            }
+
+            switch (tagName)
+            {
+                case "table":
+                    if (hasClass("item-drops"))
+                    {
+                        startCapture(Capture.DROPS, parent.heading);
+                    }
+                    else if (!infoboxSeen && hasClass("infobox"))
+                    {
+                        infoboxSeen = true;
+                        startCapture(Capture.INFOBOX, -1);
+                    }
+                    break;
+                case "h2":
+                case "h3":
+                case "h4":
+                    // the heading is a sibling of whatever follows it, or its wrapper is
+                    parent.heading = fragments.size();
+                    if (parent.mwHeading && stack.size() >= 3)
+                    {
+                        stack.get(stack.size() - 3).heading = fragments.size();
+                    }
+                    startCapture(Capture.HEADING, -1);
+                    break;
+                case "h1":
+                    if (!titleSeen && attrs.indexOf("firstHeading") >= 0 && "firstHeading".equals(attr(attrs.toString(), "id")))
+                    {
+                        titleSeen = true;
+                        startCapture(Capture.TITLE, -1);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * @param mark length of the capture buffer before this end tag, so
+         *             an ancestor's end tag is not copied into a capture it
+         *             implicitly closes
+         */
+        private void endTag(int mark) throws IOException
+        {
+            String tagName = readName();
+            int c;
+            while ((c = read()) != -1 && c != '>')
+            {
+                // ignore anything after the name
+            }
+
+            for (int i = stack.size() - 1; i > 0; i--)
+            {
+                if (stack.get(i).tag.equals(tagName))
+                {
+                    while (stack.size() > i + 1)
+                    {
+                        if (capturing && stack.size() == captureDepth)
+                        {
+                            captured.setLength(mark);
+                        }
+                        pop();
+                    }
+                    pop();
+                    return;
+                }
+            }
+            // stray end tag, nothing to close
+        }
+
+        private void pop()
+        {
+            if (capturing && stack.size() == captureDepth)
+            {
+                finishCapture();
+            }
+            stack.remove(stack.size() - 1);
+        }
+
+        /** Checks the current tag's class attribute, skipping the parse when the name is absent. */
+        private boolean hasClass(String className)
+        {
+            return attrs.indexOf(className) >= 0 && DropPageParser.hasClass(attrs.toString(), className);
+        }
+
+        private Frame top()
+        {
+            return stack.get(stack.size() - 1);
+        }
+
+        private void startCapture(Capture kind, int heading)
+        {
+            fragments.add(new Fragment(kind, heading));
+            captured.append("<div>").append(tag);
+            capturing = true;
+            captureDepth = stack.size();
+        }
+
+        private void finishCapture()
+        {
+            captured.append("</div>");
+            capturing = false;
+        }
+
+        private Page assemble()
+        {
+            Page page = new Page();
+            page.canonicalHref = canonicalHref;
+            if (fragments.isEmpty())
+            {
+                return page;
+            }
+
+            Elements wrappers = Jsoup.parseBodyFragment(captured.toString()).body().children();
+            if (wrappers.size() != fragments.size())
+            {
+                log.warn("Captured {} page fragments but parsed {}", fragments.size(), wrappers.size());
+                return page;
+            }
+
+            for (int i = 0; i < fragments.size(); i++)
+            {
+                Fragment f = fragments.get(i);
+                Element wrapper = wrappers.get(i);
+                switch (f.kind)
+                {
+                    case DROPS:
+                        Element table = wrapper.selectFirst("table");
+                        String header = f.heading < 0 ? "" : wrappers.get(f.heading).text().trim();
+                        DropTableSection section = table == null
+                                ? null
+                                : parseTable(table, header.isEmpty() ? "Drops" : header);
+                        if (section != null)
+                        {
+                            page.sections.add(section);
+                        }
+                        break;
+                    case INFOBOX:
+                        page.combatLevel = parseCombatLevel(wrapper);
+                        break;
+                    case TITLE:
+                        page.title = wrapper.text();
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return page;
+        }
+
+        private String readName() throws IOException
+        {
+            name.setLength(0);
+            int c;
+            while ((c = peek()) != -1 && (Character.isLetterOrDigit(c) || c == '-' || c == ':'))
+            {
+                read();
+                tag.append((char) c);
+                name.append(Character.toLowerCase((char) c));
+            }
+            for (String common : COMMON_TAGS)
+            {
+                if (common.length() == name.length() && common.contentEquals(name))
+                {
+                    return common;
+                }
+            }
+            return name.toString();
+        }
+
+        /** Read up to and including the closing '>', honoring quoted values. */
+        private void readAttributes() throws IOException
+        {
+            attrs.setLength(0);
+            int quote = 0;
+            int c;
+            while ((c = read()) != -1)
+            {
+                tag.append((char) c);
+                if (quote != 0)
+                {
+                    if (c == quote)
+                    {
+                        quote = 0;
+                    }
+                }
+                else if (c == '"' || c == '\'')
+                {
+                    quote = c;
+                }
+                else if (c == '>')
+                {
+                    break;
+                }
+                attrs.append((char) c);
+            }
+            while (attrs.length() > 0 && Character.isWhitespace(attrs.charAt(attrs.length() - 1)))
+            {
+                attrs.setLength(attrs.length() - 1);
+            }
+        }
+
+        private void skipRawText(String tagName) throws IOException
+        {
+            String end = "</" + tagName;
+            int matched = 0;
+            int c;
+            while ((c = read()) != -1)
+            {
+                if (Character.toLowerCase(c) == end.charAt(matched))
+                {
+                    if (++matched == end.length())
+                    {
+                        while ((c = read()) != -1 && c != '>')
+                        {
+                            // rest of the end tag
+                        }
+                        return;
+                    }
+                }
+                else
+                {
+                    matched = c == '<' ? 1 : 0;
+                }
+            }
+        }
+    }
+
+    /** Value of an attribute in a raw attribute string, entity-decoded, or null. */
+    static String attr(String attrs, String name)
+    {
+        int i = 0;
+        int n = attrs.length();
+        while (i < n)
+        {
+            while (i < n && (Character.isWhitespace(attrs.charAt(i)) || attrs.charAt(i) == '/'))
+            {
+                i++;
+            }
+            int start = i;
+            while (i < n && attrs.charAt(i) != '=' && !Character.isWhitespace(attrs.charAt(i)) && attrs.charAt(i) != '/')
+            {
+                i++;
+            }
+            String key = attrs.substring(start, i);
+            while (i < n && Character.isWhitespace(attrs.charAt(i)))
+            {
+                i++;
+            }
+
+            String value = "";
+            if (i < n && attrs.charAt(i) == '=')
+            {
+                i++;
+                while (i < n && Character.isWhitespace(attrs.charAt(i)))
+                {
+                    i++;
+                }
+                if (i < n && (attrs.charAt(i) == '"' || attrs.charAt(i) == '\''))
+                {
+                    char quote = attrs.charAt(i++);
+                    int end = attrs.indexOf(quote, i);
+                    end = end < 0 ? n : end;
+                    value = attrs.substring(i, end);
+                    i = end + 1;
+                }
+                else
+                {
+                    int vs = i;
+                    while (i < n && !Character.isWhitespace(attrs.charAt(i)))
+                    {
+                        i++;
+                    }
+                    value = attrs.substring(vs, i);
+                }
+            }
+
+            if (key.equalsIgnoreCase(name))
+            {
+                return Parser.unescapeEntities(value, true);
+            }
+            if (key.isEmpty())
+            {
+                i++;
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasClass(String attrs, String className)
+    {
+        String classes = attr(attrs, "class");
+        if (classes == null)
+        {
+            return false;
+        }
+        for (String c : classes.split("\\s+"))
+        {
+            if (c.equals(className))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,240 @@
+package com.lootledger.drops;
+
+import com.lootledger.LootLedgerConfig;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Actor;
+import net.runelite.api.Client;
+import net.runelite.api.GameState;
+import net.runelite.api.NPC;
+import net.runelite.api.Player;
+import net.runelite.api.events.GameStateChanged;
+import net.runelite.api.events.GameTick;
+import net.runelite.api.events.NpcDespawned;
+import net.runelite.api.events.NpcSpawned;
+import net.runelite.client.eventbus.Subscribe;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the drop tables of monsters around the player before they are asked
+ * for, so "Show Drops" on something nearby is usually a cache hit. Enabled
+ * with {@link LootLedgerConfig#prefetchNearbyDrops()}.
+ *
+ * <p>NPCs are queued as they spawn. Each game tick checks at most one NPC:
+ * the one the player is fighting if it was not tried yet, otherwise the
+ * nearest queued NPC. Whether its table is cached is checked off the client
+ * thread by {@link DropCache#prefetch}. Every NPC type is tried once per
+ * session, and a check reserves a slot of the per-minute budget that is given
+ * back if no load was needed. Loads are sent as
+ * {@link WikiRequestScheduler.Priority#BACKGROUND}, so they never hold up a
+ * table the user clicked on. Event handlers run on the client thread.
+ */
+@Slf4j
+@Singleton
+public class DropPrefetcher
+{
+    // queued NPCs further away than this, in tiles, wait until they come closer
+    private static final int MAX_DISTANCE = 15;
+    private static final int MAX_IN_FLIGHT = 2;
+    private static final long BUDGET_WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Client client;
+    private final LootLedgerConfig config;
+    private final DropCache dropCache;
+    private final DropFetcher dropFetcher;
+
+    // client thread only: queued NPCs by flight key, and keys already tried this session
+    private final Map<String, NPC> pending = new LinkedHashMap<>();
+    private final Set<String> tried = new HashSet<>();
+    private long windowStart = System.nanoTime() - BUDGET_WINDOW_NANOS;
+    // given back from the IO executor when a check finds nothing to load
+    private final AtomicInteger usedInWindow = new AtomicInteger();
+
+    // checks and loads
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger started = new AtomicInteger();
+    private final AtomicInteger loaded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    @Inject
+    public DropPrefetcher(Client client, LootLedgerConfig config, DropCache dropCache, DropFetcher dropFetcher)
+    {
+        this.client = client;
+        this.config = config;
+        this.dropCache = dropCache;
+        this.dropFetcher = dropFetcher;
+    }
+
+    @Subscribe
+    public void onNpcSpawned(NpcSpawned event)
+    {
+        NPC npc = event.getNpc();
+        if (!config.prefetchNearbyDrops() || !isCandidate(npc))
+        {
+            return;
+        }
+        String key = key(npc);
+        if (!tried.contains(key))
+        {
+            pending.putIfAbsent(key, npc);
+        }
+    }
+
+    @Subscribe
+    public void onNpcDespawned(NpcDespawned event)
+    {
+        NPC npc = event.getNpc();
+        if (isCandidate(npc))
+        {
+            pending.remove(key(npc), npc);
+        }
+    }
+
+    @Subscribe
+    public void onGameStateChanged(GameStateChanged event)
+    {
+        if (event.getGameState() == GameState.LOGIN_SCREEN)
+        {
+            // possibly another account next, with its own cache
+            reset();
+        }
+        else if (event.getGameState() == GameState.HOPPING)
+        {
+            pending.clear();
+        }
+    }
+
+    @Subscribe
+    public void onGameTick(GameTick tick)
+    {
+        if (!config.prefetchNearbyDrops())
+        {
+            pending.clear();
+            return;
+        }
+        Player player = client.getLocalPlayer();
+        if (player == null || inFlight.get() >= MAX_IN_FLIGHT || !dropFetcher.isWikiAvailable() || !hasBudget())
+        {
+            return;
+        }
+
+        NPC next = next(player);
+        if (next == null)
+        {
+            return;
+        }
+        String key = key(next);
+        pending.remove(key);
+        tried.add(key);
+
+        String name = next.getName();
+        usedInWindow.incrementAndGet();
+        inFlight.incrementAndGet();
+        dropCache.prefetch(next.getId(), name, next.getCombatLevel()).whenComplete((load, ex) ->
+        {
+            if (load == null)
+            {
+                // cached, already loading or no store; a refund landing in the next window only makes room early
+                usedInWindow.updateAndGet(used -> Math.max(0, used - 1));
+                inFlight.decrementAndGet();
+                if (ex != null)
+                {
+                    log.debug("Could not check the drop cache for {}", name, ex);
+                }
+                return;
+            }
+            start(name, load);
+        });
+    }
+
+    /** Forget queued and tried NPCs and log what was prefetched. */
+    public void reset()
+    {
+        if (started.get() > 0)
+        {
+            log.debug("Prefetched {} drop tables ({} started, {} failed or without drops)",
+                    loaded.get(), started.get(), failed.get());
+        }
+        pending.clear();
+        tried.clear();
+    }
+
+    private void start(String name, CompletableFuture<NpcDropData> load)
+    {
+        started.incrementAndGet();
+        log.debug("Prefetching drops for {}", name);
+        load.whenComplete((data, ex) ->
+        {
+            inFlight.decrementAndGet();
+            if (data != null && ex == null)
+            {
+                loaded.incrementAndGet();
+            }
+            else
+            {
+                failed.incrementAndGet();
+            }
+        });
+    }
+
+    /** @return the fight target if it still needs a table, else the nearest queued NPC in range */
+    private NPC next(Player player)
+    {
+        Actor target = player.getInteracting();
+        if (target instanceof NPC && isCandidate((NPC) target) && !tried.contains(key((NPC) target)))
+        {
+            return (NPC) target;
+        }
+
+        NPC nearest = null;
+        int best = MAX_DISTANCE + 1;
+        for (Iterator<NPC> it = pending.values().iterator(); it.hasNext(); )
+        {
+            NPC npc = it.next();
+            if (npc.getWorldLocation() == null)
+            {
+                it.remove();
+                continue;
+            }
+            int distance = player.getWorldLocation().distanceTo(npc.getWorldLocation());
+            if (distance < best)
+            {
+                best = distance;
+                nearest = npc;
+            }
+        }
+        return nearest;
+    }
+
+    private boolean hasBudget()
+    {
+        long now = System.nanoTime();
+        if (now - windowStart >= BUDGET_WINDOW_NANOS)
+        {
+            windowStart = now;
+            usedInWindow.set(0);
+        }
+        return usedInWindow.get() < config.prefetchPerMinute();
+    }
+
+    /** Only monsters: NPCs without a combat level rarely have drop tables. */
+    private static boolean isCandidate(NPC npc)
+    {
+        return npc != null && npc.getCombatLevel() > 0 && npc.getName() != null && !"null".equals(npc.getName());
+    }
+
+    private static String key(NPC npc)
+    {
+        // the same key DropCache coalesces loads by, so a click joins a prefetch in flight
+        return DropCache.flightKey(npc.getId(), npc.getName(), npc.getCombatLevel());
+    }
+}
@@ -0,0 +1,82 @@
+package com.lootledger.drops;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On-disk backing for {@link DropCache}. Implementations keep an index of
+ * every stored droptable so the cache can answer name/level lookups without
+ * decoding the tables themselves.
+ */
+interface DropStore
+{
+    /**
+     * Open the store and return the index of every live entry. Stores that
+     * have to decode tables to build their index may hand the decoded data
+     * back through {@code decoded} so it is not parsed twice.
+     */
+    List<Entry> open(Map<String, NpcDropData> decoded) throws IOException;
+
+    /** Decode the droptable referenced by the given entry. */
+    NpcDropData read(Entry entry) throws IOException;
+
+    /** Persist a droptable under the given key, replacing any previous value. */
+    Entry write(String key, NpcDropData data) throws IOException;
+
+    /** Remove the given keys from the store. Unknown keys are ignored. */
+    void remove(Collection<String> keys) throws IOException;
+
+    /** Release any open file handles. */
+    void close();
+
+    /** Build the store key used for an NPC, e.g. {@code 2_Goblin_5}. */
+    static String keyFor(int npcId, String name, int level)
+    {
+        return npcId + "_" + safeName(name) + "_" + level;
+    }
+
+    /** Replace everything but ASCII letters and digits so names are file-safe. */
+    static String safeName(String name)
+    {
+        return name.replaceAll("[^A-Za-z0-9]", "_");
+    }
+
+    /**
+     * Index record for a single stored droptable. Offset and length are only
+     * meaningful to the store that created the entry. Stores that keep the
+     * table's item sources in their index hand them out with the entry, so
+     * the item source index can be built without decoding every table.
+     */
+    final class Entry
+    {
+        final String key;
+        final int npcId;
+        final String name;
+        final int level;
+        final long writtenAt;
+        final long offset;
+        final int length;
+        // null if the store does not keep them
+        final List<ItemSource> sources;
+
+        Entry(String key, int npcId, String name, int level, long writtenAt, long offset, int length)
+        {
+            this(key, npcId, name, level, writtenAt, offset, length, null);
+        }
+
+        Entry(String key, int npcId, String name, int level, long writtenAt, long offset, int length,
+              List<ItemSource> sources)
+        {
+            this.key = key;
+            this.npcId = npcId;
+            this.name = name;
+            this.level = level;
+            this.writtenAt = writtenAt;
+            this.offset = offset;
+            this.length = length;
+            this.sources = sources;
+        }
+    }
+}
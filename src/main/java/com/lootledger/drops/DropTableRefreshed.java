@@ -0,0 +1,24 @@
+package com.lootledger.drops;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Posted when a stale droptable that was already served has been refreshed in
+ * the background and the wiki returned different drops.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public final class DropTableRefreshed
+{
+    private final NpcDropData previous;
+    private final NpcDropData refreshed;
+
+    public DropTableRefreshed(NpcDropData previous, NpcDropData refreshed)
+    {
+        this.previous = previous;
+        this.refreshed = refreshed;
+    }
+}
@@ -0,0 +1,44 @@
+package com.lootledger.drops;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * One cached drop of an item: which NPC drops it, from which section of its
+ * table and how often.
+ */
+@Getter
+@ToString
+public final class ItemSource
+{
+    private final int itemId;
+    private final int npcId;
+    private final String npcName;
+    private final int level;
+    private final String section;
+    private final String rarity;
+    // sort key, see DropItem#getRarityValue
+    private final double rarityValue;
+
+    ItemSource(NpcDropData npc, DropTableSection section, DropItem item)
+    {
+        this.itemId = item.getItemId();
+        this.npcId = npc.getNpcId();
+        this.npcName = npc.getName();
+        this.level = npc.getLevel();
+        this.section = section.getHeader();
+        this.rarity = item.getRarity();
+        this.rarityValue = item.getRarityValue();
+    }
+
+    ItemSource(int itemId, int npcId, String npcName, int level, String section, String rarity, double rarityValue)
+    {
+        this.itemId = itemId;
+        this.npcId = npcId;
+        this.npcName = npcName;
+        this.level = level;
+        this.section = section;
+        this.rarity = rarity;
+        this.rarityValue = rarityValue;
+    }
+}
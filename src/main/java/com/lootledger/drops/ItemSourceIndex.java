@@ -0,0 +1,105 @@
+package com.lootledger.drops;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inverted index from canonical item ID to the cached tables that drop it,
+ * maintained alongside {@link DropCache}'s key index. Each cache key remembers
+ * the sources it contributed so replacing or removing a table only touches
+ * its own items.
+ */
+final class ItemSourceIndex
+{
+    private static final Comparator<ItemSource> MOST_COMMON_FIRST = Comparator.comparingDouble(ItemSource::getRarityValue);
+
+    private final Map<Integer, List<ItemSource>> byItem = new HashMap<>();
+    // sources each cache key contributed
+    private final Map<String, List<ItemSource>> byKey = new HashMap<>();
+
+    /** Sources of every item in the table that resolved to an item ID. */
+    static List<ItemSource> sourcesOf(NpcDropData data)
+    {
+        List<ItemSource> sources = new ArrayList<>();
+        if (data.getDropTableSections() == null)
+        {
+            return sources;
+        }
+        for (DropTableSection section : data.getDropTableSections())
+        {
+            if (section.getItems() == null)
+            {
+                continue;
+            }
+            for (DropItem item : section.getItems())
+            {
+                if (item.getItemId() > 0)
+                {
+                    sources.add(new ItemSource(data, section, item));
+                }
+            }
+        }
+        return sources;
+    }
+
+    /** Index the table stored under {@code key}, replacing what the key contributed before. */
+    synchronized void put(String key, NpcDropData data)
+    {
+        put(key, sourcesOf(data));
+    }
+
+    /** Index sources kept by the store, without decoding the table they came from. */
+    synchronized void put(String key, List<ItemSource> sources)
+    {
+        remove(key);
+        for (ItemSource source : sources)
+        {
+            byItem.computeIfAbsent(source.getItemId(), id -> new ArrayList<>(2)).add(source);
+        }
+        byKey.put(key, sources);
+    }
+
+    synchronized void remove(String key)
+    {
+        List<ItemSource> old = byKey.remove(key);
+        if (old == null)
+        {
+            return;
+        }
+        for (ItemSource source : old)
+        {
+            List<ItemSource> list = byItem.get(source.getItemId());
+            if (list != null)
+            {
+                list.remove(source);
+                if (list.isEmpty())
+                {
+                    byItem.remove(source.getItemId());
+                }
+            }
+        }
+    }
+
+    synchronized void clear()
+    {
+        byItem.clear();
+        byKey.clear();
+    }
+
+    /** @return the sources of an item, most common first */
+    synchronized List<ItemSource> get(int itemId)
+    {
+        List<ItemSource> list = byItem.get(itemId);
+        if (list == null)
+        {
+            return Collections.emptyList();
+        }
+        List<ItemSource> sorted = new ArrayList<>(list);
+        sorted.sort(MOST_COMMON_FIRST);
+        return sorted;
+    }
+}
@@ -0,0 +1,152 @@
+package com.lootledger.drops;
+
+import com.google.gson.Gson;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Legacy store that keeps one {@code <id>_<name>_<level>.json} file per NPC.
+ * Every file has to be parsed to learn the NPC's display name, so
+ * {@link #open} decodes the whole directory.
+ */
+@Slf4j
+final class JsonDropStore implements DropStore
+{
+    private static final String EXTENSION = ".json";
+
+    private final Path dir;
+    private final Gson gson;
+    private final Duration maxAge;
+
+    JsonDropStore(Path dir, Gson gson, Duration maxAge)
+    {
+        this.dir = dir;
+        this.gson = gson;
+        this.maxAge = maxAge;
+    }
+
+    @Override
+    public List<Entry> open(Map<String, NpcDropData> decoded) throws IOException
+    {
+        List<Entry> entries = new ArrayList<>();
+        if (!Files.exists(dir))
+        {
+            return entries;
+        }
+
+        Instant cutoff = Instant.now().minus(maxAge);
+        try (Stream<Path> files = Files.list(dir))
+        {
+            for (Path p : files.filter(JsonDropStore::isJsonFile).collect(Collectors.toList()))
+            {
+                Instant modified = Files.getLastModifiedTime(p).toInstant();
+                if (modified.isBefore(cutoff))
+                {
+                    Files.deleteIfExists(p);
+                    continue;
+                }
+                try
+                {
+                    NpcDropData data = parse(p, gson);
+                    if (data != null && data.getDropTableSections() != null && !data.getDropTableSections().isEmpty())
+                    {
+                        Entry e = entryFor(p, data, modified.toEpochMilli());
+                        entries.add(e);
+                        decoded.put(e.key, data);
+                    }
+                    else
+                    {
+                        Files.deleteIfExists(p);
+                    }
+                }
+                catch (Exception e)
+                {
+                    log.error("Skipping bad cache file {}", p, e);
+                    Files.deleteIfExists(p);
+                }
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public NpcDropData read(Entry entry) throws IOException
+    {
+        Path p = dir.resolve(entry.key + EXTENSION);
+        if (!Files.exists(p))
+        {
+            return null;
+        }
+        return parse(p, gson);
+    }
+
+    @Override
+    public synchronized Entry write(String key, NpcDropData data) throws IOException
+    {
+        Files.createDirectories(dir);
+        Path out = dir.resolve(key + EXTENSION);
+        Path tmp = out.resolveSibling(out.getFileName() + ".tmp");
+        try
+        {
+            Files.writeString(
+                    tmp,
+                    gson.toJson(data),
+                    StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING
+            );
+            Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            try { Files.deleteIfExists(tmp); } catch (IOException ignored) {}
+        }
+        return entryFor(out, data, Files.getLastModifiedTime(out).toMillis());
+    }
+
+    @Override
+    public synchronized void remove(Collection<String> keys) throws IOException
+    {
+        for (String key : keys)
+        {
+            Files.deleteIfExists(dir.resolve(key + EXTENSION));
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        // nothing held open between calls
+    }
+
+    static boolean isJsonFile(Path p)
+    {
+        return Files.isRegularFile(p) && p.getFileName().toString().endsWith(EXTENSION);
+    }
+
+    static NpcDropData parse(Path p, Gson gson) throws IOException
+    {
+        return gson.fromJson(Files.readString(p, StandardCharsets.UTF_8), NpcDropData.class);
+    }
+
+    private static Entry entryFor(Path p, NpcDropData data, long writtenAt)
+    {
+        String fn = p.getFileName().toString();
+        String key = fn.substring(0, fn.length() - EXTENSION.length());
+        return new Entry(key, data.getNpcId(), data.getName(), data.getLevel(), writtenAt, 0, 0);
+    }
+}
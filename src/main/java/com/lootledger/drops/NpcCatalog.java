@@ -0,0 +1,205 @@
+package com.lootledger.drops;
+
+import com.google.gson.Gson;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Bundled, offline catalog of wiki NPC pages: page name, NPC IDs, combat
+ * level and whether the page has a drop table. Lets name, ID and level
+ * searches resolve without the wiki so only the chosen NPC is fetched.
+ *
+ * <p>The catalog is a JSON object at {@code /com/lootledger/Npcs.json} with a
+ * {@code complete} flag and the {@code npcs} array. It is checked in with the
+ * other resources and refreshed from the wiki with the {@code updateNpcCatalog}
+ * Gradle task, so builds do not depend on the network. Callers only rely
+ * on the catalog instead of the wiki once {@link #isComplete} says it lists
+ * every NPC; a missing or partial catalog still answers what it has.
+ */
+@Slf4j
+@Singleton
+public class NpcCatalog
+{
+    private static final String RESOURCE_PATH = "/com/lootledger/Npcs.json"; // classpath resource
+
+    private final Gson gson;
+    private final String resourcePath;
+    // names of NPCs with drop tables only; search results are never without drops
+    private final NpcNameIndex names = new NpcNameIndex();
+    private volatile Map<String, List<Entry>> byName = Collections.emptyMap();
+    private volatile Map<Integer, List<Entry>> byId = Collections.emptyMap();
+    private volatile boolean loaded;
+    private volatile boolean complete;
+    // completes once a background load has finished; null until one is started
+    private CompletableFuture<Void> loading;
+
+    /** One version of an NPC page; pages with several combat levels have one entry each. */
+    @Getter
+    public static final class Entry
+    {
+        private String name;
+        private int[] ids;
+        private int level;
+        private boolean drops;
+
+        /** @return the first NPC ID of this version, or 0 if the wiki lists none */
+        public int getId()
+        {
+            return ids == null || ids.length == 0 ? 0 : ids[0];
+        }
+    }
+
+    /** On-disk form. */
+    private static final class Saved
+    {
+        boolean complete;
+        List<Entry> npcs;
+    }
+
+    @Inject
+    public NpcCatalog(Gson gson)
+    {
+        this(gson, RESOURCE_PATH);
+    }
+
+    /** Load the catalog from another classpath resource, e.g. a test fixture. */
+    NpcCatalog(Gson gson, String resourcePath)
+    {
+        this.gson = gson;
+        this.resourcePath = resourcePath;
+    }
+
+    /** Load the catalog on a background thread unless it is already loaded or loading. */
+    public synchronized CompletableFuture<Void> loadAsync()
+    {
+        if (loading == null)
+        {
+            loading = CompletableFuture.runAsync(this::load, r -> {
+                Thread t = new Thread(r, "npccatalog-load");
+                t.setDaemon(true);
+                t.start();
+            });
+        }
+        return loading;
+    }
+
+    /** @return true once the catalog has been read, even if it lists nothing */
+    public boolean isLoaded()
+    {
+        return loaded;
+    }
+
+    /**
+     * @return true once a catalog listing every NPC page has been loaded, so
+     * a name or ID it does not know is not on the wiki either
+     */
+    public boolean isComplete()
+    {
+        return loaded && complete && !byName.isEmpty();
+    }
+
+    /** Names of NPCs with drop tables containing {@code query}, prefix matches first. */
+    public List<String> searchNames(String query, int limit)
+    {
+        return names.search(query, limit);
+    }
+
+    /** Versions with drop tables of the NPCs whose name contains {@code query}. */
+    public List<Entry> search(String query, int limit)
+    {
+        List<Entry> out = new ArrayList<>();
+        for (String name : names.search(query, limit))
+        {
+            for (Entry e : byName(name))
+            {
+                if (e.drops)
+                {
+                    out.add(e);
+                }
+            }
+        }
+        return out;
+    }
+
+    /** @return every version listed under the given page name, ignoring case */
+    public List<Entry> byName(String name)
+    {
+        if (name == null)
+        {
+            return Collections.emptyList();
+        }
+        return byName.getOrDefault(name.trim().toLowerCase(Locale.ROOT), Collections.emptyList());
+    }
+
+    /** @return the versions listing {@code npcId} among their IDs */
+    public List<Entry> byId(int npcId)
+    {
+        return byId.getOrDefault(npcId, Collections.emptyList());
+    }
+
+    private void load()
+    {
+        long start = System.nanoTime();
+        try (InputStream is = NpcCatalog.class.getResourceAsStream(resourcePath))
+        {
+            if (is == null)
+            {
+                log.warn("NPC catalog not found on classpath at {}, searches will use the wiki", resourcePath);
+                return;
+            }
+            Saved saved;
+            try (Reader r = new InputStreamReader(is, StandardCharsets.UTF_8))
+            {
+                saved = gson.fromJson(r, Saved.class);
+            }
+            if (saved == null || saved.npcs == null)
+            {
+                log.warn("NPC catalog at {} is empty, searches will use the wiki", resourcePath);
+                return;
+            }
+            List<Entry> entries = saved.npcs;
+
+            Map<String, List<Entry>> names = new HashMap<>();
+            Map<Integer, List<Entry>> ids = new HashMap<>();
+            for (Entry e : entries)
+            {
+                if (e == null || e.name == null || e.name.trim().isEmpty())
+                {
+                    continue;
+                }
+                names.computeIfAbsent(e.name.trim().toLowerCase(Locale.ROOT), k -> new ArrayList<>(1)).add(e);
+                if (e.ids != null)
+                {
+                    for (int id : e.ids)
+                    {
+                        ids.computeIfAbsent(id, k -> new ArrayList<>(1)).add(e);
+                    }
+                }
+                if (e.drops)
+                {
+                    this.names.add(e.name);
+                }
+            }
+            byId = ids;
+            byName = names;
+            complete = saved.complete;
+            loaded = true;
+            log.info("Loaded {} NPC catalog entries ({}) from {} in {} ms", entries.size(),
+                    complete ? "complete" : "partial, searches will also use the wiki", resourcePath,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+        catch (Exception ex)
+        {
+            log.error("Failed to load NPC catalog", ex);
+        }
+    }
+}
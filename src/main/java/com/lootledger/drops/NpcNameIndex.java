@@ -0,0 +1,179 @@
+package com.lootledger.drops;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory NPC name index answering case-insensitive substring queries from
+ * trigram postings and one- or two-character queries as prefix lookups, so a
+ * search never scans every name. Names are reference counted because several
+ * cache entries (one per level) share a name.
+ *
+ * <p>Removed names leave their ids behind in the postings as tombstones; they
+ * are skipped on lookup and dropped when the index is cleared.
+ */
+final class NpcNameIndex
+{
+    private static final int[] EMPTY = new int[0];
+
+    // id -> display name / lower-case name / reference count (0 once removed)
+    private final List<String> names = new ArrayList<>();
+    private final List<String> lowerNames = new ArrayList<>();
+    private int[] refs = new int[64];
+
+    private final Map<String, Integer> idsByLower = new HashMap<>();
+    private final TreeMap<String, Integer> sorted = new TreeMap<>();
+    private final Map<Long, Postings> trigrams = new HashMap<>();
+
+    /** Growable, ascending list of name ids. */
+    private static final class Postings
+    {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id)
+        {
+            if (size == ids.length)
+            {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    synchronized void add(String name)
+    {
+        if (name == null || name.trim().isEmpty())
+        {
+            return;
+        }
+        String lower = lower(name);
+        Integer existing = idsByLower.get(lower);
+        if (existing != null)
+        {
+            refs[existing]++;
+            return;
+        }
+
+        int id = names.size();
+        names.add(name.trim());
+        lowerNames.add(lower);
+        if (id == refs.length)
+        {
+            refs = Arrays.copyOf(refs, id * 2);
+        }
+        refs[id] = 1;
+        idsByLower.put(lower, id);
+        sorted.put(lower, id);
+
+        for (int i = 0; i + 3 <= lower.length(); i++)
+        {
+            // ids only grow, so a list already holding this id has it last
+            Postings p = trigrams.computeIfAbsent(trigram(lower, i), g -> new Postings());
+            if (p.size == 0 || p.ids[p.size - 1] != id)
+            {
+                p.add(id);
+            }
+        }
+    }
+
+    synchronized void remove(String name)
+    {
+        if (name == null)
+        {
+            return;
+        }
+        String lower = lower(name);
+        Integer id = idsByLower.get(lower);
+        if (id != null && --refs[id] == 0)
+        {
+            idsByLower.remove(lower);
+            sorted.remove(lower);
+        }
+    }
+
+    synchronized void clear()
+    {
+        names.clear();
+        lowerNames.clear();
+        refs = new int[64];
+        idsByLower.clear();
+        sorted.clear();
+        trigrams.clear();
+    }
+
+    synchronized int size()
+    {
+        return idsByLower.size();
+    }
+
+    /**
+     * Names containing {@code query}, ignoring case, with names that start
+     * with it first. Queries shorter than three characters only match
+     * prefixes.
+     */
+    synchronized List<String> search(String query, int limit)
+    {
+        String q = lower(query);
+        List<String> out = new ArrayList<>(Math.min(limit, 16));
+        if (q.isEmpty() || limit <= 0)
+        {
+            return out;
+        }
+
+        for (Integer id : sorted.subMap(q, true, q + Character.MAX_VALUE, false).values())
+        {
+            if (out.size() >= limit)
+            {
+                return out;
+            }
+            out.add(names.get(id));
+        }
+        if (q.length() < 3)
+        {
+            return out;
+        }
+
+        // candidates come from the rarest trigram and are verified with contains
+        int[] candidates = EMPTY;
+        int count = Integer.MAX_VALUE;
+        for (int i = 0; i + 3 <= q.length(); i++)
+        {
+            Postings p = trigrams.get(trigram(q, i));
+            if (p == null)
+            {
+                return out;
+            }
+            if (p.size < count)
+            {
+                candidates = p.ids;
+                count = p.size;
+            }
+        }
+        for (int i = 0; i < count && out.size() < limit; i++)
+        {
+            int id = candidates[i];
+            String lower = lowerNames.get(id);
+            if (refs[id] > 0 && !lower.startsWith(q) && lower.contains(q))
+            {
+                out.add(names.get(id));
+            }
+        }
+        return out;
+    }
+
+    private static long trigram(String s, int i)
+    {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    private static String lower(String s)
+    {
+        return s.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,481 @@
+package com.lootledger.drops;
+
+import java.util.Locale;
+
+/**
+ * Normalizes wiki rarity strings into one-over form ("1/128", "1/64–1/32",
+ * "1/4; 1/16") with a hand-written scanner.
+ *
+ * <p>Accepts percentages, "N x a/b" multipliers, fractions, "1 in N",
+ * ranges, ";" or ", " separated lists, "[...]" annotations and trailing
+ * parentheticals. Anything else is passed through cleaned but otherwise
+ * unchanged, e.g. "Common" or "Always".
+ */
+final class RarityTokenizer
+{
+    private RarityTokenizer() {}
+
+    /** Normalize a raw rarity; null becomes the empty string. */
+    static String normalize(String rarity)
+    {
+        if (rarity == null)
+        {
+            return "";
+        }
+
+        int n = rarity.length();
+        StringBuilder out = new StringBuilder(n + 8);
+        char[] buf = new char[n];
+        int[] sep = new int[1];
+
+        // Segments are split on "\s*;\s*" or ",\s+"; trailing empty segments are dropped
+        int start = 0;
+        int emitted = 0;
+        int pendingEmpty = 0;
+        while (true)
+        {
+            int sepStart = findSegmentSeparator(rarity, start, sep);
+            int end = sepStart < 0 ? n : sepStart;
+            if (end > start || sepStart < 0 && emitted == 0 && pendingEmpty == 0)
+            {
+                for (; pendingEmpty > 0; pendingEmpty--)
+                {
+                    if (emitted++ > 0)
+                    {
+                        out.append("; ");
+                    }
+                }
+                if (emitted++ > 0)
+                {
+                    out.append("; ");
+                }
+                appendSegment(out, rarity, start, end, buf);
+            }
+            else
+            {
+                pendingEmpty++;
+            }
+
+            if (sepStart < 0)
+            {
+                return out.toString();
+            }
+            start = sep[0];
+        }
+    }
+
+    /**
+     * @return the start of the next segment separator at or after {@code from},
+     * or -1; {@code end[0]} receives the index just past it
+     */
+    private static int findSegmentSeparator(String s, int from, int[] end)
+    {
+        int n = s.length();
+        for (int p = from; p < n; p++)
+        {
+            char c = s.charAt(p);
+            if (c == ';' || isSpace(c))
+            {
+                int q = p;
+                while (q < n && isSpace(s.charAt(q)))
+                {
+                    q++;
+                }
+                if (q < n && s.charAt(q) == ';')
+                {
+                    q++;
+                    while (q < n && isSpace(s.charAt(q)))
+                    {
+                        q++;
+                    }
+                    end[0] = q;
+                    return p;
+                }
+            }
+            else if (c == ',' && p + 1 < n && isSpace(s.charAt(p + 1)))
+            {
+                int q = p + 1;
+                while (q < n && isSpace(s.charAt(q)))
+                {
+                    q++;
+                }
+                end[0] = q;
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    /** Clean one segment and append its normalized form. */
+    private static void appendSegment(StringBuilder out, String s, int from, int to, char[] buf)
+    {
+        // drop "[...]" annotations, map "×" to "x" and strip ",", "≈" and "~"
+        int len = 0;
+        for (int i = from; i < to; i++)
+        {
+            char c = s.charAt(i);
+            if (c == '[')
+            {
+                int close = s.indexOf(']', i + 1);
+                if (close >= 0 && close < to)
+                {
+                    i = close;
+                    continue;
+                }
+            }
+            if (c == ',' || c == '≈' || c == '~')
+            {
+                continue;
+            }
+            buf[len++] = c == '×' ? 'x' : c;
+        }
+
+        len = stripTrailingParenthetical(buf, len);
+        len = replaceInWithSlash(buf, len);
+
+        int a = 0;
+        int b = len;
+        while (a < b && buf[a] <= ' ')
+        {
+            a++;
+        }
+        while (b > a && buf[b - 1] <= ' ')
+        {
+            b--;
+        }
+
+        appendRange(out, buf, a, b);
+    }
+
+    /** Remove a final "(...)" group and the whitespace before it. */
+    private static int stripTrailingParenthetical(char[] buf, int len)
+    {
+        int close = len - 1;
+        if (close < 0)
+        {
+            return len;
+        }
+        if (buf[close] != ')')
+        {
+            // the group may also end just before a final line terminator
+            int t = lineTerminatorStart(buf, 0, len);
+            if (t == len || t == 0 || buf[t - 1] != ')')
+            {
+                return len;
+            }
+            close = t - 1;
+        }
+
+        int open = -1;
+        for (int i = close - 1; i >= 0 && buf[i] != ')'; i--)
+        {
+            if (buf[i] == '(')
+            {
+                open = i;
+            }
+        }
+        if (open < 0)
+        {
+            return len;
+        }
+
+        while (open > 0 && isSpace(buf[open - 1]))
+        {
+            open--;
+        }
+        int tail = len - (close + 1);
+        System.arraycopy(buf, close + 1, buf, open, tail);
+        return open + tail;
+    }
+
+    /** Replace every lowercase standalone word "in" with "/". */
+    private static int replaceInWithSlash(char[] buf, int len)
+    {
+        int w = 0;
+        boolean prevWord = false;
+        for (int r = 0; r < len; r++)
+        {
+            char c = buf[r];
+            if (c == 'i' && r + 1 < len && buf[r + 1] == 'n' && !prevWord
+                    && (r + 2 == len || !isWord(buf[r + 2])))
+            {
+                buf[w++] = '/';
+                prevWord = true;
+                r++;
+                continue;
+            }
+            buf[w++] = c;
+            prevWord = isWord(c);
+        }
+        return w;
+    }
+
+    /** Split on "\s*[–—-]\s*" and simplify each part, or the whole string if there is one part. */
+    private static void appendRange(StringBuilder out, char[] buf, int from, int to)
+    {
+        int mark = out.length();
+        int parts = 0;
+        int pendingEmpty = 0;
+        int partStart = from;
+        int p = from;
+        while (true)
+        {
+            // find the next dash together with the whitespace around it
+            int sepStart = -1;
+            int sepEnd = to;
+            while (p < to)
+            {
+                int q = skipSpace(buf, p, to);
+                if (q < to && isDash(buf[q]))
+                {
+                    sepStart = p;
+                    sepEnd = skipSpace(buf, q + 1, to);
+                    break;
+                }
+                p = q > p ? q : p + 1;
+            }
+
+            int end = sepStart < 0 ? to : sepStart;
+            if (end > partStart)
+            {
+                for (; pendingEmpty > 0; pendingEmpty--)
+                {
+                    if (parts++ > 0)
+                    {
+                        out.append('–');
+                    }
+                }
+                if (parts++ > 0)
+                {
+                    out.append('–');
+                }
+                appendSingle(out, buf, partStart, end);
+            }
+            else
+            {
+                pendingEmpty++;
+            }
+
+            if (sepStart < 0)
+            {
+                break;
+            }
+            partStart = sepEnd;
+            p = sepEnd;
+        }
+
+        if (parts <= 1)
+        {
+            out.setLength(mark);
+            appendSingle(out, buf, from, to);
+        }
+    }
+
+    /** Normalize a single percentage, multiplier or fraction, or append it unchanged. */
+    private static void appendSingle(StringBuilder out, char[] buf, int from, int to)
+    {
+        if (from >= to)
+        {
+            return;
+        }
+
+        // "12.5%"
+        int p = number(buf, from, to);
+        if (p > 0 && p + 1 == to && buf[p] == '%')
+        {
+            double pct = value(buf, from, p);
+            out.append(pct == 0 ? "0" : formatOneOver(100.0 / pct));
+            return;
+        }
+
+        if (p > 0)
+        {
+            double first = value(buf, from, p);
+            int q = skipSpace(buf, p, to);
+
+            // "2 x 1/128"
+            if (q < to && (buf[q] == 'x' || buf[q] == 'X'))
+            {
+                int aStart = skipSpace(buf, q + 1, to);
+                int aEnd = number(buf, aStart, to);
+                if (aEnd > 0)
+                {
+                    int slash = skipSpace(buf, aEnd, to);
+                    if (slash < to && buf[slash] == '/')
+                    {
+                        int bStart = skipSpace(buf, slash + 1, to);
+                        int bEnd = number(buf, bStart, to);
+                        if (bEnd == to)
+                        {
+                            double a = value(buf, aStart, aEnd);
+                            if (first != 0 && a != 0)
+                            {
+                                out.append(formatOneOver(value(buf, bStart, bEnd) / (a * first)));
+                                return;
+                            }
+                        }
+                    }
+                }
+            }
+
+            // "1/128"
+            if (q < to && buf[q] == '/')
+            {
+                int bStart = skipSpace(buf, q + 1, to);
+                int bEnd = number(buf, bStart, to);
+                if (bEnd == to && first != 0)
+                {
+                    out.append(formatOneOver(value(buf, bStart, bEnd) / first));
+                    return;
+                }
+            }
+        }
+
+        out.append(buf, from, to - from);
+    }
+
+    /**
+     * Scan "\d+(\.\d+)?" at {@code from}.
+     *
+     * @return the index just past the number, or -1 if there is none
+     */
+    private static int number(char[] buf, int from, int to)
+    {
+        int p = from;
+        while (p < to && isDigit(buf[p]))
+        {
+            p++;
+        }
+        if (p == from)
+        {
+            return -1;
+        }
+        if (p + 1 < to && buf[p] == '.' && isDigit(buf[p + 1]))
+        {
+            p++;
+            while (p < to && isDigit(buf[p]))
+            {
+                p++;
+            }
+        }
+        return p;
+    }
+
+    private static double value(char[] buf, int from, int to)
+    {
+        if (to - from <= 15)
+        {
+            long v = 0;
+            int i = from;
+            for (; i < to && buf[i] != '.'; i++)
+            {
+                v = v * 10 + (buf[i] - '0');
+            }
+            if (i == to)
+            {
+                return v;
+            }
+        }
+        return Double.parseDouble(new String(buf, from, to - from));
+    }
+
+    /**
+     * Denominator of the first or last "1/N" in a normalized rarity.
+     *
+     * @return the denominator, or NaN if there is none
+     */
+    static double denominator(String oneOver, boolean last)
+    {
+        double found = Double.NaN;
+        int n = oneOver.length();
+        for (int i = 0; i + 2 < n; i++)
+        {
+            if (oneOver.charAt(i) != '1' || oneOver.charAt(i + 1) != '/' || !isDigit(oneOver.charAt(i + 2)))
+            {
+                continue;
+            }
+            int p = i + 2;
+            while (p < n && isDigit(oneOver.charAt(p)))
+            {
+                p++;
+            }
+            if (p + 1 < n && oneOver.charAt(p) == '.' && isDigit(oneOver.charAt(p + 1)))
+            {
+                p++;
+                while (p < n && isDigit(oneOver.charAt(p)))
+                {
+                    p++;
+                }
+            }
+            found = Double.parseDouble(oneOver.substring(i + 2, p));
+            if (!last)
+            {
+                return found;
+            }
+            i = p - 1;
+        }
+        return found;
+    }
+
+    static String formatOneOver(double val)
+    {
+        if (Double.isNaN(val) || Double.isInfinite(val))
+        {
+            return "";
+        }
+        if (Math.abs(val - Math.round(val)) < 0.01)
+        {
+            return "1/" + Math.round(val);
+        }
+        return String.format(Locale.ROOT, "1/%.2f", val);
+    }
+
+    private static int skipSpace(char[] buf, int from, int to)
+    {
+        while (from < to && isSpace(buf[from]))
+        {
+            from++;
+        }
+        return from;
+    }
+
+    /** Start of a single line terminator ending the range, or {@code to} if there is none. */
+    private static int lineTerminatorStart(char[] buf, int from, int to)
+    {
+        if (to - from >= 2 && buf[to - 2] == '\r' && buf[to - 1] == '\n')
+        {
+            return to - 2;
+        }
+        if (to > from)
+        {
+            char c = buf[to - 1];
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029')
+            {
+                return to - 1;
+            }
+        }
+        return to;
+    }
+
+    private static boolean isDash(char c)
+    {
+        return c == '–' || c == '—' || c == '-';
+    }
+
+    private static boolean isDigit(char c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    /** Matches regex {@code \s}. */
+    private static boolean isSpace(char c)
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /** Word characters as seen by regex {@code \b}. */
+    private static boolean isWord(char c)
+    {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+}
@@ -0,0 +1,61 @@
+package com.lootledger.drops;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key: while a load is in flight,
+ * every caller asking for that key receives the same future instead of
+ * starting another load.
+ */
+final class SingleFlight<K, V>
+{
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Return the in-flight future for {@code key}, or start {@code loader} and
+     * share its result with everyone who asks until it completes.
+     */
+    CompletableFuture<V> run(K key, Supplier<CompletableFuture<V>> loader)
+    {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null)
+        {
+            return existing;
+        }
+
+        CompletableFuture<V> source;
+        try
+        {
+            source = loader.get();
+        }
+        catch (RuntimeException ex)
+        {
+            source = CompletableFuture.failedFuture(ex);
+        }
+
+        source.whenComplete((v, ex) ->
+        {
+            // Unregister first so a caller reacting to the result (e.g. a retry) starts a fresh load
+            inFlight.remove(key, created);
+            if (ex != null)
+            {
+                created.completeExceptionally(ex);
+            }
+            else
+            {
+                created.complete(v);
+            }
+        });
+        return created;
+    }
+
+    /** @return whether a load for {@code key} is currently running */
+    boolean isInFlight(K key)
+    {
+        return inFlight.containsKey(key);
+    }
+}
@@ -0,0 +1,151 @@
+package com.lootledger.drops;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Stops sending wiki requests during an outage. After
+ * {@value #FAILURE_THRESHOLD} transient failures in a row the breaker opens
+ * and requests fail immediately with an {@link OpenException}; once the
+ * cooldown has passed a single probe request is let through. A successful
+ * probe closes the breaker, a failed one reopens it with twice the cooldown,
+ * up to five minutes.
+ */
+@Slf4j
+final class WikiCircuitBreaker
+{
+    static final int FAILURE_THRESHOLD = 5;
+    static final long MIN_OPEN_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long MAX_OPEN_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    /** Thrown in place of a request while the breaker is open. */
+    static final class OpenException extends IOException
+    {
+        private static final long serialVersionUID = 1L;
+
+        OpenException(long retryInMillis)
+        {
+            super("Wiki requests paused, retrying in " + retryInMillis / 1000 + "s");
+        }
+    }
+
+    private final LongSupplier nanoTime;
+
+    // all state guarded by this
+    private int failures;
+    private boolean open;
+    private boolean probing;
+    private long openNanos = MIN_OPEN_NANOS;
+    private long openUntil;
+
+    WikiCircuitBreaker()
+    {
+        this(System::nanoTime);
+    }
+
+    /** @param nanoTime the clock cooldowns are measured with, {@link System#nanoTime()} outside tests */
+    WikiCircuitBreaker(LongSupplier nanoTime)
+    {
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Reserve a request. While open this fails until the cooldown has passed,
+     * then lets one probe through; the probe must be reported back with
+     * {@link #onSuccess}, {@link #onFailure} or {@link #onSkipped}.
+     *
+     * @throws OpenException if no request may be sent now
+     */
+    synchronized void acquire() throws OpenException
+    {
+        if (!open)
+        {
+            return;
+        }
+        long now = nanoTime.getAsLong();
+        if (probing || now - openUntil < 0)
+        {
+            throw new OpenException(Math.max(0, TimeUnit.NANOSECONDS.toMillis(openUntil - now)));
+        }
+        probing = true;
+    }
+
+    /** @return whether a request would be let through now, without reserving it */
+    synchronized boolean allowsRequests()
+    {
+        return !open || !probing && nanoTime.getAsLong() - openUntil >= 0;
+    }
+
+    /** The wiki answered; closes the breaker. */
+    synchronized void onSuccess()
+    {
+        if (open)
+        {
+            log.info("Wiki is reachable again, resuming requests");
+        }
+        failures = 0;
+        open = false;
+        probing = false;
+        openNanos = MIN_OPEN_NANOS;
+    }
+
+    /** A request failed transiently; opens the breaker once enough failed in a row. */
+    synchronized void onFailure()
+    {
+        failures++;
+        if (probing)
+        {
+            // the probe failed, back off further
+            probing = false;
+            openNanos = Math.min(MAX_OPEN_NANOS, openNanos * 2);
+            openUntil = nanoTime.getAsLong() + openNanos;
+        }
+        else if (!open && failures >= FAILURE_THRESHOLD)
+        {
+            open(openNanos);
+        }
+    }
+
+    /** The wiki asked for a pause longer than is worth waiting out; hold requests for that long. */
+    synchronized void openFor(long millis)
+    {
+        failures++;
+        probing = false;
+        long until = nanoTime.getAsLong() + TimeUnit.MILLISECONDS.toNanos(millis);
+        if (!open)
+        {
+            open(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+        else if (until - openUntil > 0)
+        {
+            openUntil = until;
+        }
+    }
+
+    private void open(long nanos)
+    {
+        open = true;
+        openUntil = nanoTime.getAsLong() + nanos;
+        log.warn("Pausing wiki requests for {}s after {} failures", TimeUnit.NANOSECONDS.toSeconds(nanos), failures);
+    }
+
+    /** A reserved request was not sent, e.g. because its search was cancelled. */
+    synchronized void onSkipped()
+    {
+        probing = false;
+    }
+
+    /** @return whether {@code ex} is, or wraps, an {@link OpenException} */
+    static boolean isOpen(Throwable ex)
+    {
+        if (ex instanceof CompletionException && ex.getCause() != null)
+        {
+            ex = ex.getCause();
+        }
+        return ex instanceof OpenException;
+    }
+}
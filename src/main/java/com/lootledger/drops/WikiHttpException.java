@@ -0,0 +1,65 @@
+package com.lootledger.drops;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An unsuccessful (non-2xx) wiki response, with the delay the server asked
+ * for in its {@code Retry-After} header, if any.
+ */
+final class WikiHttpException extends IOException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final int code;
+    private final long retryAfterMillis;
+
+    WikiHttpException(int code, String url, long retryAfterMillis)
+    {
+        super("HTTP " + code + " for " + url);
+        this.code = code;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    int getCode()
+    {
+        return code;
+    }
+
+    /** @return the requested delay before retrying, or -1 if none was given */
+    long getRetryAfterMillis()
+    {
+        return retryAfterMillis;
+    }
+
+    /** Parse a {@code Retry-After} header, either delay seconds or an HTTP date; -1 if absent or invalid. */
+    static long parseRetryAfter(String header)
+    {
+        if (header == null || header.trim().isEmpty())
+        {
+            return -1;
+        }
+        String value = header.trim();
+        try
+        {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value)));
+        }
+        catch (NumberFormatException ex)
+        {
+            // not delay seconds, try a date
+        }
+        try
+        {
+            Instant at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return Math.max(0, at.toEpochMilli() - System.currentTimeMillis());
+        }
+        catch (DateTimeParseException ex)
+        {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.lootledger.drops;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Sends every wiki request through one queue, so plugin traffic has a shared
+ * rate limit and concurrency cap no matter which pool asked for it. Requests
+ * are sent in {@link Priority} order: a drop table the user clicked on
+ * overtakes queued search candidates and background work.
+ *
+ * <p>A token bucket allows bursts of {@value #BURST} requests and
+ * {@value #REQUESTS_PER_SECOND} per second after that, over at most
+ * {@value #MAX_CONCURRENT} connections. Time spent queued is recorded per
+ * priority, see {@link #getStats()}.
+ *
+ * <p>The plugin's lifecycle owns the workers: requests are only accepted
+ * between {@link #startUp()} and {@link #shutdown()}, and anything submitted
+ * outside that window is cancelled right away.
+ */
+@Slf4j
+@Singleton
+public class WikiRequestScheduler
+{
+    private static final int MAX_CONCURRENT = 4;
+    private static final int BURST = 10;
+    private static final double REQUESTS_PER_SECOND = 5;
+    private static final long NANOS_PER_TOKEN = (long) (TimeUnit.SECONDS.toNanos(1) / REQUESTS_PER_SECOND);
+
+    /** Request classes, most urgent first. */
+    public enum Priority
+    {
+        /** The user is waiting on this request, e.g. after clicking "Show Drops". */
+        INTERACTIVE,
+        /** Search candidates; superseded searches cancel theirs. */
+        SEARCH,
+        /** Revalidation and prefetching. */
+        BACKGROUND
+    }
+
+    /** Reads a successful response; the response is closed afterwards. */
+    @FunctionalInterface
+    public interface ResponseHandler<T>
+    {
+        T handle(Response response) throws IOException;
+    }
+
+    private final OkHttpClient httpClient;
+    private final PriorityBlockingQueue<Task<?>> queue = new PriorityBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Metrics[] metrics = new Metrics[Priority.values().length];
+    private final List<Thread> workers = new ArrayList<>();
+    // guarded by this; false before startUp and after shutdown
+    private boolean running;
+
+    // token bucket state, guarded by this
+    private double tokens = BURST;
+    private long refilledAt = System.nanoTime();
+
+    private static final class Task<T> implements Comparable<Task<?>>
+    {
+        final Request request;
+        final Priority priority;
+        final BooleanSupplier cancelled;
+        final ResponseHandler<T> handler;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final long seq;
+        final long queuedAt = System.nanoTime();
+
+        Task(Request request, Priority priority, BooleanSupplier cancelled, ResponseHandler<T> handler, long seq)
+        {
+            this.request = request;
+            this.priority = priority;
+            this.cancelled = cancelled;
+            this.handler = handler;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(Task<?> o)
+        {
+            // by priority, then first come first served
+            int c = priority.compareTo(o.priority);
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+
+    /** Per-priority counters; times are in nanoseconds. */
+    private static final class Metrics
+    {
+        final AtomicLong sent = new AtomicLong();
+        final AtomicLong cancelled = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong totalWait = new AtomicLong();
+        final AtomicLong maxWait = new AtomicLong();
+
+        void waited(long nanos)
+        {
+            sent.incrementAndGet();
+            totalWait.addAndGet(nanos);
+            maxWait.accumulateAndGet(nanos, Math::max);
+        }
+
+        @Override
+        public String toString()
+        {
+            long n = sent.get();
+            return "sent=" + n + ", cancelled=" + cancelled + ", failed=" + failed
+                    + ", avgWait=" + (n == 0 ? 0 : totalWait.get() / n / 1_000_000) + "ms"
+                    + ", maxWait=" + maxWait.get() / 1_000_000 + "ms";
+        }
+    }
+
+    @Inject
+    public WikiRequestScheduler(OkHttpClient httpClient)
+    {
+        this.httpClient = httpClient;
+        for (int i = 0; i < metrics.length; i++)
+        {
+            metrics[i] = new Metrics();
+        }
+    }
+
+    /**
+     * Queue a request. It is skipped, and the future cancelled, if
+     * {@code cancelled} returns true by the time it would be sent, or if the
+     * scheduler is not running.
+     *
+     * @return completes with the handler's result, or exceptionally with an
+     * {@link IOException} for failed requests and a {@link WikiHttpException}
+     * for unsuccessful (non-2xx) responses
+     */
+    public <T> CompletableFuture<T> submit(Request request, Priority priority, BooleanSupplier cancelled,
+                                           ResponseHandler<T> handler)
+    {
+        Task<T> task = new Task<>(request, priority, cancelled, handler, sequence.getAndIncrement());
+        synchronized (this)
+        {
+            // checked under the lock shutdown drains the queue with, so nothing is left behind
+            if (!running)
+            {
+                metrics[priority.ordinal()].cancelled.incrementAndGet();
+                task.result.cancel(false);
+                return task.result;
+            }
+            queue.add(task);
+        }
+        return task.result;
+    }
+
+    /** Starts the workers if they are not running and accepts requests again. */
+    public synchronized void startUp()
+    {
+        if (running)
+        {
+            return;
+        }
+        running = true;
+        ThreadFactory factory = new ThreadFactoryBuilder().setNameFormat("wiki-http-%d").setDaemon(true).build();
+        for (int i = 0; i < MAX_CONCURRENT; i++)
+        {
+            Thread t = factory.newThread(this::work);
+            workers.add(t);
+            t.start();
+        }
+    }
+
+    /** Stops the workers; queued and later requests are cancelled until the next {@link #startUp()}. */
+    public synchronized void shutdown()
+    {
+        running = false;
+        workers.forEach(Thread::interrupt);
+        workers.clear();
+        List<Task<?>> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        pending.forEach(t -> t.result.cancel(false));
+        log.debug("Wiki requests: {}", getStats());
+    }
+
+    /** @return per-priority request counts and queue times since startup */
+    public String getStats()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (Priority p : Priority.values())
+        {
+            if (sb.length() > 0)
+            {
+                sb.append("; ");
+            }
+            sb.append(p).append(": ").append(metrics[p.ordinal()]);
+        }
+        return sb.toString();
+    }
+
+    private void work()
+    {
+        try
+        {
+            while (!Thread.currentThread().isInterrupted())
+            {
+                // take a token first so the task is picked, by priority, only once it can be sent
+                acquireToken();
+                Task<?> task = queue.take();
+                if (task.result.isDone() || task.cancelled.getAsBoolean())
+                {
+                    metrics[task.priority.ordinal()].cancelled.incrementAndGet();
+                    refundToken();
+                    task.result.cancel(false);
+                    continue;
+                }
+                run(task);
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            // shutting down
+        }
+    }
+
+    private <T> void run(Task<T> task)
+    {
+        Metrics m = metrics[task.priority.ordinal()];
+        long waited = System.nanoTime() - task.queuedAt;
+        m.waited(waited);
+
+        try (Response res = httpClient.newCall(task.request).execute())
+        {
+            if (waited > TimeUnit.SECONDS.toNanos(1))
+            {
+                log.debug("{} request waited {} ms: {}", task.priority, waited / 1_000_000, task.request.url());
+            }
+            if (!res.isSuccessful())
+            {
+                throw new WikiHttpException(res.code(), String.valueOf(task.request.url()),
+                        WikiHttpException.parseRetryAfter(res.header("Retry-After")));
+            }
+            task.result.complete(task.handler.handle(res));
+        }
+        catch (Exception ex)
+        {
+            m.failed.incrementAndGet();
+            task.result.completeExceptionally(ex);
+        }
+    }
+
+    private synchronized void acquireToken() throws InterruptedException
+    {
+        while (true)
+        {
+            long now = System.nanoTime();
+            tokens = Math.min(BURST, tokens + (double) (now - refilledAt) / NANOS_PER_TOKEN);
+            refilledAt = now;
+            if (tokens >= 1)
+            {
+                tokens--;
+                return;
+            }
+            long waitNanos = (long) ((1 - tokens) * NANOS_PER_TOKEN);
+            TimeUnit.NANOSECONDS.timedWait(this, Math.max(waitNanos, 1));
+        }
+    }
+
+    private synchronized void refundToken()
+    {
+        tokens = Math.min(BURST, tokens + 1);
+        notifyAll();
+    }
+
+    static boolean isCancellation(Throwable ex)
+    {
+        return ex instanceof CancellationException || ex != null && ex.getCause() instanceof CancellationException;
+    }
+}
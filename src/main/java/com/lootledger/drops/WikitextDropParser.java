@@ -0,0 +1,322 @@
+package com.lootledger.drops;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Extracts drop tables and the combat level from an NPC page's wikitext, so
+ * pages fetched in bulk through api.php do not each need an
+ * {@code action=parse} request.
+ *
+ * <p>Only the plain {@code DropsTableHead} / {@code DropsLine} /
+ * {@code DropsTableBottom} layout is understood. Anything that only comes out
+ * right once the wiki renders it, such as shared drop table templates,
+ * tabbers or markup inside a heading, name or rarity, makes {@link #parse}
+ * return null so the caller can fall back to the rendered page. Sections are
+ * named after the nearest preceding level 2 to 4 heading, as in
+ * {@link DropPageParser}.
+ */
+final class WikitextDropParser
+{
+    private static final String TABLE_HEAD = "DropsTableHead";
+    private static final String LINE = "DropsLine";
+    private static final String TABLE_BOTTOM = "DropsTableBottom";
+    private static final String INFOBOX = "Infobox Monster";
+    // DropsLine parameters that do not change the rendered name or rarity
+    private static final Set<String> LINE_PARAMS = new HashSet<>(Arrays.asList(
+            "name", "quantity", "rarity", "namenotes", "quantitynotes", "raritynotes", "gemw", "image", "leagueRegion"));
+
+    private WikitextDropParser() {}
+
+    /** @return the page's drop tables and combat level, or null if the wikitext needs rendering */
+    static DropPageParser.Page parse(String wikitext)
+    {
+        String text = stripComments(wikitext);
+        DropPageParser.Page page = new DropPageParser.Page();
+        String heading = "";
+        List<DropItem> table = null;
+
+        int i = 0;
+        int n = text.length();
+        while (i < n)
+        {
+            if (text.startsWith("{{", i))
+            {
+                int end = templateEnd(text, i);
+                if (end < 0)
+                {
+                    return null;
+                }
+                List<String> parts = splitParams(text.substring(i + 2, end - 2));
+                String name = templateName(parts.get(0));
+                i = end;
+
+                if (TABLE_HEAD.equals(name))
+                {
+                    if (table != null)
+                    {
+                        return null;
+                    }
+                    table = new ArrayList<>();
+                }
+                else if (LINE.equals(name))
+                {
+                    DropItem item = table == null ? null : line(parts);
+                    if (item == null)
+                    {
+                        return null;
+                    }
+                    if (!item.getName().equalsIgnoreCase("nothing"))
+                    {
+                        table.add(item);
+                    }
+                }
+                else if (TABLE_BOTTOM.equals(name))
+                {
+                    if (table == null)
+                    {
+                        return null;
+                    }
+                    addSection(page, heading, table);
+                    table = null;
+                }
+                else if (name.toLowerCase(Locale.ROOT).contains("drop"))
+                {
+                    // shared drop tables, clue lines, transcluded drop subpages...
+                    return null;
+                }
+                else if (INFOBOX.equals(name) && page.combatLevel == 0)
+                {
+                    page.combatLevel = combatLevel(params(parts));
+                }
+                continue;
+            }
+
+            char c = text.charAt(i);
+            if (c == '<' && text.regionMatches(true, i, "<tabber", 0, 7))
+            {
+                // versioned drops; which one shows first is up to the renderer
+                return null;
+            }
+            if (c == '=' && (i == 0 || text.charAt(i - 1) == '\n'))
+            {
+                int eol = text.indexOf('\n', i);
+                eol = eol < 0 ? n : eol;
+                String line = text.substring(i, eol).trim();
+                int level = headingLevel(line);
+                if (level < 0)
+                {
+                    return null;
+                }
+                if (level >= 2 && level <= 4)
+                {
+                    heading = line.substring(level, line.length() - level).trim();
+                    if (!isPlain(heading))
+                    {
+                        return null;
+                    }
+                }
+                i = eol;
+                continue;
+            }
+            i++;
+        }
+
+        if (table != null)
+        {
+            addSection(page, heading, table);
+        }
+        return page;
+    }
+
+    private static void addSection(DropPageParser.Page page, String heading, List<DropItem> items)
+    {
+        if (!items.isEmpty())
+        {
+            page.sections.add(new DropTableSection(heading.isEmpty() ? "Drops" : heading, items));
+        }
+    }
+
+    /** One DropsLine, or null if it has parameters or markup that only rendering resolves. */
+    private static DropItem line(List<String> parts)
+    {
+        Map<String, String> params = params(parts);
+        if (params == null || !LINE_PARAMS.containsAll(params.keySet()))
+        {
+            return null;
+        }
+        String name = params.getOrDefault("name", "");
+        String rarity = params.getOrDefault("rarity", "").replace(",", "");
+        if (name.isEmpty() || name.indexOf('#') >= 0 || !isPlain(name) || !isPlain(rarity))
+        {
+            return null;
+        }
+        return new DropItem(0, name, rarity);
+    }
+
+    private static int combatLevel(Map<String, String> params)
+    {
+        if (params == null)
+        {
+            return 0;
+        }
+        // versioned infoboxes show their first version
+        String combat = params.containsKey("combat") ? params.get("combat") : params.get("combat1");
+        if (combat == null)
+        {
+            return 0;
+        }
+        // the first number, like DropPageParser reads the rendered infobox
+        for (String part : combat.split("[^0-9]+"))
+        {
+            if (!part.isEmpty() && part.length() < 7)
+            {
+                return Integer.parseInt(part);
+            }
+        }
+        return 0;
+    }
+
+    /** Named parameters, or null if there is a positional one. */
+    private static Map<String, String> params(List<String> parts)
+    {
+        Map<String, String> params = new LinkedHashMap<>();
+        for (int i = 1; i < parts.size(); i++)
+        {
+            String part = parts.get(i);
+            int eq = part.indexOf('=');
+            if (eq < 0)
+            {
+                if (part.trim().isEmpty())
+                {
+                    continue;
+                }
+                return null;
+            }
+            params.put(part.substring(0, eq).trim(), part.substring(eq + 1).trim());
+        }
+        return params;
+    }
+
+    /** @return the heading level, 0 for a line that is not a heading, or -1 if it cannot be read */
+    private static int headingLevel(String line)
+    {
+        int open = 0;
+        while (open < line.length() && line.charAt(open) == '=')
+        {
+            open++;
+        }
+        int close = 0;
+        while (close < line.length() - open && line.charAt(line.length() - 1 - close) == '=')
+        {
+            close++;
+        }
+        if (close == 0)
+        {
+            return 0;
+        }
+        return open == close ? open : -1;
+    }
+
+    /** Text that renders as itself: no links, templates, tags, entities or formatting quotes. */
+    private static boolean isPlain(String s)
+    {
+        return s.indexOf('[') < 0 && s.indexOf('{') < 0 && s.indexOf('<') < 0 && s.indexOf('&') < 0
+                && !s.contains("''");
+    }
+
+    private static String templateName(String raw)
+    {
+        String name = raw.trim().replace('_', ' ');
+        if (name.regionMatches(true, 0, "Template:", 0, 9))
+        {
+            name = name.substring(9).trim();
+        }
+        return name.isEmpty() ? name : Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    /** Index just past the {@code }}} closing the template opened at {@code start}, or -1. */
+    private static int templateEnd(String text, int start)
+    {
+        int depth = 0;
+        int i = start;
+        while (i < text.length() - 1)
+        {
+            if (text.startsWith("{{", i))
+            {
+                depth++;
+                i += 2;
+            }
+            else if (text.startsWith("}}", i))
+            {
+                depth--;
+                i += 2;
+                if (depth == 0)
+                {
+                    return i;
+                }
+            }
+            else
+            {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    /** Split a template body at the pipes that are not inside a nested template or link. */
+    private static List<String> splitParams(String body)
+    {
+        List<String> parts = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < body.length(); i++)
+        {
+            char c = body.charAt(i);
+            if (c == '{' || c == '[')
+            {
+                depth++;
+            }
+            else if ((c == '}' || c == ']') && depth > 0)
+            {
+                depth--;
+            }
+            else if (c == '|' && depth == 0)
+            {
+                parts.add(body.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(body.substring(start));
+        return parts;
+    }
+
+    private static String stripComments(String text)
+    {
+        if (!text.contains("<!--"))
+        {
+            return text;
+        }
+        StringBuilder out = new StringBuilder(text.length());
+        int i = 0;
+        while (i < text.length())
+        {
+            int open = text.indexOf("<!--", i);
+            if (open < 0)
+            {
+                out.append(text, i, text.length());
+                break;
+            }
+            out.append(text, i, open);
+            int close = text.indexOf("-->", open + 4);
+            i = close < 0 ? text.length() : close + 3;
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,200 @@
+package com.lootledger.items;
+
+import com.google.gson.Gson;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Client;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static net.runelite.client.RuneLite.RUNELITE_DIR;
+
+/**
+ * Persistent drop-table item name -> canonical item ID cache, shared by all
+ * accounts, so only names that were never resolved before need the client
+ * thread. An ID of 0 records a name that did not resolve to an item.
+ *
+ * <p>JSON lives at: ~/.runelite/lootledger/item-ids.json. It is stamped with
+ * the bundled item index checksum and the client revision and discarded when
+ * either changes, since both feed into how names resolve.
+ */
+@Slf4j
+@Singleton
+public class ItemIdCache
+{
+    private static final String FILE_NAME = "item-ids.json";
+    private static final long FLUSH_DELAY_MS = 2000;
+
+    private final Gson gson;
+    private final Client client;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String stamp;
+    private volatile boolean dirty;
+    private ScheduledExecutorService io;
+    private ScheduledFuture<?> pendingFlush;
+
+    /** On-disk form. */
+    private static final class Saved
+    {
+        String stamp;
+        Map<String, Integer> ids;
+    }
+
+    @Inject
+    public ItemIdCache(Gson gson, Client client)
+    {
+        this.gson = gson;
+        this.client = client;
+    }
+
+    /** Creates the io executor and loads the saved cache in the background. */
+    public synchronized void startUp()
+    {
+        if (io == null)
+        {
+            io = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "itemids-io");
+                t.setDaemon(true);
+                return t;
+            });
+            io.execute(this::load);
+        }
+    }
+
+    /** Writes out pending entries and stops the io executor. */
+    public synchronized void shutdown()
+    {
+        if (io == null)
+        {
+            return;
+        }
+        if (pendingFlush != null)
+        {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+        if (dirty)
+        {
+            io.execute(this::save);
+        }
+        io.shutdown();
+        io = null;
+    }
+
+    /** @return the cached ID for {@code name}, 0 for a known non-item, or null if it was never resolved */
+    public Integer get(String name)
+    {
+        return name == null ? null : ids.get(name);
+    }
+
+    public void put(String name, int id)
+    {
+        if (name == null)
+        {
+            return;
+        }
+        if (!Objects.equals(ids.put(name, id), id))
+        {
+            requestFlush();
+        }
+    }
+
+    /** Coalesces writes: one save runs shortly after the first unsaved change. */
+    private synchronized void requestFlush()
+    {
+        dirty = true;
+        if (io == null || pendingFlush != null && !pendingFlush.isDone())
+        {
+            return;
+        }
+        pendingFlush = io.schedule(this::save, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void load()
+    {
+        stamp = currentStamp();
+        Path file = file();
+        if (!Files.exists(file))
+        {
+            return;
+        }
+        try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        {
+            Saved saved = gson.fromJson(r, Saved.class);
+            if (saved == null || saved.ids == null)
+            {
+                return;
+            }
+            if (!stamp.equals(saved.stamp))
+            {
+                log.debug("Item id cache is from {}, now {}; discarding", saved.stamp, stamp);
+                dirty = true;
+                return;
+            }
+            // entries resolved since startUp are newer than the file
+            saved.ids.forEach((name, id) -> {
+                if (name != null && id != null) ids.putIfAbsent(name, id);
+            });
+        }
+        catch (Exception ex)
+        {
+            log.warn("Failed to load item id cache", ex);
+        }
+    }
+
+    /** Identifies the inputs of a resolution: the item index contents and the client revision. */
+    private String currentStamp()
+    {
+        ItemIdIndex.loadAsync().join();
+        return "items=" + Long.toHexString(ItemIdIndex.getChecksum()) + ",client=" + client.getRevision();
+    }
+
+    private void save()
+    {
+        dirty = false;
+        Path file = file();
+        try
+        {
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+            try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))
+            {
+                Saved saved = new Saved();
+                saved.stamp = stamp;
+                saved.ids = new TreeMap<>(ids);
+                gson.toJson(saved, w);
+            }
+            try
+            {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException ex)
+            {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException ex)
+        {
+            dirty = true;
+            log.error("Failed to save item id cache", ex);
+        }
+    }
+
+    private static Path file()
+    {
+        return RUNELITE_DIR.toPath().resolve("lootledger").resolve(FILE_NAME);
+    }
+}
@@ -1,82 +1,228 @@
 package com.lootledger.items;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.client.game.ItemManager;
 
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
 
 /**
- * Loads a resource JSON mapping of ITEM_NAME -> [itemIds...] and offers
- * flexible lookups that handle both "Foo (Bar)" and "Foo#Bar" variants.
+ * Loads the bundled ITEM_NAME -> [itemIds...] index and offers flexible
+ * lookups that handle both "Foo (Bar)" and "Foo#Bar" variants.
+ *
+ * <p>The index is generated from Items.json at build time (see the
+ * {@code generateItemIndex} task) in this big-endian layout:
+ * <pre>
+ * int magic, int version, int keyCount, int idCount, int poolBytes
+ * byte[poolBytes]  UTF-8 string pool of normalized names and aliases, sorted
+ * int[keyCount]    end offset (in chars) of each name in the pool
+ * int[keyCount]    end offset of each name's ids
+ * int[idCount]     item ids
+ * </pre>
  */
 @Slf4j
 public final class ItemIdIndex
 {
-    private static final String RESOURCE_PATH = "/com/lootledger/Items.json"; // classpath resource
-    private static volatile Gson GSON;
-    private static final Type TYPE = new TypeToken<Map<String, List<Integer>>>() {}.getType();
+    private static final String RESOURCE_PATH = "/com/lootledger/items.bin"; // classpath resource
+    private static final int MAGIC = 0x4C4C4958; // "LLIX"
+    private static final int VERSION = 2;
+    private static final int[] NO_IDS = new int[0];
+    private static final Pattern PARENS = Pattern.compile("\\s*\\([^)]*\\)");
 
-    // normalized name -> primitive int[] (fast, heap-friendly)
-    private static volatile Map<String, int[]> index = Collections.emptyMap();
+    private static volatile Table index = Table.EMPTY;
+    private static volatile long checksum;
+    // completes once a background load has finished; null until one is started
+    private static volatile CompletableFuture<Void> loading;
 
     private ItemIdIndex() {}
 
-    public static void setGson(Gson gson) {
-        GSON = Objects.requireNonNull(gson, "gson");
+    /** Sorted names in one pool plus packed ids; lookups binary search the pool. */
+    private static final class Table
+    {
+        static final Table EMPTY = new Table("", NO_IDS, NO_IDS, NO_IDS);
+
+        final String pool;
+        final int[] keyEnds;
+        final int[] idEnds;
+        final int[] ids;
+
+        Table(String pool, int[] keyEnds, int[] idEnds, int[] ids)
+        {
+            this.pool = pool;
+            this.keyEnds = keyEnds;
+            this.idEnds = idEnds;
+            this.ids = ids;
+        }
+
+        int size()
+        {
+            return keyEnds.length;
+        }
+
+        /**
+         * Ids for {@code key[from, to)}, or null. With {@code fold}, ASCII upper case
+         * and nbsp are folded on the fly the way {@link #normalize} would.
+         */
+        int[] get(String key, int from, int to, boolean fold)
+        {
+            int lo = 0;
+            int hi = keyEnds.length - 1;
+            while (lo <= hi)
+            {
+                int mid = (lo + hi) >>> 1;
+                int c = compareKey(mid, key, from, to, fold);
+                if (c < 0) lo = mid + 1;
+                else if (c > 0) hi = mid - 1;
+                else return Arrays.copyOfRange(ids, mid == 0 ? 0 : idEnds[mid - 1], idEnds[mid]);
+            }
+            return null;
+        }
+
+        /** {@link String#compareTo} of the pooled key against the key region, without a substring. */
+        private int compareKey(int i, String key, int from, int to, boolean fold)
+        {
+            int start = i == 0 ? 0 : keyEnds[i - 1];
+            int len = keyEnds[i] - start;
+            int keyLen = to - from;
+            int n = Math.min(len, keyLen);
+            for (int k = 0; k < n; k++)
+            {
+                char q = key.charAt(from + k);
+                int d = pool.charAt(start + k) - (fold ? fold(q) : q);
+                if (d != 0) return d;
+            }
+            return len - keyLen;
+        }
     }
 
-    public static synchronized void load() {
-        if (GSON == null) {
-            throw new IllegalStateException("ItemIdIndex Gson not set");
+    /**
+     * Load the index on a background thread unless it is already loaded or
+     * loading. A failed load is retried by the next call.
+     */
+    public static synchronized CompletableFuture<Void> loadAsync()
+    {
+        CompletableFuture<Void> f = loading;
+        if (f == null || f.isDone() && index == Table.EMPTY)
+        {
+            f = CompletableFuture.runAsync(ItemIdIndex::load, r -> {
+                Thread t = new Thread(r, "itemindex-load");
+                t.setDaemon(true);
+                t.start();
+            });
+            loading = f;
         }
+        return f;
+    }
+
+    /** @return true once the index has been read; false before that and after a failed load */
+    public static boolean isLoaded()
+    {
+        return index != Table.EMPTY;
+    }
+
+    /** CRC32 of the loaded index resource, 0 if it is not loaded. */
+    public static long getChecksum()
+    {
+        return checksum;
+    }
+
+    public static synchronized void load() {
+        long start = System.nanoTime();
         try (InputStream is = ItemIdIndex.class.getResourceAsStream(RESOURCE_PATH)) {
             if (is == null) {
-                log.warn("Items.json not found on classpath at {}", RESOURCE_PATH);
-                index = Collections.emptyMap();
+                log.warn("Item index not found on classpath at {}", RESOURCE_PATH);
+                index = Table.EMPTY;
                 return;
             }
-            try (Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8)) {
-                Map<String, List<Integer>> raw = GSON.fromJson(reader, TYPE);
-                Map<String, int[]> tmp = new HashMap<>(raw.size());
-                for (Map.Entry<String, List<Integer>> e : raw.entrySet()) {
-                    String key = normalize(e.getKey());
-                    List<Integer> ids = e.getValue();
-                    if (ids == null || ids.isEmpty()) { continue; }
-                    int[] arr = new int[ids.size()];
-                    for (int i = 0; i < ids.size(); i++) arr[i] = ids.get(i);
-                    tmp.put(key, arr);
-                }
-                index = Collections.unmodifiableMap(tmp);
-                log.info("Loaded {} item-name keys from Items.json", index.size());
-            }
+            byte[] bytes = is.readAllBytes();
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            index = read(ByteBuffer.wrap(bytes));
+            checksum = crc.getValue();
+            log.info("Loaded {} item-name keys from {} in {} ms", index.size(), RESOURCE_PATH,
+                    (System.nanoTime() - start) / 1_000_000);
         } catch (Exception ex) {
-            log.error("Failed to load Items.json", ex);
-            index = Collections.emptyMap();
+            log.error("Failed to load item index", ex);
+            index = Table.EMPTY;
         }
     }
 
-    /** Returns candidate IDs for an item name, trying several key variations. */
+    private static Table read(ByteBuffer buf)
+    {
+        if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+            throw new IllegalStateException("Unsupported item index format");
+        }
+        int keyCount = buf.getInt();
+        int idCount = buf.getInt();
+        int poolBytes = buf.getInt();
+        String pool = new String(buf.array(), buf.position(), poolBytes, StandardCharsets.UTF_8);
+        buf.position(buf.position() + poolBytes);
+
+        int[] keyEnds = new int[keyCount];
+        int[] idEnds = new int[keyCount];
+        int[] ids = new int[idCount];
+        IntBuffer ints = buf.asIntBuffer();
+        ints.get(keyEnds).get(idEnds).get(ids);
+        return new Table(pool, keyEnds, idEnds, ids);
+    }
+
+    /**
+     * Returns candidate IDs for an item name. Names are matched as written or by
+     * one of the alias spellings generated with the index ("Foo (Bar)" for
+     * "Foo(Bar)" and "Foo#(Bar)"), then without a "#..." suffix or parentheses.
+     * Returns no IDs while the index is still loading; callers that need it
+     * should wait on {@link #loadAsync()} first.
+     */
     public static int[] findIdsFlex(String itemName)
     {
-        if (itemName == null || itemName.isEmpty()) return new int[0];
-        String n = normalize(itemName);
+        if (itemName == null || itemName.isEmpty()) return NO_IDS;
+        if (loading == null) loadAsync();
+        return find(index, itemName);
+    }
 
-        // Try exact
-        int[] ids = index.get(n);
-        if (ids != null) return ids;
+    /**
+     * Resolves a batch of names, e.g. every row of a drop table, against one
+     * snapshot of the index. {@code result[i]} holds the IDs for {@code names.get(i)}.
+     */
+    public static int[][] findIdsFlex(List<String> names)
+    {
+        if (loading == null) loadAsync();
+        Table table = index;
+        int[][] result = new int[names.size()][];
+        for (int i = 0; i < result.length; i++)
+        {
+            String name = names.get(i);
+            result[i] = name == null || name.isEmpty() ? NO_IDS : find(table, name);
+        }
+        return result;
+    }
+
+    private static int[] find(Table table, String itemName)
+    {
+        int[] ids;
+        boolean plain = isPlain(itemName);
+        if (plain)
+        {
+            // plain names are case-folded and trimmed during the probe instead of copied
+            int from = 0;
+            int to = itemName.length();
+            while (from < to && fold(itemName.charAt(from)) <= ' ') from++;
+            while (to > from && fold(itemName.charAt(to - 1)) <= ' ') to--;
+            ids = table.get(itemName, from, to, true);
+            if (ids != null) return ids;
+            if (itemName.indexOf('#') < 0 && itemName.indexOf('(') < 0) return NO_IDS;
+        }
 
-        // Try converting "Foo (Bar)" → "Foo#Bar"
-        String hashVariant = toHashVariant(n);
-        if (!hashVariant.equals(n))
+        String n = normalize(itemName);
+        if (!plain)
         {
-            ids = index.get(hashVariant);
+            ids = table.get(n, 0, n.length(), false);
             if (ids != null) return ids;
         }
 
@@ -84,20 +230,21 @@ public final class ItemIdIndex
         int hash = n.indexOf('#');
         if (hash > 0)
         {
-            String base = n.substring(0, hash).trim();
-            ids = index.get(base);
+            int end = hash;
+            while (end > 0 && n.charAt(end - 1) <= ' ') end--;
+            ids = table.get(n, 0, end, false);
             if (ids != null) return ids;
         }
 
         // As a last resort, try stripping all parentheses
-        String parenStripped = n.replaceAll("\\s*\\([^)]*\\)", "").trim();
+        String parenStripped = PARENS.matcher(n).replaceAll("").trim();
         if (!parenStripped.equals(n))
         {
-            ids = index.get(parenStripped);
+            ids = table.get(parenStripped, 0, parenStripped.length(), false);
             if (ids != null) return ids;
         }
 
-        return new int[0];
+        return NO_IDS;
     }
 
     /**
@@ -129,22 +276,26 @@ public final class ItemIdIndex
         return firstCanonical != 0 ? firstCanonical : fallback;
     }
 
+    // generateItemIndex in build.gradle normalizes the bundled keys the same way
     private static String normalize(String s)
     {
         return s.toLowerCase(Locale.ROOT).replace('\u00A0', ' ').trim(); // collapse nbsp → space
     }
 
-    /** Convert "foo (bar)" to "foo#bar" for keys that use hash disambiguators. */
-    private static String toHashVariant(String s)
+    /** True if {@link #fold} lower-cases the name exactly like {@link #normalize}. */
+    private static boolean isPlain(String s)
     {
-        // e.g. "adamant dagger (p++)" → "adamant dagger#(p++)"
-        int i = s.indexOf('(');
-        if (i > 0 && s.endsWith(")"))
+        for (int i = 0; i < s.length(); i++)
         {
-            String base = s.substring(0, i).trim();
-            String paren = s.substring(i).replace(" (", "#");
-            return (base + paren).trim();
+            char c = s.charAt(i);
+            if (c >= 0x80 && c != '\u00A0') return false;
         }
-        return s;
+        return true;
+    }
+
+    private static char fold(char c)
+    {
+        if (c >= 'A' && c <= 'Z') return (char) (c + ('a' - 'A'));
+        return c == '\u00A0' ? ' ' : c;
     }
 }
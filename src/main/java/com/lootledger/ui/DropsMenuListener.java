@@ -110,7 +110,7 @@ public class DropsMenuListener
                 Math.max(0, useIdx - 1),
                 useEntry
         );
-        showDrops.onClick(me -> fetchAndDisplayDrops(id, name, level, 1));
+        showDrops.onClick(me -> fetchAndDisplayDrops(id, name, level));
 
         entries.add(useIdx + 1, showDrops);
         event.setMenuEntries(entries.toArray(new MenuEntry[0]));
@@ -126,7 +126,8 @@ public class DropsMenuListener
                 || type == MenuAction.EXAMINE_NPC;
     }
 
-    private void fetchAndDisplayDrops(int id, String name, int level, int attemptsLeft)
+    /** Transient wiki errors are already retried, with backoff, by the fetcher. */
+    private void fetchAndDisplayDrops(int id, String name, int level)
     {
         dropCache.get(id, name, level)
                 .whenComplete((dropData, ex) ->
@@ -137,17 +138,10 @@ public class DropsMenuListener
                         return;
                     }
 
-                    if (attemptsLeft > 0)
-                    {
-                        fetchAndDisplayDrops(id, name, level, attemptsLeft - 1);
-                    }
-                    else
-                    {
-                        if (ex != null) {
-                            log.error("Failed to fetch drop data for {}", name, ex);
-                        } else {
-                            log.error("Failed to fetch drop data for {} (no error cause)", name);
-                        }
+                    if (ex != null) {
+                        log.error("Failed to fetch drop data for {}", name, ex);
+                    } else {
+                        log.debug("No drop data for {}", name);
                     }
                 });
     }
@@ -3,6 +3,7 @@ package com.lootledger.ui;
 import com.lootledger.LootLedgerConfig;
 import com.lootledger.account.AccountManager;
 import com.lootledger.drops.DropItem;
+import com.lootledger.drops.DropTableRefreshed;
 import com.lootledger.drops.NpcDropData;
 import com.lootledger.managers.ObtainedItemsManager;
 import lombok.Getter;
@@ -87,6 +88,8 @@ public class MusicWidgetController
     private final ItemSpriteCache itemSpriteCache;
     private final LootLedgerConfig config;
     private final NpcSearchService searchService;
+    // only touched on the Swing thread
+    private NpcSearchDialog searchDialog;
 
     private NpcDropData currentDrops = null;
     private String originalTitleText = null;
@@ -179,6 +182,33 @@ public class MusicWidgetController
         });
     }
 
+    /**
+     * A stale table we are showing was refreshed in the background; redraw it
+     * in place, keeping the current obtained-items filter.
+     */
+    @Subscribe
+    public void onDropTableRefreshed(DropTableRefreshed ev)
+    {
+        clientThread.invokeLater(() ->
+        {
+            if (!overrideActive || !isSameNpc(currentDrops, ev.getPrevious()))
+            {
+                return;
+            }
+
+            currentDrops = ev.getRefreshed();
+            applyOverride(currentDrops);
+        });
+    }
+
+    private static boolean isSameNpc(NpcDropData a, NpcDropData b)
+    {
+        return a != null && b != null
+                && a.getNpcId() == b.getNpcId()
+                && a.getLevel() == b.getLevel()
+                && Objects.equals(a.getName(), b.getName());
+    }
+
     /** Replace the music widget with a drop table view for the given NPC. */
     public void override(NpcDropData dropData)
     {
@@ -682,64 +712,16 @@ public class MusicWidgetController
         root.revalidate();
     }
 
-    /** Display a Swing dialog prompting the user for an NPC name or ID, then load and show. */
+    /** Open (or bring back) the search dialog; the chosen NPC's drops are shown. */
     private void showSearchDialog()
     {
         SwingUtilities.invokeLater(() ->
         {
-            String query = JOptionPane.showInputDialog(
-                    null,
-                    "Enter NPC name or ID:",
-                    "Search NPC",
-                    JOptionPane.PLAIN_MESSAGE
-            );
-            if (query == null || query.trim().isEmpty()) { return; }
-
-            final String q = query.trim();
-            if (q.isEmpty()) { return; }
-
-            Thread t = new Thread(() ->
+            if (searchDialog == null || !searchDialog.isShowing())
             {
-                List<NpcDropData> results = searchService.search(q);
-
-                SwingUtilities.invokeLater(() ->
-                {
-                    if (results.isEmpty())
-                    {
-                        JOptionPane.showMessageDialog(
-                                null,
-                                "No NPCs found for: " + q,
-                                "Search NPC",
-                                JOptionPane.INFORMATION_MESSAGE
-                        );
-                        return;
-                    }
-
-                    List<NpcDropData> limited = results.stream().limit(5).collect(Collectors.toList());
-                    String[] choices = limited.stream()
-                            .map(n -> String.format("%s (ID %d, Lvl %d)", n.getName(), n.getNpcId(), n.getLevel()))
-                            .toArray(String[]::new);
-
-                    int idx = JOptionPane.showOptionDialog(
-                            null,
-                            "Select NPC:",
-                            "Search Results",
-                            JOptionPane.DEFAULT_OPTION,
-                            JOptionPane.PLAIN_MESSAGE,
-                            null,
-                            choices,
-                            choices[0]
-                    );
-
-                    if (idx >= 0 && idx < limited.size())
-                    {
-                        override(limited.get(idx));
-                    }
-                });
-            }, "lootledger-search");
-
-            t.setDaemon(true);
-            t.start();
+                searchDialog = new NpcSearchDialog(searchService, this::override);
+            }
+            searchDialog.show();
         });
     }
 
@@ -0,0 +1,208 @@
+package com.lootledger.ui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Orders search candidates by how well their name matches a query: exact
+ * matches first, then prefix, word-start and substring matches (shorter names
+ * first), then everything else by edit distance. Each name is scored once,
+ * case-insensitively and without copying it.
+ *
+ * <p>Edit distances use Myers' bit-parallel algorithm for queries of up to 64
+ * characters and two reused rows otherwise, and stop early once a name is
+ * known to be more edits away than the query is long; such names keep their
+ * input order at the end. Not thread-safe; use one ranker per search.
+ */
+final class NameRanker
+{
+    private static final int EXACT = 0;
+    private static final int PREFIX = 1;
+    private static final int WORD = 2;
+    private static final int CONTAINS = 3;
+    private static final int FUZZY = 4;
+
+    private final String query;
+    private final int cutoff;
+    // Myers pattern bitmasks: bit i is set where query[i] is the char
+    private final long[] asciiMasks = new long[128];
+    private final Map<Character, Long> otherMasks = new HashMap<>();
+    // rows for queries too long for one machine word
+    private int[] prev;
+    private int[] cur;
+
+    NameRanker(String query)
+    {
+        this.query = query.trim().toLowerCase(Locale.ROOT);
+        this.cutoff = Math.max(3, this.query.length());
+        for (int i = 0; i < Math.min(this.query.length(), 64); i++)
+        {
+            char c = this.query.charAt(i);
+            if (c < 128)
+            {
+                asciiMasks[c] |= 1L << i;
+            }
+            else
+            {
+                otherMasks.merge(c, 1L << i, (a, b) -> a | b);
+            }
+        }
+    }
+
+    /** Rank {@code items} by {@code nameOf} against {@code query}; ties keep their order. */
+    static <T> List<T> rank(List<T> items, Function<? super T, String> nameOf, String query)
+    {
+        return new NameRanker(query).rank(items, nameOf);
+    }
+
+    <T> List<T> rank(List<T> items, Function<? super T, String> nameOf)
+    {
+        // score in the high half, input index in the low half: one primitive sort, stable
+        long[] keys = new long[items.size()];
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] = (long) score(nameOf.apply(items.get(i))) << 32 | i;
+        }
+        Arrays.sort(keys);
+
+        List<T> out = new ArrayList<>(keys.length);
+        for (long key : keys)
+        {
+            out.add(items.get((int) key));
+        }
+        return out;
+    }
+
+    /** Lower is better: the match tier in the high bits, the edit distance in the low 16. */
+    int score(String name)
+    {
+        if (name == null)
+        {
+            return FUZZY << 16 | cutoff + 1;
+        }
+        int n = name.length();
+        int m = query.length();
+
+        int tier = FUZZY;
+        char first = m == 0 ? 0 : query.charAt(0);
+        for (int i = 0; i + m <= n && tier > WORD; i++)
+        {
+            if (m == 0 || Character.toLowerCase(name.charAt(i)) == first && name.regionMatches(true, i, query, 0, m))
+            {
+                if (i == 0)
+                {
+                    tier = m == n ? EXACT : PREFIX;
+                }
+                else if (!Character.isLetterOrDigit(name.charAt(i - 1)))
+                {
+                    tier = WORD;
+                }
+                else if (tier == FUZZY)
+                {
+                    tier = CONTAINS;
+                }
+            }
+        }
+        // for a substring the distance is just the characters around it
+        int distance = tier == FUZZY ? distance(name) : n - m;
+        return tier << 16 | Math.min(distance, 0xFFFF);
+    }
+
+    /** Levenshtein distance to the query, or {@code cutoff + 1} once it is known to exceed the cutoff. */
+    private int distance(String name)
+    {
+        int n = name.length();
+        int m = query.length();
+        if (Math.abs(n - m) > cutoff)
+        {
+            return cutoff + 1;
+        }
+        if (m == 0)
+        {
+            return n;
+        }
+        return m <= 64 ? myers(name) : rows(name);
+    }
+
+    private int myers(String name)
+    {
+        int n = name.length();
+        int m = query.length();
+        long last = 1L << (m - 1);
+        long pv = -1L;
+        long mv = 0;
+        int score = m;
+        for (int j = 0; j < n; j++)
+        {
+            long eq = mask(Character.toLowerCase(name.charAt(j)));
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            if ((ph & last) != 0)
+            {
+                score++;
+            }
+            else if ((mh & last) != 0)
+            {
+                score--;
+            }
+            // the distance can drop by at most one per remaining character
+            if (score - (n - j - 1) > cutoff)
+            {
+                return cutoff + 1;
+            }
+            ph = ph << 1 | 1;
+            mh <<= 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+        }
+        return Math.min(score, cutoff + 1);
+    }
+
+    private long mask(char c)
+    {
+        return c < 128 ? asciiMasks[c] : otherMasks.getOrDefault(c, 0L);
+    }
+
+    private int rows(String name)
+    {
+        int n = name.length();
+        int m = query.length();
+        if (prev == null || prev.length < m + 1)
+        {
+            prev = new int[m + 1];
+            cur = new int[m + 1];
+        }
+        for (int i = 0; i <= m; i++)
+        {
+            prev[i] = i;
+        }
+        for (int j = 1; j <= n; j++)
+        {
+            char c = Character.toLowerCase(name.charAt(j - 1));
+            cur[0] = j;
+            int best = j;
+            for (int i = 1; i <= m; i++)
+            {
+                int sub = prev[i - 1] + (query.charAt(i - 1) == c ? 0 : 1);
+                cur[i] = Math.min(sub, Math.min(prev[i], cur[i - 1]) + 1);
+                best = Math.min(best, cur[i]);
+            }
+            // every later row is at least this row's minimum
+            if (best > cutoff)
+            {
+                return cutoff + 1;
+            }
+            int[] t = prev;
+            prev = cur;
+            cur = t;
+        }
+        return Math.min(prev[m], cutoff + 1);
+    }
+}
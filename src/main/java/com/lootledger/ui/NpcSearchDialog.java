@@ -0,0 +1,226 @@
+package com.lootledger.ui;
+
+import com.lootledger.drops.NpcDropData;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Search-as-you-type dialog for NPC drop tables. Results are shown as they
+ * stream in from {@link NpcSearchService#searchAsync}; typing a new query
+ * cancels the previous search. All methods run on the Swing thread.
+ */
+class NpcSearchDialog
+{
+    private static final int TYPING_DELAY_MS = 250;
+    private static final int MAX_RESULTS = 10;
+
+    private final NpcSearchService searchService;
+    private final Consumer<NpcDropData> onChosen;
+
+    private final JDialog dialog = new JDialog((JFrame) null, "Search NPC", false);
+    private final JTextField queryField = new JTextField();
+    private final DefaultListModel<NpcSearchService.Result> model = new DefaultListModel<>();
+    private final JList<NpcSearchService.Result> list = new JList<>(model);
+    private final JLabel status = new JLabel("Enter NPC name or ID");
+    private final Timer typing = new Timer(TYPING_DELAY_MS, e -> startSearch());
+
+    private NpcSearchService.Search search;
+    // bumped for every search so updates from older ones are dropped
+    private int generation;
+
+    NpcSearchDialog(NpcSearchService searchService, Consumer<NpcDropData> onChosen)
+    {
+        this.searchService = searchService;
+        this.onChosen = onChosen;
+
+        typing.setRepeats(false);
+        queryField.getDocument().addDocumentListener(new DocumentListener()
+        {
+            @Override
+            public void insertUpdate(DocumentEvent e)
+            {
+                typing.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e)
+            {
+                typing.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e)
+            {
+                typing.restart();
+            }
+        });
+        queryField.addActionListener(e ->
+        {
+            // Enter picks the top result once there is one, otherwise searches right away
+            if (typing.isRunning() || model.isEmpty())
+            {
+                typing.stop();
+                startSearch();
+            }
+            else
+            {
+                choose(list.getSelectedValue() != null ? list.getSelectedValue() : model.get(0));
+            }
+        });
+
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setVisibleRowCount(MAX_RESULTS);
+        list.addMouseListener(new MouseAdapter()
+        {
+            @Override
+            public void mouseClicked(MouseEvent e)
+            {
+                if (e.getClickCount() == 2 && list.getSelectedValue() != null)
+                {
+                    choose(list.getSelectedValue());
+                }
+            }
+        });
+        list.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0), "choose");
+        list.getActionMap().put("choose", new AbstractAction()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                if (list.getSelectedValue() != null)
+                {
+                    choose(list.getSelectedValue());
+                }
+            }
+        });
+
+        JPanel panel = new JPanel(new BorderLayout(0, 4));
+        panel.setBorder(BorderFactory.createEmptyBorder(8, 8, 8, 8));
+        panel.add(queryField, BorderLayout.NORTH);
+        JScrollPane scroll = new JScrollPane(list);
+        scroll.setPreferredSize(new Dimension(320, 200));
+        panel.add(scroll, BorderLayout.CENTER);
+        panel.add(status, BorderLayout.SOUTH);
+
+        dialog.setContentPane(panel);
+        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        dialog.addWindowListener(new WindowAdapter()
+        {
+            @Override
+            public void windowClosed(WindowEvent e)
+            {
+                typing.stop();
+                cancelSearch();
+            }
+        });
+        dialog.pack();
+        dialog.setLocationRelativeTo(null);
+    }
+
+    void show()
+    {
+        dialog.setVisible(true);
+        dialog.toFront();
+        queryField.requestFocusInWindow();
+    }
+
+    boolean isShowing()
+    {
+        return dialog.isDisplayable();
+    }
+
+    private void startSearch()
+    {
+        cancelSearch();
+        model.clear();
+
+        String q = queryField.getText().trim();
+        if (q.isEmpty())
+        {
+            status.setText("Enter NPC name or ID");
+            return;
+        }
+
+        final int gen = ++generation;
+        status.setText("Searching...");
+        search = searchService.searchAsync(q, results -> SwingUtilities.invokeLater(() ->
+        {
+            if (gen == generation)
+            {
+                showResults(results);
+            }
+        }));
+        search.getDone().whenComplete((results, ex) -> SwingUtilities.invokeLater(() ->
+        {
+            if (gen == generation && ex == null)
+            {
+                showResults(results);
+                status.setText(results.isEmpty() ? "No NPCs found for: " + q : " ");
+            }
+        }));
+    }
+
+    private void showResults(List<NpcSearchService.Result> results)
+    {
+        NpcSearchService.Result selected = list.getSelectedValue();
+        model.clear();
+        for (NpcSearchService.Result r : results.subList(0, Math.min(results.size(), MAX_RESULTS)))
+        {
+            model.addElement(r);
+        }
+        if (selected != null)
+        {
+            list.setSelectedValue(selected, false);
+        }
+    }
+
+    private void cancelSearch()
+    {
+        generation++;
+        if (search != null)
+        {
+            search.cancel();
+            search = null;
+        }
+    }
+
+    private void choose(NpcSearchService.Result result)
+    {
+        if (result.getData() != null)
+        {
+            onChosen.accept(result.getData());
+            dialog.dispose();
+            return;
+        }
+
+        // catalog entries are only fetched once picked
+        final int gen = generation;
+        status.setText("Loading " + result.getName() + "...");
+        searchService.load(result.getEntry()).whenComplete((data, ex) -> SwingUtilities.invokeLater(() ->
+        {
+            if (gen != generation || !dialog.isDisplayable())
+            {
+                return;
+            }
+            if (data == null)
+            {
+                status.setText("No drops found for: " + result.getName());
+                return;
+            }
+            onChosen.accept(data);
+            dialog.dispose();
+        }));
+    }
+}
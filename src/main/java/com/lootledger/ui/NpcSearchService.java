@@ -1,12 +1,20 @@
 package com.lootledger.ui;
 
 import com.lootledger.drops.DropCache;
+import com.lootledger.drops.NpcCatalog;
 import com.lootledger.drops.NpcDropData;
+import com.lootledger.drops.WikiRequestScheduler.Priority;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -14,9 +22,13 @@ import java.util.stream.Collectors;
 /**
  * Provides fuzzy search over available NPC drop data. The cache is consulted
  * first and any misses fall back to a wiki lookup. Results without drop tables
- * are discarded and lookups for multiple candidates are performed in parallel
- * to keep searches snappy.
+ * are discarded and lookups for multiple candidates are batched into as few
+ * wiki requests as possible to keep searches snappy. Results are streamed
+ * as candidates load instead of waiting for the slowest one. With the bundled
+ * {@link NpcCatalog} complete, searches are answered without the wiki and
+ * only the chosen NPC is fetched.
  */
+@Slf4j
 @Singleton
 public class NpcSearchService
 {
@@ -27,13 +39,157 @@ public class NpcSearchService
     private static final Pattern NUM_NAME_PATTERN  = Pattern.compile("^(\\d+)\\s+(\\D.*)$");
 
     private static final int NAME_FETCH_LIMIT = 10;
+    // candidates of one search loaded at the same time, which bounds its concurrent wiki requests
+    private static final int FETCHES_PER_SEARCH = 3;
+    // a search gives up on candidates that have not loaded by then
+    private static final Duration SEARCH_DEADLINE = Duration.ofSeconds(10);
 
     private final DropCache dropCache;
+    private final NpcCatalog npcCatalog;
+    private final Duration deadline;
+    private final Counters counters = new Counters();
+    // the latest search; starting another cancels it
+    private Search current;
 
     @Inject
-    public NpcSearchService(DropCache dropCache)
+    public NpcSearchService(DropCache dropCache, NpcCatalog npcCatalog)
+    {
+        this(dropCache, npcCatalog, SEARCH_DEADLINE);
+    }
+
+    NpcSearchService(DropCache dropCache, NpcCatalog npcCatalog, Duration deadline)
     {
         this.dropCache = dropCache;
+        this.npcCatalog = npcCatalog;
+        this.deadline = deadline;
+    }
+
+    /** A search result: a loaded drop table, or a catalog entry that is loaded once chosen. */
+    @Getter
+    public static final class Result
+    {
+        private final String name;
+        private final int npcId;
+        private final int level;
+        /** null for catalog entries, see {@link #load} */
+        private final NpcDropData data;
+        private final NpcCatalog.Entry entry;
+
+        Result(NpcDropData data)
+        {
+            this.name = data.getName();
+            this.npcId = data.getNpcId();
+            this.level = data.getLevel();
+            this.data = data;
+            this.entry = null;
+        }
+
+        Result(NpcCatalog.Entry entry)
+        {
+            this.name = entry.getName();
+            this.npcId = entry.getId();
+            this.level = entry.getLevel();
+            this.data = null;
+            this.entry = entry;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s (ID %d, Lvl %d)", name, npcId, level);
+        }
+    }
+
+    /**
+     * A running {@link #searchAsync search}. Once it finishes, times out or is
+     * cancelled, its wiki requests that have not been sent yet are skipped;
+     * loads that complete anyway are ignored but still end up in the cache.
+     */
+    public static final class Search
+    {
+        private final Consumer<List<Result>> onUpdate;
+        private final Counters counters;
+        private final Map<Integer, NpcDropData> found = new LinkedHashMap<>();
+        private final CompletableFuture<List<Result>> done = new CompletableFuture<>();
+        private List<Result> results = Collections.emptyList();
+
+        private Search(Consumer<List<Result>> onUpdate, Counters counters)
+        {
+            this.onUpdate = onUpdate;
+            this.counters = counters;
+            counters.started.incrementAndGet();
+        }
+
+        /** Completes with the final results, or is cancelled along with the search. */
+        public CompletableFuture<List<Result>> getDone()
+        {
+            return done;
+        }
+
+        public void cancel()
+        {
+            if (done.cancel(false))
+            {
+                counters.cancelled.incrementAndGet();
+            }
+        }
+
+        public boolean isFinished()
+        {
+            return done.isDone();
+        }
+
+        private synchronized void add(NpcDropData data, String query)
+        {
+            // keep the first table per NPC ID
+            if (!isFinished() && found.putIfAbsent(data.getNpcId(), data) == null)
+            {
+                publish(rankByName(new ArrayList<>(found.values()), query).stream()
+                        .map(Result::new)
+                        .collect(Collectors.toList()));
+            }
+        }
+
+        private synchronized void publish(List<Result> ranked)
+        {
+            results = Collections.unmodifiableList(ranked);
+            onUpdate.accept(results);
+        }
+
+        private synchronized void finish()
+        {
+            if (done.complete(results))
+            {
+                counters.completed.incrementAndGet();
+            }
+        }
+
+        private synchronized void timeOut()
+        {
+            if (done.complete(results))
+            {
+                counters.timedOut.incrementAndGet();
+            }
+        }
+    }
+
+    /** Search outcomes since startup, for tuning the fetch limit and deadline. */
+    private static final class Counters
+    {
+        final AtomicLong started = new AtomicLong();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong cancelled = new AtomicLong();
+        final AtomicLong timedOut = new AtomicLong();
+        // candidates loaded, and candidates never requested because their search had ended
+        final AtomicLong loaded = new AtomicLong();
+        final AtomicLong skipped = new AtomicLong();
+
+        @Override
+        public String toString()
+        {
+            return "searches=" + started + ", completed=" + completed + ", cancelled=" + cancelled
+                    + ", timedOut=" + timedOut + ", loaded=" + loaded + ", skipped=" + skipped;
+        }
     }
 
     private static final class ParsedQuery
@@ -105,108 +261,166 @@ public class NpcSearchService
     }
 
     /**
-     * Search by partial name, level, or ID. Results are limited and ordered by
-     * Levenshtein distance when appropriate.
+     * Search by partial name, level, or ID without blocking. Matches from the
+     * bundled catalog are published at once; otherwise candidates are loaded
+     * at most {@value #FETCHES_PER_SEARCH} at a time and {@code onUpdate}
+     * receives the ranked results so far every time one with drops arrives,
+     * so cached NPCs show up before any wiki fetch ends.
+     *
+     * <p>Starting a search cancels the previous one. A search finishes when
+     * every candidate is loaded, at the latest after {@link #SEARCH_DEADLINE}.
+     *
+     * @param onUpdate called from background threads with a snapshot of the
+     *                 results, never after the search has finished
      */
-    public List<NpcDropData> search(String query)
+    public Search searchAsync(String query, Consumer<List<Result>> onUpdate)
     {
+        Search search = new Search(onUpdate, counters);
+        Search previous;
+        synchronized (this)
+        {
+            previous = current;
+            current = search;
+        }
+        if (previous != null)
+        {
+            previous.cancel();
+        }
+        search.getDone().whenComplete((results, ex) -> log.debug("Search for {} ended: {}", query, counters));
+
         ParsedQuery pq = parse(query);
         if (pq == null)
         {
-            return Collections.emptyList();
+            search.finish();
+            return search;
         }
 
-        // 1) name only → fetch all candidates by name
-        if (pq.npcId == null && pq.level == null && pq.name != null)
+        List<NpcCatalog.Entry> local = searchCatalog(query);
+        if (!local.isEmpty())
         {
-            List<String> names = safeJoin(dropCache.searchNpcNames(pq.name), Collections.emptyList());
-            List<NpcDropData> fetched = fetchAll(names.stream().limit(NAME_FETCH_LIMIT).collect(Collectors.toList()), 0);
-            final String key = pq.name.toLowerCase(Locale.ROOT);
-            return dedupeById(fetched).stream()
-                    .sorted(Comparator.comparingInt(d -> levenshtein(d.getName().toLowerCase(Locale.ROOT), key)))
-                    .collect(Collectors.toList());
+            search.publish(local.stream().map(Result::new).collect(Collectors.toList()));
+            search.finish();
+            return search;
         }
+        CompletableFuture.delayedExecutor(deadline.toMillis(), TimeUnit.MILLISECONDS).execute(search::timeOut);
 
-        // 2) ID only → fetch by ID
+        // ID only → fetch by ID
         if (pq.npcId != null && pq.name == null)
         {
             int lvl = (pq.level != null ? pq.level : 0);
-            NpcDropData d = safeJoin(dropCache.get(pq.npcId, "", lvl), null);
-            if (d == null || d.getDropTableSections() == null || d.getDropTableSections().isEmpty())
+            dropCache.get(pq.npcId, "", lvl, Priority.SEARCH).whenComplete((data, ex) ->
             {
-                return Collections.emptyList();
-            }
-            return Collections.singletonList(d);
+                if (ex == null)
+                {
+                    counters.loaded.incrementAndGet();
+                }
+                if (ex == null && hasDrops(data))
+                {
+                    search.add(data, "");
+                }
+                search.finish();
+            });
+            return search;
         }
 
-        // 3) mixed or partial → fuzzy search
-        String nameFilter = (pq.name != null ? pq.name : "");
-        int    lvlFilter  = (pq.level != null ? pq.level : -1);
-
-        List<String> candidates = safeJoin(dropCache.searchNpcNames(nameFilter), Collections.emptyList());
-        List<NpcDropData> all = fetchAll(candidates.stream().limit(NAME_FETCH_LIMIT).collect(Collectors.toList()),
-                lvlFilter > -1 ? lvlFilter : 0);
+        // name, optionally with a level → fetch every candidate by name
+        final String nameFilter = (pq.name != null ? pq.name : "");
+        final int lvlFilter = (pq.level != null ? pq.level : -1);
+        dropCache.searchNpcNames(nameFilter).whenComplete((names, ex) ->
+        {
+            if (ex != null || names == null || search.isFinished())
+            {
+                search.finish();
+                return;
+            }
+            List<String> candidates = names.stream().limit(NAME_FETCH_LIMIT).collect(Collectors.toList());
+            stream(search, candidates, 0, nameFilter, lvlFilter, pq.npcId);
+        });
+        return search;
+    }
 
-        // if ID also provided, filter it
-        if (pq.npcId != null)
+    /**
+     * Load {@code names} from {@code from} on, {@value #FETCHES_PER_SEARCH} at
+     * a time, feeding each table into the search as it arrives. The next
+     * group is only requested once the current one has loaded, and not at
+     * all once the search has ended.
+     */
+    private void stream(Search search, List<String> names, int from, String name, int level, Integer npcId)
+    {
+        if (search.isFinished())
         {
-            all = all.stream().filter(d -> d.getNpcId() == pq.npcId).collect(Collectors.toList());
+            counters.skipped.addAndGet(names.size() - from);
+            return;
+        }
+        if (from >= names.size())
+        {
+            search.finish();
+            return;
         }
 
-        final int lvl = lvlFilter;
-        final String key = nameFilter.toLowerCase(Locale.ROOT);
-        return dedupeById(all).stream()
-                .filter(d -> lvl < 0 || d.getLevel() == lvl)
-                .sorted(Comparator.comparingInt(d -> levenshtein(d.getName().toLowerCase(Locale.ROOT), key)))
-                .collect(Collectors.toList());
+        int to = Math.min(names.size(), from + FETCHES_PER_SEARCH);
+        // wait on the callbacks rather than the loads, so every table is added before moving on
+        CompletableFuture<?>[] added = dropCache.getEach(names.subList(from, to), Math.max(level, 0), search::isFinished)
+                .stream()
+                .map(f -> f.thenAccept(d ->
+                {
+                    counters.loaded.incrementAndGet();
+                    if (hasDrops(d) && (level < 0 || d.getLevel() == level) && (npcId == null || d.getNpcId() == npcId))
+                    {
+                        search.add(d, name);
+                    }
+                }))
+                .toArray(CompletableFuture<?>[]::new);
+        CompletableFuture.allOf(added).whenComplete((v, ex) -> stream(search, names, to, name, level, npcId));
+    }
+
+    /** @return search outcome counters since startup, for tuning */
+    public String getSearchStats()
+    {
+        return counters.toString();
     }
 
-    /** Fetch drop data for a list of names concurrently (exception-safe). */
-    private List<NpcDropData> fetchAll(List<String> names, int level)
+    /**
+     * Search the bundled catalog by partial name, level, or ID without any
+     * wiki requests. Only NPCs with drop tables are returned, best name
+     * matches first. Empty if the catalog is unavailable or incomplete.
+     */
+    public List<NpcCatalog.Entry> searchCatalog(String query)
     {
-        List<CompletableFuture<NpcDropData>> futures = names.stream()
-                .map(n -> dropCache.get(0, n, level))
-                .collect(Collectors.toList());
-
-        // Wait for *all* without propagating the first failure
-        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-
-        return futures.stream()
-                .map(f -> f.exceptionally(ex -> null).join())
-                .filter(Objects::nonNull)
-                .filter(d -> d.getDropTableSections() != null && !d.getDropTableSections().isEmpty())
-                .collect(Collectors.toList());
+        ParsedQuery pq = parse(query);
+        if (pq == null || !npcCatalog.isComplete())
+        {
+            return Collections.emptyList();
+        }
+
+        final int lvl = (pq.level != null ? pq.level : -1);
+        List<NpcCatalog.Entry> candidates = pq.npcId != null
+                ? npcCatalog.byId(pq.npcId)
+                : npcCatalog.search(pq.name, NAME_FETCH_LIMIT);
+        return NameRanker.rank(candidates.stream()
+                .filter(e -> e.isDrops() && (lvl < 0 || e.getLevel() == lvl))
+                .collect(Collectors.toList()), NpcCatalog.Entry::getName, pq.name != null ? pq.name : "");
     }
 
-    private static <T> T safeJoin(CompletableFuture<T> f, T fallback)
+    /**
+     * Fetch the drop table of a catalog entry the user picked, from the cache
+     * if possible. Completes with {@code null} if the page turned out to have
+     * no drops.
+     */
+    public CompletableFuture<NpcDropData> load(NpcCatalog.Entry entry)
     {
-        try { return f.join(); }
-        catch (Exception ignored) { return fallback; }
+        return dropCache.get(0, entry.getName(), entry.getLevel())
+                .thenApply(d -> hasDrops(d) ? d : null);
     }
 
-    private static List<NpcDropData> dedupeById(List<NpcDropData> list)
+    /** Order candidates by how well their name matches the query, see {@link NameRanker}. */
+    static List<NpcDropData> rankByName(List<NpcDropData> candidates, String query)
     {
-        Map<Integer, NpcDropData> byId = new LinkedHashMap<>();
-        for (NpcDropData d : list)
-        {
-            // Keep the first occurrence per NPC ID
-            byId.putIfAbsent(d.getNpcId(), d);
-        }
-        return new ArrayList<>(byId.values());
+        return NameRanker.rank(candidates, NpcDropData::getName, query);
     }
 
-    // simple DP Levenshtein
-    private static int levenshtein(String a, String b)
+    private static boolean hasDrops(NpcDropData d)
     {
-        int[][] dp = new int[a.length()+1][b.length()+1];
-        for (int i = 0; i <= a.length(); i++) dp[i][0] = i;
-        for (int j = 0; j <= b.length(); j++) dp[0][j] = j;
-        for (int i = 1; i <= a.length(); i++)
-            for (int j = 1; j <= b.length(); j++)
-                dp[i][j] = Math.min(
-                        Math.min(dp[i-1][j] + 1, dp[i][j-1] + 1),
-                        dp[i-1][j-1] + (a.charAt(i-1)==b.charAt(j-1) ? 0 : 1)
-                );
-        return dp[a.length()][b.length()];
+        return d != null && d.getDropTableSections() != null && !d.getDropTableSections().isEmpty();
     }
 }
@@ -0,0 +1,262 @@
+package com.lootledger.drops;
+
+import com.google.gson.Gson;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryDropStoreTest
+{
+    private static final Duration MAX_AGE = Duration.ofDays(60);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Gson gson = new Gson();
+    private Path dir;
+    private BinaryDropStore store;
+
+    @Before
+    public void setUp()
+    {
+        dir = folder.getRoot().toPath();
+        store = new BinaryDropStore(dir, gson, MAX_AGE, false);
+    }
+
+    @After
+    public void tearDown()
+    {
+        store.close();
+    }
+
+    @Test
+    public void importsJsonFilesOnCreate() throws Exception
+    {
+        writeJson("2_Goblin_5", table(2, "Goblin", 5, "Bones"), Instant.now());
+
+        List<DropStore.Entry> entries = store.open(new HashMap<>());
+
+        assertEquals(1, entries.size());
+        assertEquals("Bones", firstItem(store.read(entries.get(0))));
+        assertFalse(Files.exists(dir.resolve("2_Goblin_5.json")));
+    }
+
+    @Test
+    public void importsJsonWrittenAfterTheStoreExists() throws Exception
+    {
+        store.open(new HashMap<>());
+        store.write("2_Goblin_5", table(2, "Goblin", 5, "Bones"));
+        store.close();
+
+        // a session in JSON mode updated one table and added another
+        Instant later = Instant.now().plusSeconds(60);
+        writeJson("2_Goblin_5", table(2, "Goblin", 5, "Big bones"), later);
+        writeJson("3_Cow_2", table(3, "Cow", 2, "Cowhide"), later);
+
+        List<DropStore.Entry> entries = store.open(new HashMap<>());
+
+        assertEquals(2, entries.size());
+        assertEquals("Big bones", firstItem(store.read(entry(entries, "2_Goblin_5"))));
+        assertEquals("Cowhide", firstItem(store.read(entry(entries, "3_Cow_2"))));
+        assertFalse(Files.exists(dir.resolve("3_Cow_2.json")));
+    }
+
+    @Test
+    public void olderJsonDoesNotReplaceNewerTable() throws Exception
+    {
+        store.open(new HashMap<>());
+        store.write("2_Goblin_5", table(2, "Goblin", 5, "Bones"));
+        store.close();
+
+        writeJson("2_Goblin_5", table(2, "Goblin", 5, "Big bones"), Instant.now().minusSeconds(3600));
+
+        List<DropStore.Entry> entries = store.open(new HashMap<>());
+
+        assertEquals("Bones", firstItem(store.read(entry(entries, "2_Goblin_5"))));
+        assertFalse(Files.exists(dir.resolve("2_Goblin_5.json")));
+    }
+
+    @Test
+    public void reopenKeepsWrittenTables() throws Exception
+    {
+        store.open(new HashMap<>());
+        store.write("2_Goblin_5", table(2, "Goblin", 5, "Bones"));
+        store.remove(Collections.singletonList("missing"));
+        store.close();
+
+        List<DropStore.Entry> entries = store.open(new HashMap<>());
+
+        assertEquals(1, entries.size());
+        NpcDropData data = store.read(entries.get(0));
+        assertNotNull(data);
+        assertEquals("Goblin", data.getName());
+        assertEquals(5, data.getLevel());
+    }
+
+    @Test
+    public void mappedStoreCompactsRewrittenTables() throws Exception
+    {
+        store = new BinaryDropStore(dir, gson, MAX_AGE, true);
+        store.open(new HashMap<>());
+        String[] items = new String[200];
+        for (int i = 0; i < items.length; i++)
+        {
+            items[i] = "Item " + i;
+        }
+        for (int i = 0; i < 300; i++)
+        {
+            items[0] = "Bones " + i;
+            store.write("2_Goblin_5", table(2, "Goblin", 5, items));
+        }
+        store.close();
+
+        // one live table, well under the compaction threshold once rewritten copies are dropped
+        assertTrue(Files.size(dir.resolve(BinaryDropStore.FILE_NAME)) < 64 * 1024);
+        List<DropStore.Entry> entries = store.open(new HashMap<>());
+        assertEquals("Bones 299", firstItem(store.read(entry(entries, "2_Goblin_5"))));
+    }
+
+    @Test
+    public void writesAppendOnlyTheChangedIndexEntries() throws Exception
+    {
+        store.open(new HashMap<>());
+        for (int i = 0; i < 200; i++)
+        {
+            store.write(i + "_Npc_1", table(i, "Npc " + i, 1, "Bones"));
+        }
+        Path file = dir.resolve(BinaryDropStore.FILE_NAME);
+        long before = Files.size(file);
+
+        store.write("0_Npc_1", table(0, "Npc 0", 1, "Big bones"));
+
+        // record plus one-entry delta, not another copy of all 200 entries
+        assertTrue(Files.size(file) - before < 512);
+    }
+
+    @Test
+    public void reopenReplaysDeltasOnTopOfTheIndex() throws Exception
+    {
+        store.open(new HashMap<>());
+        store.write("2_Goblin_5", table(2, "Goblin", 5, "Bones"));
+        store.write("3_Cow_2", table(3, "Cow", 2, "Cowhide"));
+        store.write("2_Goblin_5", table(2, "Goblin", 5, "Big bones"));
+        store.remove(Collections.singletonList("3_Cow_2"));
+        store.write("4_Imp_7", table(4, "Imp", 7, "Ashes"));
+        store.close();
+
+        List<DropStore.Entry> entries = store.open(new HashMap<>());
+
+        assertEquals(2, entries.size());
+        assertEquals("Big bones", firstItem(store.read(entry(entries, "2_Goblin_5"))));
+        assertEquals("Ashes", firstItem(store.read(entry(entries, "4_Imp_7"))));
+    }
+
+    @Test
+    public void recoversDeltasAfterTornWrite() throws Exception
+    {
+        store.open(new HashMap<>());
+        store.write("2_Goblin_5", table(2, "Goblin", 5, "Bones"));
+        store.write("3_Cow_2", table(3, "Cow", 2, "Cowhide"));
+        store.remove(Collections.singletonList("3_Cow_2"));
+        store.close();
+
+        // half a record with no trailer after it
+        Path file = dir.resolve(BinaryDropStore.FILE_NAME);
+        Files.write(file, new byte[] {0x52, 0x45, 0x43, 0x44, 0, 0, 1, 0}, java.nio.file.StandardOpenOption.APPEND);
+
+        List<DropStore.Entry> entries = store.open(new HashMap<>());
+
+        assertEquals(1, entries.size());
+        assertEquals("Bones", firstItem(store.read(entry(entries, "2_Goblin_5"))));
+    }
+
+    @Test
+    public void mappedStoreReadsAcrossManyRegions() throws Exception
+    {
+        // small regions, so records land in many of them and some straddle a boundary
+        store = new BinaryDropStore(dir, gson, MAX_AGE, true, 1024);
+        store.open(new HashMap<>());
+        for (int i = 0; i < 50; i++)
+        {
+            store.write(i + "_Npc_1", table(i, "Npc " + i, 1, "Item " + i, "Bones", "Coins"));
+        }
+
+        List<DropStore.Entry> entries = store.open(new HashMap<>());
+
+        for (int pass = 0; pass < 2; pass++)
+        {
+            for (int i = 0; i < 50; i++)
+            {
+                assertEquals("Item " + i, firstItem(store.read(entry(entries, i + "_Npc_1"))));
+            }
+        }
+        store.close();
+        Files.delete(dir.resolve(BinaryDropStore.FILE_NAME));
+    }
+
+    @Test
+    public void indexKeepsItemSources() throws Exception
+    {
+        store.open(new HashMap<>());
+        NpcDropData goblin = table(2, "Goblin", 5, "Bones", "Goblin mail");
+        goblin.getDropTableSections().get(0).getItems().get(0).setItemId(526);
+        goblin.getDropTableSections().get(0).getItems().get(1).setItemId(288);
+        store.write("2_Goblin_5", goblin);
+        store.close();
+
+        List<DropStore.Entry> entries = store.open(new HashMap<>());
+
+        List<ItemSource> sources = entry(entries, "2_Goblin_5").sources;
+        assertEquals(2, sources.size());
+        assertEquals(288, sources.get(1).getItemId());
+        assertEquals("Goblin", sources.get(1).getNpcName());
+        assertEquals("Drops", sources.get(1).getSection());
+        assertEquals("1/128", sources.get(1).getRarity());
+        assertEquals(128, sources.get(1).getRarityValue(), 0);
+    }
+
+    static NpcDropData table(int npcId, String name, int level, String... items)
+    {
+        List<DropItem> drops = new java.util.ArrayList<>();
+        for (String item : items)
+        {
+            drops.add(new DropItem(0, item, "1/128"));
+        }
+        return new NpcDropData(npcId, name, level,
+                new java.util.ArrayList<>(Collections.singletonList(new DropTableSection("Drops", drops))));
+    }
+
+    private void writeJson(String key, NpcDropData data, Instant modified) throws Exception
+    {
+        Path p = dir.resolve(key + ".json");
+        Files.writeString(p, gson.toJson(data), StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(p, FileTime.from(modified));
+    }
+
+    private static DropStore.Entry entry(List<DropStore.Entry> entries, String key)
+    {
+        return entries.stream().filter(e -> e.key.equals(key)).findFirst().orElseThrow(AssertionError::new);
+    }
+
+    private static String firstItem(NpcDropData data)
+    {
+        return data.getDropTableSections().get(0).getItems().get(0).getName();
+    }
+}
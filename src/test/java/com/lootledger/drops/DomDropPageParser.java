@@ -0,0 +1,81 @@
+package com.lootledger.drops;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The full Jsoup DOM path {@link DropPageParser#parse(java.io.Reader)}
+ * replaced, kept as a baseline for {@code DropPageParserBenchmark} and as the
+ * reference {@code DropPageParserTest} checks the streaming parser against.
+ */
+final class DomDropPageParser
+{
+    private DomDropPageParser() {}
+
+    /** Parse a page that has already been fully loaded into a Jsoup DOM. */
+    static DropPageParser.Page parse(Document doc)
+    {
+        DropPageParser.Page page = new DropPageParser.Page();
+        Element heading = doc.selectFirst("h1#firstHeading");
+        if (heading != null)
+        {
+            page.title = heading.text();
+        }
+        Element link = doc.selectFirst("link[rel=canonical]");
+        if (link != null)
+        {
+            page.canonicalHref = link.attr("href");
+        }
+        page.combatLevel = DropPageParser.parseCombatLevel(doc);
+        page.sections.addAll(parseSections(doc));
+        return page;
+    }
+
+    /** Extract drop table sections from a fully parsed page. */
+    static List<DropTableSection> parseSections(Document doc)
+    {
+        Elements tables = doc.select("table.item-drops");
+        List<DropTableSection> sections = new ArrayList<>();
+
+        for (Element table : tables)
+        {
+            DropTableSection section = DropPageParser.parseTable(table, findSectionHeader(table));
+            if (section != null)
+            {
+                sections.add(section);
+            }
+        }
+        return sections;
+    }
+
+    /** Find the nearest section header preceding the table (supports mw-heading wrappers). */
+    private static String findSectionHeader(Element table)
+    {
+        Element prev = table.previousElementSibling();
+        while (prev != null)
+        {
+            if (prev.is("h2,h3,h4"))
+            {
+                String txt = prev.text().trim();
+                return txt.isEmpty() ? "Drops" : txt;
+            }
+
+            if (prev.hasClass("mw-heading"))
+            {
+                Element h = prev.selectFirst("h2,h3,h4");
+                if (h != null)
+                {
+                    String txt = h.text().trim();
+                    return txt.isEmpty() ? "Drops" : txt;
+                }
+            }
+
+            prev = prev.previousElementSibling();
+        }
+        return "Drops";
+    }
+}
@@ -0,0 +1,241 @@
+package com.lootledger.drops;
+
+import com.google.gson.Gson;
+import com.lootledger.LootLedgerConfig;
+import com.lootledger.account.AccountManager;
+import com.lootledger.items.ItemIdCache;
+import net.runelite.client.eventbus.EventBus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DropCacheTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // one file per table, so a test can age a table by its modification time
+    private static final LootLedgerConfig JSON_FILES = new LootLedgerConfig()
+    {
+        @Override
+        public StoreMode cacheStoreMode()
+        {
+            return StoreMode.JSON_FILES;
+        }
+    };
+    private static final Instant LAST_WEEK = Instant.now().minus(Duration.ofDays(8));
+
+    private final FakeWiki wiki = new FakeWiki().page("Goblin", 1).page("Hobgoblin", 2);
+    private final List<Object> events = new CopyOnWriteArrayList<>();
+    private final List<DropCache> caches = new ArrayList<>();
+    private final Gson gson = new Gson();
+    private DropFetcher fetcher;
+    private DropCache cache;
+
+    @Before
+    public void setUp()
+    {
+        ItemIdCache itemIds = new ItemIdCache(new Gson(), null);
+        itemIds.put("Bones", 526);
+        fetcher = new DropFetcher(new WikiRequestScheduler(wiki.client()), null, null, itemIds);
+        fetcher.startUp();
+
+        cache = open(new LootLedgerConfig() {});
+    }
+
+    @After
+    public void tearDown()
+    {
+        caches.forEach(DropCache::shutdown);
+        fetcher.shutdown();
+    }
+
+    @Test
+    public void concurrentGetsShareOneFetch() throws Exception
+    {
+        CountDownLatch gate = new CountDownLatch(1);
+        wiki.holdUntil(gate);
+
+        // the same NPC, however its name is spelled
+        List<CompletableFuture<NpcDropData>> gets = new ArrayList<>();
+        gets.add(cache.get(3028, "Goblin", 2));
+        gets.add(cache.get(3028, "goblin", 2));
+        gets.add(cache.get(3028, " Goblin ", 2));
+        gate.countDown();
+
+        NpcDropData first = gets.get(0).get(10, TimeUnit.SECONDS);
+        for (CompletableFuture<NpcDropData> get : gets)
+        {
+            assertSame(first, get.get(10, TimeUnit.SECONDS));
+        }
+        // the page and its page id, once
+        assertEquals(2, wiki.requests().size());
+
+        // later calls are answered from the cache
+        assertEquals(first.getName(), cache.get(3028, "Goblin", 2).get(10, TimeUnit.SECONDS).getName());
+        assertEquals(2, wiki.requests().size());
+    }
+
+    @Test
+    public void failedLoadIsNotShared() throws Exception
+    {
+        // no such page: the lookup answers 404, which is not retried
+        assertNull(cache.get(0, "Nobody", 1).get(10, TimeUnit.SECONDS));
+        assertEquals(1, wiki.requests().size());
+
+        wiki.page("Nobody", 2);
+        NpcDropData data = cache.get(0, "Nobody", 1).get(10, TimeUnit.SECONDS);
+
+        assertEquals("Nobody", data.getName());
+        assertEquals(3, wiki.requests().size());
+    }
+
+    @Test
+    public void servesAnExpiredTableAndRenewsAnUnchangedRevision() throws Exception
+    {
+        Path file = cacheStale("Goblin", false, null);
+        DropCache restarted = open(JSON_FILES);
+        CountDownLatch gate = new CountDownLatch(1);
+        wiki.holdUntil(gate);
+
+        // answered from disk while the wiki has not answered anything
+        for (int i = 0; i < 3; i++)
+        {
+            NpcDropData stale = restarted.get(0, "Goblin", 2).get(10, TimeUnit.SECONDS);
+            assertEquals("Bones", stale.getDropTableSections().get(0).getItems().get(0).getName());
+        }
+        gate.countDown();
+        awaitTrue(() -> renewed(file));
+
+        // one revision check for all three, and no page fetch
+        assertEquals(1, wiki.requests("pageids", "1").size());
+        assertEquals(1, lookups());
+        assertEquals(3, wiki.requests().size());
+
+        restarted.get(0, "Goblin", 2).get(10, TimeUnit.SECONDS);
+        assertEquals(3, wiki.requests().size());
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void announcesARefreshOnlyIfTheDropsChanged() throws Exception
+    {
+        Path same = cacheStale("Goblin", true, null);
+        cacheStale("Hobgoblin", true, "Ashes");
+        DropCache restarted = open(JSON_FILES);
+
+        restarted.get(0, "Goblin", 2).get(10, TimeUnit.SECONDS);
+        NpcDropData stale = restarted.get(0, "Hobgoblin", 2).get(10, TimeUnit.SECONDS);
+        assertEquals("Ashes", stale.getDropTableSections().get(0).getItems().get(0).getName());
+
+        awaitTrue(() -> !events.isEmpty() && renewed(same));
+        // the goblin's refresh finished writing; give it the moment it needs to post
+        Thread.sleep(200);
+
+        // both pages are at a new revision and were fetched again
+        assertEquals(4, lookups());
+        assertEquals(1, events.size());
+        DropTableRefreshed refreshed = (DropTableRefreshed) events.get(0);
+        assertSame(stale, refreshed.getPrevious());
+        assertEquals("Bones", refreshed.getRefreshed().getDropTableSections().get(0).getItems().get(0).getName());
+    }
+
+    private DropCache open(LootLedgerConfig config)
+    {
+        AccountManager account = new AccountManager();
+        account.setPlayerName("Tester");
+        DropCache c = new DropCache(gson, account, fetcher, config, new EventBus()
+        {
+            @Override
+            public void post(Object event)
+            {
+                events.add(event);
+            }
+        }, new NpcCatalog(gson), folder.getRoot().toPath());
+        caches.add(c);
+        return c;
+    }
+
+    /**
+     * Fetch a table into a JSON cache and age it past a week, optionally as if
+     * it was parsed from an older page revision, and with {@code otherItem}
+     * instead of the wiki's drops.
+     */
+    private Path cacheStale(String name, boolean oldRevision, String otherItem) throws Exception
+    {
+        DropCache first = open(JSON_FILES);
+        first.get(0, name, 2).get(10, TimeUnit.SECONDS);
+        first.shutdown();
+
+        Path file;
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath().resolve("Tester").resolve("drops")))
+        {
+            file = files.filter(p -> p.getFileName().toString().endsWith("_" + name + "_2.json"))
+                    .findFirst().orElseThrow();
+        }
+        NpcDropData data = gson.fromJson(Files.readString(file), NpcDropData.class);
+        if (otherItem != null)
+        {
+            data.setDropTableSections(Collections.singletonList(new DropTableSection("Drops",
+                    Collections.singletonList(new DropItem(592, otherItem, "Always")))));
+        }
+        if (oldRevision)
+        {
+            data.setRevisionId(data.getRevisionId() - 1);
+        }
+        Files.writeString(file, gson.toJson(data), StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(file, FileTime.from(LAST_WEEK));
+        return file;
+    }
+
+    private static boolean renewed(Path file)
+    {
+        try
+        {
+            return Files.getLastModifiedTime(file).toInstant().isAfter(LAST_WEEK.plus(Duration.ofDays(1)));
+        }
+        catch (IOException ex)
+        {
+            return false;
+        }
+    }
+
+    private int lookups()
+    {
+        return (int) wiki.requests().stream().filter(url -> url.encodedPath().endsWith("/Special:Lookup")).count();
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean())
+        {
+            assertTrue("timed out", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
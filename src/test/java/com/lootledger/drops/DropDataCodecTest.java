@@ -0,0 +1,63 @@
+package com.lootledger.drops;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class DropDataCodecTest
+{
+    @Test
+    public void readsWhatItWrites() throws IOException
+    {
+        DropTableSection section = new DropTableSection("100%",
+                Collections.singletonList(new DropItem(526, "Bones", "Always")));
+        NpcDropData data = new NpcDropData(3028, "Goblin", 2, Collections.singletonList(section));
+        data.setRevisionId(42);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DropDataCodec.write(new DataOutputStream(bytes), data);
+
+        NpcDropData read = DropDataCodec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(42, read.getRevisionId());
+        DropItem item = read.getDropTableSections().get(0).getItems().get(0);
+        assertEquals("Bones", item.getName());
+        assertEquals(section.getItems().get(0).getRarityKind(), item.getRarityKind());
+    }
+
+    @Test
+    public void rejectsAnUnknownRarityKind() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(DropDataCodec.VERSION);
+        out.writeInt(3028);
+        DropDataCodec.writeString(out, "Goblin");
+        out.writeInt(2);
+        out.writeLong(42);
+        out.writeInt(1);
+        DropDataCodec.writeString(out, "100%");
+        out.writeInt(1);
+        out.writeInt(526);
+        DropDataCodec.writeString(out, "Bones");
+        DropDataCodec.writeString(out, "Always");
+        out.writeByte(DropItem.RarityKind.values().length);
+
+        try
+        {
+            DropDataCodec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            fail();
+        }
+        catch (IOException ex)
+        {
+            assertEquals("bad rarity kind " + DropItem.RarityKind.values().length, ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.lootledger.drops;
+
+import com.google.gson.Gson;
+import com.lootledger.drops.WikiRequestScheduler.Priority;
+import com.lootledger.items.ItemIdCache;
+import okhttp3.HttpUrl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DropFetcherTest
+{
+    private final FakeWiki wiki = new FakeWiki();
+    private DropFetcher fetcher;
+
+    @Before
+    public void setUp()
+    {
+        // item ids come from the name cache, so neither the client thread nor ItemManager is needed
+        ItemIdCache itemIds = new ItemIdCache(new Gson(), null);
+        itemIds.put("Bones", 526);
+        fetcher = new DropFetcher(new WikiRequestScheduler(wiki.client()), null, null, itemIds);
+        fetcher.startUp();
+    }
+
+    @After
+    public void tearDown()
+    {
+        fetcher.shutdown();
+    }
+
+    @Test
+    public void fetchesTenNamesWithOneRequest() throws Exception
+    {
+        List<String> names = names(10);
+
+        Map<String, NpcDropData> drops = fetcher.fetchByNames(names, 0).get(10, TimeUnit.SECONDS);
+
+        assertEquals(10, drops.size());
+        NpcDropData monster = drops.get("Monster 3");
+        assertEquals(526, monster.getDropTableSections().get(0).getItems().get(0).getItemId());
+        assertEquals("100%", monster.getDropTableSections().get(0).getHeader());
+        assertEquals(2, monster.getLevel());
+        assertEquals(10030, monster.getRevisionId());
+        assertEquals(1, wiki.requests("action", "query").size());
+        assertEquals(1, wiki.requests().size());
+    }
+
+    @Test
+    public void parsesOnlyPagesWhoseWikitextNeedsRendering() throws Exception
+    {
+        List<String> names = names(5);
+        wiki.wikitext("Monster 1", "==Drops==\n{{DropsTableHead}}\n{{DropsLine|name=Bones|rarity=Always}}\n"
+                + "{{DropsTableBottom}}\n{{RareDropTable|1/128}}\n");
+
+        Map<String, NpcDropData> drops = fetcher.fetchByNames(names, 0).get(10, TimeUnit.SECONDS);
+
+        assertEquals(5, drops.size());
+        assertEquals(1, wiki.requests("action", "parse").size());
+        assertEquals(2, wiki.requests().size());
+    }
+
+    @Test
+    public void fetchingOneByOneTakesTwoRequestsPerName() throws Exception
+    {
+        // the per-NPC path the batch replaces: the page itself, then its page id
+        for (String name : names(10))
+        {
+            assertNotNull(fetcher.fetch(0, name, 0, Priority.INTERACTIVE).get(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(20, wiki.requests().size());
+    }
+
+    @Test
+    public void splitsTitleQueriesIntoFifties() throws Exception
+    {
+        // without pages, so only the title queries are sent and the rate limit is not in the way
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 120; i++)
+        {
+            names.add("Missing " + i);
+        }
+
+        Map<String, NpcDropData> drops = fetcher.fetchByNames(names, 0).get(10, TimeUnit.SECONDS);
+
+        assertEquals(0, drops.size());
+        List<Integer> batchSizes = new ArrayList<>();
+        for (HttpUrl url : wiki.requests("action", "query"))
+        {
+            batchSizes.add(url.queryParameter("titles").split("\\|").length);
+        }
+        batchSizes.sort(null);
+        assertEquals(Arrays.asList(20, 50, 50), batchSizes);
+        assertEquals(3, wiki.requests().size());
+    }
+
+    @Test
+    public void mapsNormalizedAndRedirectedTitlesBackToRequestedNames() throws Exception
+    {
+        wiki.page("Greater demon", 100)
+                .redirect("Greater Demon", "Greater demon")
+                .redirect("Demon (greater)", "Greater demon");
+
+        Map<String, NpcDropData> drops = fetcher.fetchByNames(
+                Arrays.asList("greater_demon", "Greater Demon", "demon (greater)"), 0).get(10, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList("greater_demon", "Greater Demon", "demon (greater)"), new ArrayList<>(drops.keySet()));
+        for (NpcDropData data : drops.values())
+        {
+            assertEquals(100, data.getNpcId());
+            assertEquals("Greater demon", data.getName());
+            assertEquals(1000, data.getRevisionId());
+        }
+        // three names, one page, one request
+        assertEquals(1, wiki.requests().size());
+    }
+
+    @Test
+    public void leavesOutMissingPages() throws Exception
+    {
+        wiki.page("Goblin", 1);
+
+        Map<String, NpcDropData> drops = fetcher.fetchByNames(Arrays.asList("Goblin", "Not a monster"), 0)
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(1, drops.size());
+        assertNotNull(drops.get("Goblin"));
+        assertNull(drops.get("Not a monster"));
+        assertEquals(1, wiki.requests().size());
+    }
+
+    @Test
+    public void retriesThrottlingAndServerErrors() throws Exception
+    {
+        List<String> names = names(1);
+        wiki.fail(429, null).fail(503, null);
+
+        Map<String, NpcDropData> drops = fetcher.fetchByNames(names, 0).get(10, TimeUnit.SECONDS);
+
+        assertEquals(1, drops.size());
+        assertEquals(3, wiki.requests().size());
+    }
+
+    @Test
+    public void retriesDroppedConnections() throws Exception
+    {
+        List<String> names = names(1);
+        wiki.disconnect();
+
+        Map<String, NpcDropData> drops = fetcher.fetchByNames(names, 0).get(10, TimeUnit.SECONDS);
+
+        assertEquals(1, drops.size());
+        assertEquals(2, wiki.requests().size());
+    }
+
+    @Test
+    public void givesUpAfterThreeAttempts() throws Exception
+    {
+        List<String> names = names(1);
+        wiki.fail(502, null).fail(502, null).fail(502, null);
+
+        assertEquals(502, failure(names).getCode());
+        assertEquals(3, wiki.requests().size());
+    }
+
+    @Test
+    public void doesNotRetryNotFound() throws Exception
+    {
+        List<String> names = names(1);
+        wiki.fail(404, null);
+
+        assertEquals(404, failure(names).getCode());
+        assertEquals(1, wiki.requests().size());
+        assertTrue(fetcher.isWikiAvailable());
+    }
+
+    @Test
+    public void waitsAsLongAsRetryAfterAsks() throws Exception
+    {
+        List<String> names = names(1);
+        wiki.fail(429, "1");
+
+        long start = System.nanoTime();
+        Map<String, NpcDropData> drops = fetcher.fetchByNames(names, 0).get(10, TimeUnit.SECONDS);
+
+        // the backoff alone would have retried within half a second
+        assertTrue(System.nanoTime() - start >= TimeUnit.SECONDS.toNanos(1));
+        assertEquals(1, drops.size());
+        assertEquals(2, wiki.requests().size());
+    }
+
+    @Test
+    public void pausesRequestsWhenRetryAfterIsTooLongToWait() throws Exception
+    {
+        List<String> names = names(1);
+        wiki.fail(503, "60");
+
+        assertEquals(503, failure(names).getCode());
+        assertFalse(fetcher.isWikiAvailable());
+        try
+        {
+            fetcher.fetchByNames(names, 0).get(10, TimeUnit.SECONDS);
+            fail("request sent while the wiki asked for a pause");
+        }
+        catch (ExecutionException ex)
+        {
+            assertTrue(WikiCircuitBreaker.isOpen(ex.getCause()));
+        }
+        assertEquals(1, wiki.requests().size());
+    }
+
+    private WikiHttpException failure(List<String> names) throws Exception
+    {
+        try
+        {
+            fetcher.fetchByNames(names, 0).get(10, TimeUnit.SECONDS);
+        }
+        catch (ExecutionException ex)
+        {
+            assertTrue(ex.getCause() instanceof WikiHttpException);
+            return (WikiHttpException) ex.getCause();
+        }
+        throw new AssertionError("fetch succeeded");
+    }
+
+    private List<String> names(int count)
+    {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            names.add("Monster " + i);
+            wiki.page("Monster " + i, 1000 + i);
+        }
+        return names;
+    }
+}
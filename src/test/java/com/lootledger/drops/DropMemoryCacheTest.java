@@ -0,0 +1,249 @@
+package com.lootledger.drops;
+
+import com.lootledger.LootLedgerConfig.CachePolicy;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DropMemoryCacheTest
+{
+    private static final long NO_BYTE_LIMIT = Long.MAX_VALUE;
+
+    @Test
+    public void lruEvictsTheLeastRecentlyUsedTable()
+    {
+        DropMemoryCache cache = new DropMemoryCache(CachePolicy.LRU, 3, NO_BYTE_LIMIT, false);
+        cache.put("a", table("a"));
+        cache.put("b", table("b"));
+        cache.put("c", table("c"));
+        cache.get("a");
+
+        cache.put("d", table("d"));
+
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+        assertEquals(3, cache.stats().entries);
+    }
+
+    @Test
+    public void lruStaysWithinTheByteLimit()
+    {
+        long weight = DropMemoryCache.estimateBytes(table("a"));
+        DropMemoryCache cache = new DropMemoryCache(CachePolicy.LRU, 100, weight * 5 / 2, false);
+
+        for (String key : new String[]{"a", "b", "c", "d"})
+        {
+            cache.put(key, table(key));
+        }
+
+        DropMemoryCache.Stats stats = cache.stats();
+        assertEquals(2, stats.entries);
+        assertEquals(2 * weight, stats.bytes);
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("d"));
+    }
+
+    @Test
+    public void keepsATableLargerThanTheByteLimitUntilTheNextOne()
+    {
+        DropMemoryCache cache = new DropMemoryCache(CachePolicy.LRU, 100, 1, false);
+
+        cache.put("a", table("a"));
+        assertNotNull(cache.get("a"));
+
+        cache.put("b", table("b"));
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.stats().entries);
+    }
+
+    @Test
+    public void tinyLfuKeepsPopularTablesWhileBrowsingOneOffs()
+    {
+        // a window of one table in front of nine in the main area
+        DropMemoryCache lfu = new DropMemoryCache(CachePolicy.TINY_LFU, 10, NO_BYTE_LIMIT, false);
+        DropMemoryCache lru = new DropMemoryCache(CachePolicy.LRU, 10, NO_BYTE_LIMIT, false);
+        for (DropMemoryCache cache : new DropMemoryCache[]{lfu, lru})
+        {
+            for (int i = 0; i < 9; i++)
+            {
+                cache.put("popular" + i, table("popular" + i));
+            }
+            for (int round = 0; round < 3; round++)
+            {
+                for (int i = 0; i < 9; i++)
+                {
+                    cache.get("popular" + i);
+                }
+            }
+            for (int i = 0; i < 20; i++)
+            {
+                cache.put("oneoff" + i, table("oneoff" + i));
+            }
+        }
+
+        for (int i = 0; i < 9; i++)
+        {
+            assertNotNull(lfu.get("popular" + i));
+            assertNull(lru.get("popular" + i));
+        }
+        for (int i = 0; i < 19; i++)
+        {
+            assertNull(lfu.get("oneoff" + i));
+        }
+        // the newest one-off is still in the window
+        assertNotNull(lfu.get("oneoff19"));
+        assertEquals(10, lfu.stats().entries);
+    }
+
+    @Test
+    public void tinyLfuAdmitsANewcomerUsedMoreThanTheMainVictim()
+    {
+        DropMemoryCache cache = new DropMemoryCache(CachePolicy.TINY_LFU, 10, NO_BYTE_LIMIT, false);
+        for (int i = 0; i < 10; i++)
+        {
+            cache.put("cold" + i, table("cold" + i));
+        }
+        // cold0..cold8 fill the main area untouched; the newcomer is read while in the window
+        cache.put("hot", table("hot"));
+        cache.get("hot");
+        cache.get("hot");
+
+        cache.put("next", table("next"));
+
+        // cold9 lost admission to cold0, then hot displaced cold0, the eldest on probation
+        assertNull(cache.get("cold0"));
+        assertNull(cache.get("cold9"));
+        assertNotNull(cache.get("hot"));
+        assertNotNull(cache.get("cold1"));
+    }
+
+    @Test
+    public void tinyLfuLetsOldPopularityFade()
+    {
+        // one table in the window, one in the main area
+        DropMemoryCache cache = new DropMemoryCache(CachePolicy.TINY_LFU, 2, NO_BYTE_LIMIT, false);
+        cache.put("old", table("old"));
+        cache.put("filler", table("filler"));
+        for (int i = 0; i < 15; i++)
+        {
+            cache.get("old");
+        }
+
+        // while "old" is popular, a table read three times does not get in
+        assertNull(admit(cache, "early"));
+        assertNotNull(cache.get("old"));
+
+        // every sample period halves the counters
+        for (int i = 0; i < 2000; i++)
+        {
+            cache.get("elsewhere");
+        }
+        assertNotNull(admit(cache, "late"));
+        assertNull(cache.get("old"));
+    }
+
+    @Test
+    public void protectedTablesOutliveProbationOnesUnderTheByteLimit()
+    {
+        long weight = DropMemoryCache.estimateBytes(table("a"));
+        DropMemoryCache cache = new DropMemoryCache(CachePolicy.TINY_LFU, 100, NO_BYTE_LIMIT, false);
+        DropMemoryCache bounded = new DropMemoryCache(CachePolicy.TINY_LFU, 100, weight * 3, false);
+        for (DropMemoryCache c : new DropMemoryCache[]{cache, bounded})
+        {
+            // a and b move from the window to probation; a second hit promotes a
+            c.put("a", table("a"));
+            c.put("b", table("b"));
+            c.get("a");
+            c.put("c", table("c"));
+        }
+
+        bounded.put("d", table("d"));
+
+        // probation empties before the protected segment
+        assertNull(bounded.get("b"));
+        assertNotNull(bounded.get("a"));
+        assertTrue(bounded.stats().bytes <= weight * 3);
+        assertEquals(3, cache.stats().entries);
+    }
+
+    @Test
+    public void unboundedNeverEvicts()
+    {
+        DropMemoryCache cache = DropMemoryCache.unbounded();
+        for (int i = 0; i < 1000; i++)
+        {
+            cache.put("t" + i, table("t" + i));
+        }
+
+        assertEquals(1000, cache.stats().entries);
+        assertEquals(0, cache.stats().evictions);
+    }
+
+    @Test
+    public void weakTierReturnsEvictedTablesStillInUse()
+    {
+        DropMemoryCache cache = new DropMemoryCache(CachePolicy.LRU, 1, NO_BYTE_LIMIT, true);
+        NpcDropData onScreen = table("a");
+        cache.put("a", onScreen);
+        cache.put("b", table("b"));
+
+        assertSame(onScreen, cache.get("a"));
+        // and it is back in the bounded tier
+        assertEquals(1, cache.stats().entries);
+        assertEquals(1, cache.stats().hits);
+    }
+
+    @Test
+    public void countsHitsMissesAndEvictions()
+    {
+        DropMemoryCache cache = new DropMemoryCache(CachePolicy.LRU, 2, NO_BYTE_LIMIT, false);
+        cache.put("a", table("a"));
+        cache.put("b", table("b"));
+        cache.get("a");
+        cache.get("a");
+        cache.get("missing");
+        cache.put("c", table("c"));
+        cache.get("b");
+        cache.remove("c");
+
+        DropMemoryCache.Stats stats = cache.stats();
+        assertEquals(2, stats.hits);
+        assertEquals(2, stats.misses);
+        // removing is not evicting
+        assertEquals(1, stats.evictions);
+        assertEquals(1, stats.entries);
+        assertEquals(DropMemoryCache.estimateBytes(table("a")), stats.bytes);
+
+        cache.clear();
+        assertEquals(0, cache.stats().entries);
+        assertEquals(0, cache.stats().bytes);
+    }
+
+    /** Put a table, read it three times while it sits in the window, then push it into admission. */
+    private static NpcDropData admit(DropMemoryCache cache, String key)
+    {
+        cache.put(key, table(key));
+        for (int i = 0; i < 3; i++)
+        {
+            cache.get(key);
+        }
+        cache.put(key + "-next", table(key + "-next"));
+        return cache.get(key);
+    }
+
+    /** A one-item table; tables with equally long keys weigh the same. */
+    private static NpcDropData table(String name)
+    {
+        DropTableSection section = new DropTableSection("Drops",
+                Collections.singletonList(new DropItem(526, "Bones", "Always")));
+        return new NpcDropData(1, name, 2, Collections.singletonList(section));
+    }
+}
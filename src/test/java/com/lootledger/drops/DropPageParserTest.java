@@ -0,0 +1,122 @@
+package com.lootledger.drops;
+
+import org.jsoup.Jsoup;
+import org.junit.Test;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DropPageParserTest
+{
+    @Test
+    public void parsesSavedNpcPage() throws Exception
+    {
+        DropPageParser.Page page;
+        try (Reader in = new InputStreamReader(
+                DropPageParserTest.class.getResourceAsStream("/com/lootledger/fixtures/greater-demon.html"),
+                StandardCharsets.UTF_8))
+        {
+            page = DropPageParser.parse(in);
+        }
+
+        assertEquals("Greater demon", page.title);
+        assertEquals("https://oldschool.runescape.wiki/w/Greater_demon", page.canonicalHref);
+        assertEquals(92, page.combatLevel);
+
+        List<String> headers = new ArrayList<>();
+        int items = 0;
+        for (DropTableSection section : page.sections)
+        {
+            headers.add(section.getHeader());
+            items += section.getItems().size();
+        }
+        // the last table sits in a tabber without a heading of its own
+        assertEquals(Arrays.asList("100%", "Weapons and armour", "Runes and arrows", "Coins", "Other",
+                "Rare and Gem drop table", "Drops"), headers);
+        assertEquals(43, items);
+
+        DropItem first = page.sections.get(0).getItems().get(0);
+        assertEquals("Energy disk Level 4", first.getName());
+        assertEquals("12.5%", first.getRarity());
+    }
+
+    @Test
+    public void readsEveryFixtureLikeTheDomParser() throws Exception
+    {
+        // the synthetic page and any wiki pages saved with updateWikiFixtures
+        Path dir = Paths.get(DropPageParserTest.class.getResource("/com/lootledger/fixtures").toURI());
+        List<Path> pages;
+        try (Stream<Path> files = Files.list(dir))
+        {
+            pages = files.filter(f -> f.toString().endsWith(".html")).sorted().collect(Collectors.toList());
+        }
+        assertFalse(pages.isEmpty());
+
+        for (Path file : pages)
+        {
+            String html = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            DropPageParser.Page expected = DomDropPageParser.parse(Jsoup.parse(html));
+            DropPageParser.Page actual = DropPageParser.parse(new StringReader(html));
+
+            String name = file.getFileName().toString();
+            assertEquals(name, expected.title, actual.title);
+            assertEquals(name, expected.canonicalHref, actual.canonicalHref);
+            assertEquals(name, expected.combatLevel, actual.combatLevel);
+            assertEquals(name, describe(expected.sections), describe(actual.sections));
+        }
+    }
+
+    @Test
+    public void skipsTablesWithoutRarityAndCommentedOutMarkup() throws Exception
+    {
+        String html = "<html><body>"
+                + "<!-- <table class=\"item-drops\"><tr><td>Fake</td></tr></table> -->"
+                + "<h2>Drops</h2>"
+                + "<table class=\"item-drops\"><tbody><tr><th>Item</th><th>Quantity</th></tr>"
+                + "<tr><td>Bones</td><td>1</td></tr></tbody></table>"
+                + "<div class=\"mw-heading\"><h3>Herbs</h3></div>"
+                + "<table class=\"item-drops\"><tbody><tr><th>Item</th><th>Rarity</th></tr>"
+                + "<tr><td>Grimy guam leaf</td><td>1/64</td></tr>"
+                + "<tr><td>Nothing</td><td>1/2</td></tr></tbody></table>"
+                + "</body></html>";
+
+        DropPageParser.Page page = DropPageParser.parse(new StringReader(html));
+
+        assertEquals(1, page.sections.size());
+        DropTableSection herbs = page.sections.get(0);
+        assertEquals("Herbs", herbs.getHeader());
+        assertEquals(1, herbs.getItems().size());
+        assertEquals("Grimy guam leaf", herbs.getItems().get(0).getName());
+        assertEquals("1/64", herbs.getItems().get(0).getRarity());
+        assertTrue(page.title == null && page.canonicalHref == null);
+    }
+
+    /** One line per section and item, so a mismatch shows where the parsers part ways. */
+    private static List<String> describe(List<DropTableSection> sections)
+    {
+        List<String> lines = new ArrayList<>();
+        for (DropTableSection section : sections)
+        {
+            lines.add("== " + section.getHeader());
+            for (DropItem item : section.getItems())
+            {
+                lines.add(item.getItemId() + " " + item.getName() + " | " + item.getRarity());
+            }
+        }
+        return lines;
+    }
+}
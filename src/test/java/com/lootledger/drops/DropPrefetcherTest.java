@@ -0,0 +1,127 @@
+package com.lootledger.drops;
+
+import com.lootledger.LootLedgerConfig;
+import net.runelite.api.Client;
+import net.runelite.api.NPC;
+import net.runelite.api.Player;
+import net.runelite.api.coords.WorldPoint;
+import net.runelite.api.events.GameTick;
+import net.runelite.api.events.NpcDespawned;
+import net.runelite.api.events.NpcSpawned;
+import okhttp3.OkHttpClient;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+
+public class DropPrefetcherTest
+{
+    private final Player player = fake(Player.class, Map.of("getWorldLocation", new WorldPoint(0, 0, 0)));
+    private final Client client = fake(Client.class, Map.of("getLocalPlayer", player));
+    private final Set<String> cached = new HashSet<>();
+    private final List<String> checked = new ArrayList<>();
+    // stands in for the store: cached names need no load, the others load right away
+    private final DropCache dropCache = new DropCache(null, null, null, null, null, null)
+    {
+        @Override
+        public CompletableFuture<CompletableFuture<NpcDropData>> prefetch(int npcId, String name, int level)
+        {
+            checked.add(name);
+            return CompletableFuture.completedFuture(
+                    cached.contains(name) ? null : CompletableFuture.completedFuture(null));
+        }
+    };
+    private final DropFetcher dropFetcher = new DropFetcher(new WikiRequestScheduler(new OkHttpClient()), null, null, null);
+
+    @Test
+    public void onlyLoadsCountAgainstTheBudget()
+    {
+        DropPrefetcher prefetcher = prefetcher(2);
+        cached.add("Cow");
+        spawn(prefetcher, npc(1, "Cow", 1));
+        spawn(prefetcher, npc(2, "Goblin", 2));
+        spawn(prefetcher, npc(3, "Guard", 3));
+        spawn(prefetcher, npc(4, "Imp", 4));
+
+        tick(prefetcher, 5);
+
+        // the cow was cached and gave its budget back; the imp waits for the next minute
+        assertEquals(Arrays.asList("Cow", "Goblin", "Guard"), checked);
+    }
+
+    @Test
+    public void triesEachNpcTypeOnce()
+    {
+        DropPrefetcher prefetcher = prefetcher(10);
+        NPC goblin = npc(2, "Goblin", 1);
+        spawn(prefetcher, goblin);
+        spawn(prefetcher, npc(2, "Goblin", 2));
+        tick(prefetcher, 1);
+
+        prefetcher.onNpcDespawned(new NpcDespawned(goblin));
+        spawn(prefetcher, goblin);
+        spawn(prefetcher, npc(2, "Goblin", 3));
+        tick(prefetcher, 3);
+
+        assertEquals(Arrays.asList("Goblin"), checked);
+    }
+
+    private DropPrefetcher prefetcher(int perMinute)
+    {
+        LootLedgerConfig config = fake(LootLedgerConfig.class,
+                Map.of("prefetchNearbyDrops", true, "prefetchPerMinute", perMinute));
+        return new DropPrefetcher(client, config, dropCache, dropFetcher);
+    }
+
+    private static NPC npc(int id, String name, int distance)
+    {
+        Map<String, Object> answers = new HashMap<>();
+        answers.put("getId", id);
+        answers.put("getName", name);
+        answers.put("getCombatLevel", 10);
+        answers.put("getWorldLocation", new WorldPoint(distance, 0, 0));
+        return fake(NPC.class, answers);
+    }
+
+    private static void spawn(DropPrefetcher prefetcher, NPC npc)
+    {
+        prefetcher.onNpcSpawned(new NpcSpawned(npc));
+    }
+
+    private static void tick(DropPrefetcher prefetcher, int ticks)
+    {
+        for (int i = 0; i < ticks; i++)
+        {
+            prefetcher.onGameTick(new GameTick());
+        }
+    }
+
+    /** An implementation of {@code type} answering each method by name from {@code answers}, null otherwise. */
+    @SuppressWarnings("unchecked")
+    private static <T> T fake(Class<T> type, Map<String, Object> answers)
+    {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) ->
+        {
+            switch (method.getName())
+            {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return type.getSimpleName() + answers;
+                default:
+                    return answers.get(method.getName());
+            }
+        });
+    }
+}
@@ -0,0 +1,332 @@
+package com.lootledger.drops;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Stands in for the wiki behind an {@link OkHttpClient}: answers
+ * {@code Special:Lookup} page loads and the api.php queries
+ * {@link DropFetcher} sends, and records every request. Every page has the
+ * same drop table, as wikitext and rendered, unless given other wikitext.
+ * Failures can be scripted for the next requests.
+ */
+class FakeWiki implements Interceptor
+{
+    private static final MediaType JSON = MediaType.parse("application/json");
+    private static final MediaType HTML = MediaType.parse("text/html");
+
+    // page title -> page id; every page has one drop table
+    private final Map<String, Integer> pages = new LinkedHashMap<>();
+    private final Map<String, String> redirects = new HashMap<>();
+    // page title -> wikitext, for pages that do not use the default drop table
+    private final Map<String, String> wikitext = new HashMap<>();
+    private final List<HttpUrl> requests = new ArrayList<>();
+    // answers for the next requests, before the wiki itself answers again
+    private final Deque<Failure> failures = new ArrayDeque<>();
+    // requests wait for this before they are answered, if set
+    private volatile CountDownLatch gate;
+
+    private static final class Failure
+    {
+        // 0 drops the connection
+        final int code;
+        final String retryAfter;
+
+        Failure(int code, String retryAfter)
+        {
+            this.code = code;
+            this.retryAfter = retryAfter;
+        }
+    }
+
+    FakeWiki page(String title, int pageId)
+    {
+        pages.put(title, pageId);
+        return this;
+    }
+
+    /** Serve this wikitext for the page instead of the default one-line drop table. */
+    FakeWiki wikitext(String title, String text)
+    {
+        wikitext.put(title, text);
+        return this;
+    }
+
+    FakeWiki redirect(String from, String to)
+    {
+        redirects.put(from, to);
+        return this;
+    }
+
+    /** Answer the next unscripted request with {@code code}, and a Retry-After header unless it is null. */
+    synchronized FakeWiki fail(int code, String retryAfter)
+    {
+        failures.add(new Failure(code, retryAfter));
+        return this;
+    }
+
+    /** Fail the next unscripted request with an IOException, as a dropped connection does. */
+    synchronized FakeWiki disconnect()
+    {
+        return fail(0, null);
+    }
+
+    /** Hold every request until {@code gate} opens. */
+    FakeWiki holdUntil(CountDownLatch gate)
+    {
+        this.gate = gate;
+        return this;
+    }
+
+    OkHttpClient client()
+    {
+        return new OkHttpClient.Builder().addInterceptor(this).build();
+    }
+
+    synchronized List<HttpUrl> requests()
+    {
+        return new ArrayList<>(requests);
+    }
+
+    /** @return requests whose {@code name} query parameter equals {@code value} */
+    synchronized List<HttpUrl> requests(String name, String value)
+    {
+        List<HttpUrl> out = new ArrayList<>();
+        for (HttpUrl url : requests)
+        {
+            if (value.equals(url.queryParameter(name)))
+            {
+                out.add(url);
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException
+    {
+        Request request = chain.request();
+        HttpUrl url = request.url();
+        CountDownLatch g = gate;
+        if (g != null)
+        {
+            try
+            {
+                g.await();
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while held", ex);
+            }
+        }
+
+        Failure failure;
+        synchronized (this)
+        {
+            requests.add(url);
+            failure = failures.poll();
+        }
+        if (failure != null)
+        {
+            if (failure.code == 0)
+            {
+                throw new IOException("Connection reset");
+            }
+            Response res = respond(request, failure.code, HTML, "<html></html>");
+            return failure.retryAfter == null ? res : res.newBuilder().header("Retry-After", failure.retryAfter).build();
+        }
+
+        if (url.encodedPath().endsWith("/Special:Lookup"))
+        {
+            // the lookup follows redirects
+            String title = resolve(url.queryParameter("name"), new JsonArray(), new JsonArray());
+            return pages.containsKey(title)
+                    ? respond(request, 200, HTML, pageHtml(title))
+                    : respond(request, 404, HTML, "<html></html>");
+        }
+        if ("parse".equals(url.queryParameter("action")))
+        {
+            return respond(request, 200, JSON, parse(Integer.parseInt(url.queryParameter("pageid"))));
+        }
+        if ("query".equals(url.queryParameter("action")))
+        {
+            return respond(request, 200, JSON, query(url));
+        }
+        return respond(request, 400, JSON, "{}");
+    }
+
+    private String query(HttpUrl url)
+    {
+        JsonArray normalized = new JsonArray();
+        JsonArray redirected = new JsonArray();
+        JsonObject result = new JsonObject();
+        int missing = -1;
+
+        List<String> titles = new ArrayList<>();
+        if (url.queryParameter("titles") != null)
+        {
+            for (String title : url.queryParameter("titles").split("\\|"))
+            {
+                titles.add(resolve(title, normalized, "1".equals(url.queryParameter("redirects")) ? redirected : null));
+            }
+        }
+        else
+        {
+            int pageId = Integer.parseInt(url.queryParameter("pageids"));
+            pages.forEach((title, id) ->
+            {
+                if (id == pageId)
+                {
+                    titles.add(title);
+                }
+            });
+        }
+
+        for (String title : titles)
+        {
+            JsonObject page = new JsonObject();
+            page.addProperty("title", title);
+            Integer id = pages.get(title);
+            if (id != null)
+            {
+                page.addProperty("pageid", id);
+                page.addProperty("lastrevid", id * 10L);
+                if (url.queryParameter("prop").contains("revisions"))
+                {
+                    page.add("revisions", revisions(title));
+                }
+                result.add(String.valueOf(id), page);
+            }
+            else
+            {
+                page.addProperty("missing", "");
+                result.add(String.valueOf(missing--), page);
+            }
+        }
+
+        JsonObject query = new JsonObject();
+        if (normalized.size() > 0)
+        {
+            query.add("normalized", normalized);
+        }
+        if (redirected.size() > 0)
+        {
+            query.add("redirects", redirected);
+        }
+        query.add("pages", result);
+        JsonObject root = new JsonObject();
+        root.add("query", query);
+        return root.toString();
+    }
+
+    /** MediaWiki style: underscores become spaces and the first letter is capitalized. */
+    private String resolve(String title, JsonArray normalized, JsonArray redirected)
+    {
+        String normal = title.replace('_', ' ');
+        normal = normal.isEmpty() ? normal : Character.toUpperCase(normal.charAt(0)) + normal.substring(1);
+        if (!normal.equals(title))
+        {
+            normalized.add(rename(title, normal));
+        }
+        String target = redirects.get(normal);
+        if (target == null || redirected == null)
+        {
+            return normal;
+        }
+        redirected.add(rename(normal, target));
+        return target;
+    }
+
+    private static JsonObject rename(String from, String to)
+    {
+        JsonObject o = new JsonObject();
+        o.addProperty("from", from);
+        o.addProperty("to", to);
+        return o;
+    }
+
+    private JsonArray revisions(String title)
+    {
+        JsonObject main = new JsonObject();
+        main.addProperty("contentmodel", "wikitext");
+        main.addProperty("*", wikitext.getOrDefault(title, dropsWikitext()));
+        JsonObject slots = new JsonObject();
+        slots.add("main", main);
+        JsonObject revision = new JsonObject();
+        revision.add("slots", slots);
+        JsonArray revisions = new JsonArray();
+        revisions.add(revision);
+        return revisions;
+    }
+
+    private String parse(int pageId)
+    {
+        JsonObject parse = new JsonObject();
+        pages.forEach((title, id) ->
+        {
+            if (id == pageId)
+            {
+                parse.addProperty("title", title);
+                parse.addProperty("pageid", id);
+                parse.addProperty("revid", id * 10L);
+                parse.addProperty("text", dropsHtml());
+            }
+        });
+        JsonObject root = new JsonObject();
+        root.add("parse", parse);
+        return root.toString();
+    }
+
+    private String pageHtml(String title)
+    {
+        return "<html><head><link rel=\"canonical\" href=\"https://oldschool.runescape.wiki/w/"
+                + title.replace(' ', '_') + "\"/></head><body><h1 id=\"firstHeading\">" + title + "</h1>"
+                + dropsHtml() + "</body></html>";
+    }
+
+    private static String dropsWikitext()
+    {
+        return "{{Infobox Monster\n|name = Monster\n|combat = 2\n}}\n==Drops==\n===100%===\n{{DropsTableHead}}\n"
+                + "{{DropsLine|name=Bones|quantity=1|rarity=Always}}\n{{DropsTableBottom}}\n";
+    }
+
+    private static String dropsHtml()
+    {
+        return "<div class=\"mw-parser-output\"><h2 id=\"Drops\">Drops</h2><h3 id=\"100%\">100%</h3>"
+                + "<table class=\"wikitable item-drops\"><tbody>"
+                + "<tr><th></th><th>Item</th><th>Quantity</th><th>Rarity</th><th>Price</th><th>High Alch</th></tr>"
+                + "<tr><td></td><td class=\"item-col\"><a href=\"/w/Bones\" title=\"Bones\">Bones</a></td>"
+                + "<td>1</td><td class=\"rarity\"><span data-drop-fraction=\"Always\">Always</span></td>"
+                + "<td>100</td><td>0</td></tr></tbody></table></div>";
+    }
+
+    private static Response respond(Request request, int code, MediaType type, String body)
+    {
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message(code == 200 ? "OK" : "Error")
+                .body(ResponseBody.create(type, body))
+                .build();
+    }
+}
@@ -0,0 +1,70 @@
+package com.lootledger.drops;
+
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NpcCatalogTest
+{
+    @Test
+    public void loadsBundledCatalog() throws Exception
+    {
+        NpcCatalog catalog = new NpcCatalog(new Gson());
+
+        catalog.loadAsync().get(10, TimeUnit.SECONDS);
+
+        assertTrue(catalog.isLoaded());
+    }
+
+    @Test
+    public void searchesOnlyNpcsWithDrops() throws Exception
+    {
+        NpcCatalog catalog = fixture();
+
+        assertTrue(catalog.isComplete());
+        // prefix matches first, then the rest
+        assertEquals(Arrays.asList("Goblin", "Hobgoblin"), catalog.searchNames("gob", 10));
+        assertEquals(Arrays.asList(2, 5, 13, 28), levels(catalog.search("gob", 10)));
+        assertTrue(catalog.search("hans", 10).isEmpty());
+        assertFalse(catalog.byName("Hans").get(0).isDrops());
+    }
+
+    @Test
+    public void tellsVersionsApartByIdAndLevel() throws Exception
+    {
+        NpcCatalog catalog = fixture();
+
+        assertEquals(Arrays.asList(2, 5, 13), levels(catalog.byName("goblin")));
+        assertEquals(Collections.singletonList(5), levels(catalog.byId(655)));
+        assertEquals(655, catalog.byId(655).get(0).getId());
+        // an ID shared by two versions is only told apart by level
+        assertEquals(Arrays.asList(2, 5), levels(catalog.byId(3029)));
+        assertTrue(catalog.byId(1).isEmpty());
+    }
+
+    private static NpcCatalog fixture() throws Exception
+    {
+        NpcCatalog catalog = new NpcCatalog(new Gson(), "/com/lootledger/drops/npcs-fixture.json");
+        catalog.loadAsync().get(10, TimeUnit.SECONDS);
+        return catalog;
+    }
+
+    private static List<Integer> levels(List<NpcCatalog.Entry> entries)
+    {
+        List<Integer> levels = new ArrayList<>();
+        for (NpcCatalog.Entry e : entries)
+        {
+            levels.add(e.getLevel());
+        }
+        return levels;
+    }
+}
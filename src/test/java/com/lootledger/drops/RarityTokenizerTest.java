@@ -0,0 +1,214 @@
+package com.lootledger.drops;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Checks {@link RarityTokenizer} against the regex pipeline it replaced,
+ * kept here as {@link RegexRarity}, quirks included.
+ */
+public class RarityTokenizerTest
+{
+    @Test
+    public void matchesRegexPipelineOnFixture() throws Exception
+    {
+        List<String> rarities = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                RarityTokenizerTest.class.getResourceAsStream("/com/lootledger/fixtures/rarities.txt"),
+                StandardCharsets.UTF_8)))
+        {
+            for (String line; (line = in.readLine()) != null; )
+            {
+                rarities.add(line);
+            }
+        }
+        assertFalse(rarities.isEmpty());
+
+        for (String rarity : rarities)
+        {
+            assertSame(rarity);
+        }
+    }
+
+    @Test
+    public void inIsOnlyReplacedInLowercase()
+    {
+        assertEquals("1/128", RarityTokenizer.normalize("1 in 128"));
+        assertEquals("1 IN 128", RarityTokenizer.normalize("1 IN 128"));
+        assertSame("1 in 128");
+        assertSame("1 IN 128");
+        assertSame("1 In 5,000");
+        assertSame("Found in caves");
+        assertSame("within 1/64");
+        assertSame("in");
+        assertSame("1 in 2 in 3");
+        assertSame("1in128");
+        assertSame("1 in_128");
+    }
+
+    @Test
+    public void parentheticalBeforeTrailingLineTerminator()
+    {
+        assertEquals("1/32", RarityTokenizer.normalize("1/32 (without ring)\n"));
+        assertSame("1/32 (without ring)\n");
+        assertSame("1/32 (without ring)\r\n");
+        assertSame("1/32 (without ring)\r");
+        assertSame("1/32 (without ring)\u2028");
+        assertSame("1/32 (without ring)\u0085");
+        assertSame("1/32 (a)\n(b)");
+        assertSame("1/32 (without ring) ");
+        assertSame("1/32 (without ring)\n\n");
+        assertSame("1/32 (a) (b)");
+        assertSame("(on task)");
+        assertSame("1/32 (unclosed");
+    }
+
+    @Test
+    public void emptySegments()
+    {
+        assertSame("");
+        assertSame(";");
+        assertSame(";;");
+        assertSame("1/64;;1/32");
+        assertSame(";1/64");
+        assertSame("1/64;");
+        assertSame("1/64; ;");
+        assertSame(" ; 1/64 ; ");
+        assertSame("1/64, , 1/32");
+        assertSame("1/64,1/32");
+    }
+
+    @Test
+    public void numbersAndRanges()
+    {
+        for (String rarity : Arrays.asList("0%", "0.5%", "1/0", "0/128", "0 x 1/128", "2 X 1/128", "3×1/128",
+                "1/128 - 1/64 - 1/32", "-1/64", "1/64-", "1.5/128", "1/128.", "12.34.5/6", "~ 1 / 3",
+                "1/3 [1] [2]", "1/7", "1/2,000–1/1,000", "Rare—1/64"))
+        {
+            assertSame(rarity);
+        }
+    }
+
+    private static void assertSame(String rarity)
+    {
+        assertEquals(rarity, RegexRarity.normalize(rarity), RarityTokenizer.normalize(rarity));
+    }
+
+    /** The regex pipeline DropItem used before RarityTokenizer, unchanged. */
+    private static final class RegexRarity
+    {
+        private static final Pattern PCT = Pattern.compile("^(\\d+(?:\\.\\d+)?)%$");
+        private static final Pattern MULT = Pattern.compile("^(\\d+(?:\\.\\d+)?)\\s*[xX]\\s*(\\d+(?:\\.\\d+)?)\\s*/\\s*(\\d+(?:\\.\\d+)?)$");
+        private static final Pattern FRAC = Pattern.compile("^(\\d+(?:\\.\\d+)?)\\s*/\\s*(\\d+(?:\\.\\d+)?)$");
+        private static final Pattern PAREN = Pattern.compile("\\s*\\([^)]*\\)$", Pattern.UNICODE_CASE);
+        // only the pattern string is used below, so the flag never applied
+        private static final Pattern IN_SYNT = Pattern.compile("\\bin\\b", Pattern.CASE_INSENSITIVE);
+        private static final Pattern BRACKETS = Pattern.compile("\\[[^\\]]*\\]");
+
+        static String normalize(String rarity)
+        {
+            return rarity == null ? "" : Arrays.stream(rarity.split("\\s*;\\s*|,\\s+"))
+                    .map(RegexRarity::normalizeSegment)
+                    .collect(Collectors.joining("; "));
+        }
+
+        private static String normalizeSegment(String raw)
+        {
+            String cleaned = raw == null ? "" : raw;
+            cleaned = BRACKETS.matcher(cleaned).replaceAll("");
+            cleaned = cleaned
+                    .replace("×", "x")
+                    .replace(",", "")
+                    .replace("≈", "")
+                    .replace("~", "")
+                    .replaceAll(PAREN.pattern(), "")
+                    .replaceAll(IN_SYNT.pattern(), "/")
+                    .trim();
+
+            String[] range = cleaned.split("\\s*[–—-]\\s*");
+            if (range.length > 1)
+            {
+                return Arrays.stream(range)
+                        .map(RegexRarity::simplifySingle)
+                        .collect(Collectors.joining("–"));
+            }
+
+            return simplifySingle(cleaned);
+        }
+
+        private static String simplifySingle(String s)
+        {
+            if (s == null || s.isEmpty())
+            {
+                return "";
+            }
+
+            Matcher m;
+
+            m = PCT.matcher(s);
+            if (m.matches())
+            {
+                double pct = safeDouble(m.group(1));
+                if (pct == 0) return "0";
+                return formatOneOver(100.0 / pct);
+            }
+
+            m = MULT.matcher(s);
+            if (m.matches())
+            {
+                double factor = safeDouble(m.group(1));
+                double a = safeDouble(m.group(2));
+                double b = safeDouble(m.group(3));
+                if (factor != 0 && a != 0)
+                {
+                    return formatOneOver(b / (a * factor));
+                }
+            }
+
+            m = FRAC.matcher(s);
+            if (m.matches())
+            {
+                double a = safeDouble(m.group(1));
+                double b = safeDouble(m.group(2));
+                if (a != 0)
+                {
+                    return formatOneOver(b / a);
+                }
+            }
+
+            return s;
+        }
+
+        private static double safeDouble(String s)
+        {
+            try { return Double.parseDouble(s); }
+            catch (Exception e) { return Double.NaN; }
+        }
+
+        private static String formatOneOver(double val)
+        {
+            if (Double.isNaN(val) || Double.isInfinite(val))
+            {
+                return "";
+            }
+            if (Math.abs(val - Math.round(val)) < 0.01)
+            {
+                return "1/" + Math.round(val);
+            }
+            return String.format(Locale.ROOT, "1/%.2f", val);
+        }
+    }
+}
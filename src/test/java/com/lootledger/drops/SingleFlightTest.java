@@ -0,0 +1,70 @@
+package com.lootledger.drops;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SingleFlightTest
+{
+    private final SingleFlight<String, String> flights = new SingleFlight<>();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void sharesALoadWhileItRuns()
+    {
+        CompletableFuture<String> source = new CompletableFuture<>();
+
+        CompletableFuture<String> first = flights.run("a", () -> load(source));
+        CompletableFuture<String> second = flights.run("a", () -> load(new CompletableFuture<>()));
+        flights.run("b", () -> load(new CompletableFuture<>()));
+
+        assertSame(first, second);
+        assertEquals(2, loads.get());
+        assertTrue(flights.isInFlight("a"));
+
+        source.complete("table");
+        assertEquals("table", second.join());
+    }
+
+    @Test
+    public void forgetsACompletedLoad()
+    {
+        CompletableFuture<String> first = flights.run("a", () -> load(CompletableFuture.completedFuture("old")));
+
+        assertFalse(flights.isInFlight("a"));
+        CompletableFuture<String> second = flights.run("a", () -> load(CompletableFuture.completedFuture("new")));
+
+        assertNotSame(first, second);
+        assertEquals("new", second.join());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void forgetsAFailedLoad()
+    {
+        CompletableFuture<String> failed = flights.run("a", () -> load(CompletableFuture.failedFuture(new Exception())));
+        CompletableFuture<String> thrown = flights.run("b", () ->
+        {
+            throw new IllegalStateException();
+        });
+
+        assertTrue(failed.isCompletedExceptionally());
+        assertTrue(thrown.isCompletedExceptionally());
+        assertFalse(flights.isInFlight("a"));
+        assertFalse(flights.isInFlight("b"));
+        assertEquals("retry", flights.run("a", () -> load(CompletableFuture.completedFuture("retry"))).join());
+    }
+
+    private CompletableFuture<String> load(CompletableFuture<String> result)
+    {
+        loads.incrementAndGet();
+        return result;
+    }
+}
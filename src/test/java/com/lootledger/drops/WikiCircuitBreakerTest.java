@@ -0,0 +1,124 @@
+package com.lootledger.drops;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WikiCircuitBreakerTest
+{
+    private long now;
+    private final WikiCircuitBreaker breaker = new WikiCircuitBreaker(() -> now);
+
+    @Test
+    public void opensAfterEnoughFailuresInARow() throws Exception
+    {
+        for (int i = 1; i < WikiCircuitBreaker.FAILURE_THRESHOLD; i++)
+        {
+            breaker.acquire();
+            breaker.onFailure();
+        }
+        // a success in between starts the count over
+        breaker.acquire();
+        breaker.onSuccess();
+        for (int i = 1; i < WikiCircuitBreaker.FAILURE_THRESHOLD; i++)
+        {
+            breaker.acquire();
+            breaker.onFailure();
+        }
+        assertTrue(breaker.allowsRequests());
+
+        breaker.acquire();
+        breaker.onFailure();
+
+        assertFalse(breaker.allowsRequests());
+        assertRejected();
+    }
+
+    @Test
+    public void letsOneProbeThroughAfterTheCooldown() throws Exception
+    {
+        open();
+        now += WikiCircuitBreaker.MIN_OPEN_NANOS - 1;
+        assertRejected();
+
+        now++;
+        assertTrue(breaker.allowsRequests());
+        breaker.acquire();
+        assertFalse(breaker.allowsRequests());
+        assertRejected();
+
+        breaker.onSuccess();
+        breaker.acquire();
+        breaker.acquire();
+    }
+
+    @Test
+    public void skippedProbeLetsTheNextOneThrough() throws Exception
+    {
+        open();
+        now += WikiCircuitBreaker.MIN_OPEN_NANOS;
+        breaker.acquire();
+
+        breaker.onSkipped();
+
+        breaker.acquire();
+    }
+
+    @Test
+    public void doublesTheCooldownAfterAFailedProbe() throws Exception
+    {
+        open();
+        now += WikiCircuitBreaker.MIN_OPEN_NANOS;
+        breaker.acquire();
+        breaker.onFailure();
+
+        now += WikiCircuitBreaker.MIN_OPEN_NANOS;
+        assertRejected();
+        now += WikiCircuitBreaker.MIN_OPEN_NANOS;
+        breaker.acquire();
+        breaker.onFailure();
+
+        now += 3 * WikiCircuitBreaker.MIN_OPEN_NANOS;
+        assertRejected();
+        now += WikiCircuitBreaker.MIN_OPEN_NANOS;
+        breaker.acquire();
+    }
+
+    @Test
+    public void holdsRequestsForTheRequestedPause() throws Exception
+    {
+        breaker.acquire();
+        breaker.openFor(TimeUnit.MINUTES.toMillis(2));
+
+        now += TimeUnit.MINUTES.toNanos(2) - 1;
+        assertRejected();
+        now++;
+        breaker.acquire();
+    }
+
+    private void open() throws Exception
+    {
+        for (int i = 0; i < WikiCircuitBreaker.FAILURE_THRESHOLD; i++)
+        {
+            breaker.acquire();
+            breaker.onFailure();
+        }
+    }
+
+    private void assertRejected()
+    {
+        try
+        {
+            breaker.acquire();
+            fail("breaker let a request through");
+        }
+        catch (WikiCircuitBreaker.OpenException ex)
+        {
+            // expected
+        }
+    }
+}
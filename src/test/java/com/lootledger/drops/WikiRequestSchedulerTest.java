@@ -0,0 +1,152 @@
+package com.lootledger.drops;
+
+import com.lootledger.drops.WikiRequestScheduler.Priority;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WikiRequestSchedulerTest
+{
+    // requests to /hold... wait until released, keeping a worker busy
+    private final Semaphore released = new Semaphore(0);
+    private final CountDownLatch holding = new CountDownLatch(4);
+    private final List<String> sent = new ArrayList<>();
+    private final WikiRequestScheduler scheduler = new WikiRequestScheduler(new OkHttpClient.Builder()
+            .addInterceptor(chain ->
+            {
+                String path = chain.request().url().encodedPath();
+                if (path.startsWith("/hold"))
+                {
+                    holding.countDown();
+                    released.acquireUninterruptibly();
+                }
+                else
+                {
+                    synchronized (sent)
+                    {
+                        sent.add(path);
+                    }
+                }
+                return new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(ResponseBody.create(MediaType.parse("text/plain"), path))
+                        .build();
+            })
+            .build());
+
+    @After
+    public void tearDown()
+    {
+        released.release(100);
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void sendsMostUrgentFirst() throws Exception
+    {
+        scheduler.startUp();
+        holdWorkers();
+        CompletableFuture<String> background = submit("/background", Priority.BACKGROUND, () -> false);
+        CompletableFuture<String> search1 = submit("/search1", Priority.SEARCH, () -> false);
+        CompletableFuture<String> interactive = submit("/interactive", Priority.INTERACTIVE, () -> false);
+        CompletableFuture<String> search2 = submit("/search2", Priority.SEARCH, () -> false);
+
+        // one free worker sends the rest one by one
+        released.release();
+        CompletableFuture.allOf(background, search1, interactive, search2).get(5, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList("/interactive", "/search1", "/search2", "/background"), sent);
+    }
+
+    @Test
+    public void skipsRequestsCancelledWhileQueued() throws Exception
+    {
+        scheduler.startUp();
+        holdWorkers();
+        AtomicBoolean superseded = new AtomicBoolean();
+        CompletableFuture<String> stale = submit("/stale", Priority.SEARCH, superseded::get);
+        CompletableFuture<String> next = submit("/next", Priority.SEARCH, () -> false);
+
+        superseded.set(true);
+        released.release();
+
+        assertEquals("/next", next.get(5, TimeUnit.SECONDS));
+        assertTrue(stale.isCancelled());
+        assertEquals(Arrays.asList("/next"), sent);
+    }
+
+    @Test
+    public void cancelledRequestsGiveTheirTokenBack() throws Exception
+    {
+        scheduler.startUp();
+        // without refunds these would drain the burst and then wait on the refill for seconds
+        List<CompletableFuture<String>> cancelled = new ArrayList<>();
+        for (int i = 0; i < 30; i++)
+        {
+            cancelled.add(submit("/cancelled" + i, Priority.BACKGROUND, () -> true));
+        }
+        List<CompletableFuture<String>> wanted = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+        {
+            wanted.add(submit("/wanted" + i, Priority.BACKGROUND, () -> false));
+        }
+
+        CompletableFuture.allOf(wanted.toArray(new CompletableFuture<?>[0])).get(1, TimeUnit.SECONDS);
+
+        for (CompletableFuture<String> future : cancelled)
+        {
+            assertTrue(future.isCancelled());
+        }
+        assertEquals(5, sent.size());
+    }
+
+    @Test
+    public void cancelsRequestsOutsideStartUpAndShutdown() throws Exception
+    {
+        assertTrue(submit("/early", Priority.INTERACTIVE, () -> false).isCancelled());
+
+        scheduler.startUp();
+        assertEquals("/running", submit("/running", Priority.INTERACTIVE, () -> false).get(5, TimeUnit.SECONDS));
+
+        scheduler.shutdown();
+        assertTrue(submit("/late", Priority.INTERACTIVE, () -> false).isCancelled());
+        assertEquals(Arrays.asList("/running"), sent);
+    }
+
+    /** Occupies all four workers; each {@link #released} permit frees one. */
+    private void holdWorkers() throws InterruptedException
+    {
+        for (int i = 0; i < 4; i++)
+        {
+            submit("/hold" + i, Priority.INTERACTIVE, () -> false);
+        }
+        assertTrue(holding.await(5, TimeUnit.SECONDS));
+    }
+
+    private CompletableFuture<String> submit(String path, Priority priority, BooleanSupplier cancelled)
+    {
+        Request request = new Request.Builder().url("https://oldschool.runescape.wiki" + path).build();
+        return scheduler.submit(request, priority, cancelled, res -> res.body().string());
+    }
+}
@@ -0,0 +1,63 @@
+package com.lootledger.drops;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WikitextDropParserTest
+{
+    @Test
+    public void readsPlainDropTables()
+    {
+        String text = "{{Infobox Monster\n|version1 = Level 48\n|combat1 = 48\n|combat2 = 56\n}}\n"
+                + "'''Hill giants''' are...\n"
+                + "==Drops==\n"
+                + "===100%===\n"
+                + "{{DropsTableHead}}\n"
+                + "{{DropsLine|name=Big bones|quantity=1|rarity=Always}}\n"
+                + "{{DropsTableBottom}}\n"
+                + "<!-- {{DropsLine|name=Fake|rarity=Always}} -->\n"
+                + "===Herbs===\n"
+                + "{{DropsTableHead}}\n"
+                + "{{DropsLine|name=Grimy guam leaf|quantity=1|rarity=1/64|raritynotes=<ref>Notes</ref>}}\n"
+                + "{{DropsLine|name=Coins|quantity=1,000|rarity=1/1,024}}\n"
+                + "{{DropsLine|name=Nothing|rarity=1/2}}\n"
+                + "{{DropsTableBottom}}\n"
+                + "=====Trivia=====\n";
+
+        DropPageParser.Page page = WikitextDropParser.parse(text);
+
+        assertEquals(48, page.combatLevel);
+        assertEquals(2, page.sections.size());
+        assertEquals("100%", page.sections.get(0).getHeader());
+        assertEquals("Big bones", page.sections.get(0).getItems().get(0).getName());
+        DropTableSection herbs = page.sections.get(1);
+        assertEquals("Herbs", herbs.getHeader());
+        assertEquals(2, herbs.getItems().size());
+        assertEquals("1/64", herbs.getItems().get(0).getRarity());
+        assertEquals("1/1024", herbs.getItems().get(1).getRarity());
+    }
+
+    @Test
+    public void pageWithoutDropTablesHasNoSections()
+    {
+        DropPageParser.Page page = WikitextDropParser.parse("{{Infobox NPC|name=Hans}}\n'''Hans''' is a servant.");
+
+        assertTrue(page.sections.isEmpty());
+    }
+
+    @Test
+    public void leavesPagesThatNeedRenderingToTheRenderer()
+    {
+        String table = "==Drops==\n{{DropsTableHead}}\n{{DropsLine|name=Bones|rarity=Always}}\n{{DropsTableBottom}}\n";
+
+        assertNull(WikitextDropParser.parse(table + "{{RareDropTable|1/128}}"));
+        assertNull(WikitextDropParser.parse(table + "{{DropsLineClue|type=hard|rarity=1/128}}"));
+        assertNull(WikitextDropParser.parse("<tabber>\nLevel 1=\n" + table + "</tabber>"));
+        assertNull(WikitextDropParser.parse("==[[Drops]]==\n" + table));
+        assertNull(WikitextDropParser.parse(table.replace("Bones", "{{plink|Bones}}")));
+        assertNull(WikitextDropParser.parse(table.replace("rarity=Always", "rarity=Always|rolls=2")));
+    }
+}
@@ -0,0 +1,171 @@
+package com.lootledger.ui;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+
+public class NameRankerTest
+{
+    private static final int FUZZY = 4;
+
+    @Test
+    public void ranksExactThenPrefixThenWordThenSubstringThenFuzzy()
+    {
+        List<String> names = Arrays.asList("Zombie", "Hobgoblin", "Goblin champion", "Cave goblin", "Gobln",
+                "Goblin guard", "GOBLIN");
+
+        List<String> ranked = NameRanker.rank(names, Function.identity(), "goblin");
+
+        // shorter names first within a tier, then by edit distance
+        assertEquals(Arrays.asList("GOBLIN", "Goblin guard", "Goblin champion", "Cave goblin", "Hobgoblin",
+                "Gobln", "Zombie"), ranked);
+    }
+
+    @Test
+    public void prefersTheBestPlaceTheQueryMatches()
+    {
+        // "Xdemon demon" has the query inside a word and as a word of its own; the word counts
+        List<String> ranked = NameRanker.rank(Arrays.asList("Xdemons", "Xdemon demon"), Function.identity(), "demon");
+
+        assertEquals(Arrays.asList("Xdemon demon", "Xdemons"), ranked);
+    }
+
+    @Test
+    public void stopsCountingPastTheCutoff()
+    {
+        // the cutoff is the query length, so four edits for "abcd"
+        NameRanker ranker = new NameRanker("abcd");
+
+        assertEquals(4, fuzzyDistance(ranker, "wxyz"));
+        assertEquals(5, fuzzyDistance(ranker, "vwxyz"));
+        assertEquals(5, fuzzyDistance(ranker, "zzzzzzzzzzzz"));
+
+        // names past the cutoff keep their input order after the rest
+        List<String> ranked = ranker.rank(Arrays.asList("qqqqqqq", "abce", "zzzzzzz", "wxyz"), Function.identity());
+        assertEquals(Arrays.asList("abce", "wxyz", "qqqqqqq", "zzzzzzz"), ranked);
+    }
+
+    @Test
+    public void shortQueriesStillAllowThreeEdits()
+    {
+        NameRanker ranker = new NameRanker("ab");
+
+        assertEquals(3, fuzzyDistance(ranker, "xyz"));
+        assertEquals(4, fuzzyDistance(ranker, "wxyz"));
+    }
+
+    @Test
+    public void handlesQueriesLongerThanAWord()
+    {
+        String query = "lesser demon ".repeat(6).trim();
+        String name = query.replace('s', 'z') + " x";
+        NameRanker ranker = new NameRanker(query);
+
+        assertEquals(levenshtein(query, name.toLowerCase()), fuzzyDistance(ranker, name));
+        assertEquals(0, ranker.score(query.toUpperCase()));
+        assertEquals(Arrays.asList(query + " (level 2)", name),
+                ranker.rank(Arrays.asList(name, query + " (level 2)"), Function.identity()));
+    }
+
+    @Test
+    public void agreesWithPlainLevenshtein()
+    {
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++)
+        {
+            // lengths either side of 64 cover both the bit-parallel and the row path
+            String query = randomName(random, 1 + random.nextInt(90)).trim().toLowerCase();
+            if (query.isEmpty())
+            {
+                continue;
+            }
+            String name = random.nextBoolean()
+                    ? mutate(random, query, random.nextInt(Math.max(1, query.length())))
+                    : randomName(random, random.nextInt(100));
+            NameRanker ranker = new NameRanker(query);
+            int score = ranker.score(name);
+            if (score >> 16 != FUZZY)
+            {
+                continue;
+            }
+
+            int cutoff = Math.max(3, query.length());
+            int expected = Math.min(levenshtein(query, name.toLowerCase()), cutoff + 1);
+            assertEquals(query + " / " + name, expected, score & 0xFFFF);
+        }
+    }
+
+    private static int fuzzyDistance(NameRanker ranker, String name)
+    {
+        int score = ranker.score(name);
+        assertEquals(name, FUZZY, score >> 16);
+        return score & 0xFFFF;
+    }
+
+    private static int levenshtein(String a, String b)
+    {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++)
+        {
+            for (int j = 0; j <= b.length(); j++)
+            {
+                if (i == 0 || j == 0)
+                {
+                    d[i][j] = i + j;
+                }
+                else
+                {
+                    int sub = d[i - 1][j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                    d[i][j] = Math.min(sub, Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    private static String randomName(Random random, int length)
+    {
+        // a small alphabet, so edits line up often; upper case and a non-ASCII letter too
+        String letters = "abcdeABé ";
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++)
+        {
+            sb.append(letters.charAt(random.nextInt(letters.length())));
+        }
+        return sb.toString();
+    }
+
+    private static String mutate(Random random, String s, int edits)
+    {
+        StringBuilder sb = new StringBuilder(s);
+        for (int i = 0; i < edits; i++)
+        {
+            int at = random.nextInt(sb.length() + 1);
+            char c = randomName(random, 1).charAt(0);
+            switch (random.nextInt(3))
+            {
+                case 0:
+                    sb.insert(at, c);
+                    break;
+                case 1:
+                    if (at < sb.length())
+                    {
+                        sb.deleteCharAt(at);
+                    }
+                    break;
+                default:
+                    if (at < sb.length())
+                    {
+                        sb.setCharAt(at, c);
+                    }
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,159 @@
+package com.lootledger.ui;
+
+import com.google.gson.Gson;
+import com.lootledger.drops.DropCache;
+import com.lootledger.drops.DropItem;
+import com.lootledger.drops.DropTableSection;
+import com.lootledger.drops.NpcCatalog;
+import com.lootledger.drops.NpcDropData;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NpcSearchServiceTest
+{
+    private static final List<String> GOBLINS = Arrays.asList("Goblin", "Goblin guard", "Hobgoblin", "Cave goblin");
+
+    // loads the test completes by hand, by NPC name
+    private final Map<String, CompletableFuture<NpcDropData>> loads = new ConcurrentHashMap<>();
+    // the names of every getEach call, and whether its search still wants them
+    private final List<List<String>> groups = new CopyOnWriteArrayList<>();
+    private final List<BooleanSupplier> cancelled = new CopyOnWriteArrayList<>();
+    private final DropCache dropCache = new DropCache(null, null, null, null, null, null)
+    {
+        @Override
+        public CompletableFuture<List<String>> searchNpcNames(String query)
+        {
+            return CompletableFuture.completedFuture("imp".equals(query) ? Collections.singletonList("Imp") : GOBLINS);
+        }
+
+        @Override
+        public List<CompletableFuture<NpcDropData>> getEach(List<String> names, int level, BooleanSupplier isCancelled)
+        {
+            groups.add(new ArrayList<>(names));
+            cancelled.add(isCancelled);
+            return names.stream().map(NpcSearchServiceTest.this::load).collect(Collectors.toList());
+        }
+    };
+    private final NpcCatalog catalog = new NpcCatalog(new Gson());
+
+    @Test
+    public void loadsThreeCandidatesAtATime()
+    {
+        List<List<String>> updates = new ArrayList<>();
+        NpcSearchService.Search search = new NpcSearchService(dropCache, catalog).searchAsync("goblin", r -> updates.add(names(r)));
+
+        assertEquals(Collections.singletonList(GOBLINS.subList(0, 3)), groups);
+        complete("Hobgoblin");
+        complete("Goblin");
+        assertEquals(1, groups.size());
+
+        complete("Goblin guard");
+        assertEquals(Arrays.asList(GOBLINS.subList(0, 3), GOBLINS.subList(3, 4)), groups);
+        assertFalse(search.isFinished());
+
+        complete("Cave goblin");
+        assertEquals(Arrays.asList("Goblin", "Goblin guard", "Cave goblin", "Hobgoblin"), names(search.getDone().join()));
+        // ranked again as each table arrived
+        assertEquals(Arrays.asList("Hobgoblin"), updates.get(0));
+        assertEquals(4, updates.size());
+    }
+
+    @Test
+    public void supersededSearchStopsDeliveringResults()
+    {
+        NpcSearchService service = new NpcSearchService(dropCache, catalog);
+        List<List<String>> first = new ArrayList<>();
+        List<List<String>> second = new ArrayList<>();
+
+        NpcSearchService.Search goblins = service.searchAsync("goblin", r -> first.add(names(r)));
+        complete("Goblin");
+        NpcSearchService.Search imps = service.searchAsync("imp", r -> second.add(names(r)));
+
+        assertTrue(goblins.getDone().isCancelled());
+        // requests for the first search that have not been sent yet are skipped
+        assertTrue(cancelled.get(0).getAsBoolean());
+        assertFalse(cancelled.get(1).getAsBoolean());
+
+        complete("Goblin guard");
+        complete("Hobgoblin");
+        complete("Imp");
+
+        assertEquals(Collections.singletonList(Collections.singletonList("Goblin")), first);
+        assertEquals(Collections.singletonList(Collections.singletonList("Imp")), second);
+        // the cave goblin was never requested
+        assertEquals(Arrays.asList(GOBLINS.subList(0, 3), Collections.singletonList("Imp")), groups);
+        assertEquals(Collections.singletonList("Imp"), names(imps.getDone().join()));
+        assertTrue(service.getSearchStats().contains("cancelled=1"));
+        assertTrue(service.getSearchStats().contains("skipped=1"));
+    }
+
+    @Test
+    public void cancelledSearchStopsDeliveringResults()
+    {
+        NpcSearchService service = new NpcSearchService(dropCache, catalog);
+        List<List<String>> updates = new ArrayList<>();
+
+        NpcSearchService.Search search = service.searchAsync("goblin", r -> updates.add(names(r)));
+        search.cancel();
+        complete("Goblin");
+        complete("Goblin guard");
+        complete("Hobgoblin");
+
+        assertTrue(search.getDone().isCancelled());
+        assertTrue(cancelled.get(0).getAsBoolean());
+        assertTrue(updates.isEmpty());
+        assertEquals(1, groups.size());
+    }
+
+    @Test
+    public void deadlineEndsTheSearchWithTheResultsSoFar() throws Exception
+    {
+        NpcSearchService service = new NpcSearchService(dropCache, catalog, Duration.ofMillis(50));
+        List<List<String>> updates = new CopyOnWriteArrayList<>();
+
+        NpcSearchService.Search search = service.searchAsync("goblin", r -> updates.add(names(r)));
+        complete("Goblin guard");
+
+        assertEquals(Collections.singletonList("Goblin guard"), names(search.getDone().get(5, TimeUnit.SECONDS)));
+        assertTrue(cancelled.get(0).getAsBoolean());
+
+        complete("Goblin");
+        complete("Hobgoblin");
+        assertEquals(1, updates.size());
+        assertEquals(1, groups.size());
+        assertTrue(service.getSearchStats().contains("timedOut=1"));
+    }
+
+    private CompletableFuture<NpcDropData> load(String name)
+    {
+        return loads.computeIfAbsent(name, n -> new CompletableFuture<>());
+    }
+
+    private void complete(String name)
+    {
+        DropTableSection section = new DropTableSection("Drops",
+                Collections.singletonList(new DropItem(526, "Bones", "Always")));
+        load(name).complete(new NpcDropData(GOBLINS.indexOf(name) + 1, name, 2, Collections.singletonList(section)));
+    }
+
+    private static List<String> names(List<NpcSearchService.Result> results)
+    {
+        return results.stream().map(NpcSearchService.Result::getName).collect(Collectors.toList());
+    }
+}